@@ -0,0 +1,92 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileInputStream;
+import jcifs.smb.SmbFuture;
+import jcifs.util.transport.ResponseFuture;
+import jcifs.util.transport.ResponseListener;
+
+/* Exercises the asynchronous SmbFile and SmbFileInputStream methods from a
+ * single thread. All children of the directory are tested with existsAsync
+ * and lengthAsync at once, and the first file is then read with up to
+ * <depth> reads outstanding.
+ *
+ * java AsyncOps smb://server/share/dir/ <depth>
+ */
+
+public class AsyncOps {
+
+    static int completed = 0;
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 2) {
+            System.err.println( "usage: AsyncOps <dir-url> <depth>" );
+            return;
+        }
+
+        SmbFile dir = new SmbFile( argv[0] );
+        int depth = Integer.parseInt( argv[1] );
+
+        long t0 = System.currentTimeMillis();
+        SmbFuture lf = dir.listFilesAsync();
+        SmbFile[] files = (SmbFile[])lf.getResult();
+        System.out.println( files.length + " entries in " + (System.currentTimeMillis() - t0) + "ms" );
+
+        ResponseListener listener = new ResponseListener() {
+            public void responseReceived( ResponseFuture future ) {
+                synchronized (AsyncOps.class) {
+                    completed++;
+                }
+            }
+        };
+
+        t0 = System.currentTimeMillis();
+        SmbFuture[] ex = new SmbFuture[files.length];
+        SmbFuture[] len = new SmbFuture[files.length];
+        for (int i = 0; i < files.length; i++) {
+            SmbFile f = new SmbFile( files[i].getURL().toString() ); /* uncached */
+            ex[i] = f.existsAsync();
+            len[i] = f.lengthAsync();
+            ex[i].setListener( listener );
+        }
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (((Boolean)ex[i].getResult()).booleanValue() == false)
+                System.out.println( files[i] + " does not exist?" );
+            total += ((Long)len[i].getResult()).longValue();
+        }
+        System.out.println( (files.length * 2) + " queries in " +
+                (System.currentTimeMillis() - t0) + "ms, " + total + " bytes total, " +
+                completed + " listener calls" );
+
+        SmbFile file = null;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isFile()) {
+                file = files[i];
+                break;
+            }
+        }
+        if (file == null)
+            return;
+
+        int size = 0xF000;
+        byte[][] bufs = new byte[depth][size];
+        SmbFuture[] reads = new SmbFuture[depth];
+        SmbFileInputStream in = new SmbFileInputStream( file );
+        long n = 0;
+
+        t0 = System.currentTimeMillis();
+        for (int i = 0; i < depth; i++)
+            reads[i] = in.readAsync( bufs[i], 0, size );
+        for (int i = 0; ; i = (i + 1) % depth) {
+            int r = ((Integer)reads[i].getResult()).intValue();
+            if (r <= 0)
+                break;
+            n += r;
+            reads[i] = in.readAsync( bufs[i], 0, size );
+        }
+        in.close();
+
+        long t = Math.max( 1, System.currentTimeMillis() - t0 );
+        System.out.println( "read " + n + " of " + file.length() + " bytes from " + file +
+                " in " + t + "ms (" + (n / 1024 / t * 1000 / 1024) + " MB/s)" );
+    }
+}
@@ -0,0 +1,24 @@
+import jcifs.smb.SmbFile;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+
+public class Download {
+
+    public static void main( String argv[] ) throws Exception {
+
+        SmbFile f = new SmbFile( argv[0] );
+        int parallelism = argv.length > 1 ? Integer.parseInt( argv[1] ) : 8;
+        FileOutputStream out = new FileOutputStream( f.getName() );
+        FileChannel channel = out.getChannel();
+
+        long t0 = System.currentTimeMillis();
+
+        long n = f.downloadTo( channel, parallelism );
+
+        long t = System.currentTimeMillis() - t0;
+
+        System.out.println( n + " bytes transfered in " + t + " ms" );
+
+        out.close();
+    }
+}
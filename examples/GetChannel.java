@@ -0,0 +1,51 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* Downloads a file into the current directory without copying the data
+ * through a byte array, either with FileChannel.transferFrom or by reading
+ * into a direct buffer of the given size and writing it to the file. The
+ * JDK's transferFrom reads at most 8K at a time so a buffer the size of
+ * the negotiated read (e.g. 65536) is usually faster.
+ *
+ * java GetChannel smb://server/share/big.bin [<bufsize>]
+ */
+
+public class GetChannel {
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 1) {
+            System.err.println( "usage: GetChannel <url> [<bufsize>]" );
+            return;
+        }
+
+        SmbFile f = new SmbFile( argv[0] );
+        SmbFileInputStream in = new SmbFileInputStream( f );
+        FileChannel out = new FileOutputStream( f.getName() ).getChannel();
+        long tot = 0;
+
+        long t0 = System.currentTimeMillis();
+
+        if (argv.length < 2) {
+            long n;
+            while ((n = out.transferFrom( in, tot, 1024 * 1024 )) > 0)
+                tot += n;
+        } else {
+            ByteBuffer bb = ByteBuffer.allocateDirect( Integer.parseInt( argv[1] ));
+            while (in.read( bb ) > 0) {
+                bb.flip();
+                while (bb.hasRemaining())
+                    tot += out.write( bb );
+                bb.clear();
+            }
+        }
+
+        long t = Math.max( 1, System.currentTimeMillis() - t0 );
+        System.out.println( tot + " bytes transfered in " + t + "ms at " + (tot / t) + "Kbytes/sec" );
+
+        in.close();
+        out.close();
+    }
+}
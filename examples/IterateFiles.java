@@ -0,0 +1,31 @@
+import jcifs.smb.*;
+
+public class IterateFiles {
+
+    public static void main( String[] argv ) throws Exception {
+        if (argv.length < 1) {
+            System.err.println("usage: IterateFiles <smburl> [<wildcard>]\n");
+            System.exit(1);
+        }
+
+        SmbFile file = new SmbFile( argv[0] );
+        String wildcard = argv.length > 1 ? argv[1] : "*";
+        int count = 0;
+
+        long t1 = System.currentTimeMillis();
+        SmbFileIterator iter = file.iterate( wildcard, null );
+        try {
+            SmbFile f;
+            while(( f = iter.next() ) != null ) {
+                System.out.println( f.getName() );
+                count++;
+            }
+        } finally {
+            iter.close();
+        }
+        long t2 = System.currentTimeMillis() - t1;
+
+        System.out.println();
+        System.out.println( count + " files in " + t2 + "ms" );
+    }
+}
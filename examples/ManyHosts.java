@@ -0,0 +1,35 @@
+import jcifs.smb.SmbFile;
+
+/* Connects to every given server and reports how many threads the JVM is
+ * running while all of the connections are open. Compare the default (one
+ * transport thread per connection) with -Djcifs.smb.client.nioSelectors=2.
+ *
+ * java ManyHosts smb://host1/share/ smb://host2/share/ ...
+ */
+
+public class ManyHosts {
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 1) {
+            System.err.println( "usage: ManyHosts <url> [<url> ...]" );
+            return;
+        }
+
+        int before = Thread.activeCount();
+        long t0 = System.currentTimeMillis();
+        int ok = 0;
+
+        for (int i = 0; i < argv.length; i++) {
+            try {
+                if (new SmbFile( argv[i] ).exists())
+                    ok++;
+            } catch( Exception e ) {
+                System.err.println( argv[i] + ": " + e.getMessage() );
+            }
+        }
+
+        long t = System.currentTimeMillis() - t0;
+        System.out.println( ok + " of " + argv.length + " servers reachable in " + t + "ms" );
+        System.out.println( "threads: " + before + " before, " + Thread.activeCount() + " after" );
+    }
+}
@@ -0,0 +1,96 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbRandomAccessFile;
+
+/* Runs 1, 10 and 50 concurrent readers over a single connection and reports
+ * the aggregate throughput and request rate for each. All readers open the
+ * same URL (and therefore share one transport) and issue small positional
+ * reads so that the number of requests in flight rather than bandwidth
+ * dominates. Run with -Djcifs.smb.client.transportsPerServer=4 to spread
+ * the readers over a pool of connections instead.
+ *
+ * java MpxReaders <seconds> <readSize> smb://server/share/big.bin
+ */
+
+public class MpxReaders {
+
+    static class Reader extends Thread {
+        String url;
+        int size;
+        long deadline;
+        long total, reqs;
+        Exception ex;
+
+        Reader( String url, int size, long deadline ) {
+            this.url = url;
+            this.size = size;
+            this.deadline = deadline;
+        }
+        public void run() {
+            byte[] b = new byte[size];
+            int n;
+
+            try {
+                SmbRandomAccessFile raf = new SmbRandomAccessFile( new SmbFile( url ), "r" );
+                try {
+                    long len = raf.length();
+                    long off = 0;
+                    while (System.currentTimeMillis() < deadline) {
+                        if (off + size > len)
+                            off = 0;
+                        raf.seek( off );
+                        n = raf.read( b, 0, size );
+                        if (n <= 0) {
+                            off = 0;
+                            continue;
+                        }
+                        off += n;
+                        total += n;
+                        reqs++;
+                    }
+                } finally {
+                    raf.close();
+                }
+            } catch( Exception e ) {
+                ex = e;
+            }
+        }
+    }
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 3) {
+            System.err.println( "usage: MpxReaders <seconds> <readSize> <url>" );
+            return;
+        }
+
+        long millis = Long.parseLong( argv[0] ) * 1000L;
+        int size = Integer.parseInt( argv[1] );
+        String url = argv[2];
+        int[] counts = { 1, 10, 50 };
+
+        new SmbFile( url ).exists(); /* connect before timing */
+
+        for (int c = 0; c < counts.length; c++) {
+            Reader[] readers = new Reader[counts[c]];
+            long t0 = System.currentTimeMillis();
+            long deadline = t0 + millis;
+            long total = 0, reqs = 0;
+
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new Reader( url, size, deadline );
+                readers[i].start();
+            }
+            for (int i = 0; i < readers.length; i++) {
+                readers[i].join();
+                if (readers[i].ex != null)
+                    readers[i].ex.printStackTrace();
+                total += readers[i].total;
+                reqs += readers[i].reqs;
+            }
+
+            double secs = Math.max( 1, System.currentTimeMillis() - t0 ) / 1000.0;
+            System.out.println( counts[c] + " readers: " +
+                    (int)(total / 1024.0 / 1024.0 / secs) + " MB/s, " +
+                    (int)(reqs / secs) + " req/s" );
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileInputStream;
+
+/* Measures read throughput against several servers, first one server at a
+ * time and then all servers at once. When each transport encodes and
+ * decodes in its own buffer the concurrent aggregate should approach the
+ * sum of the individual rates.
+ *
+ * java MultiServerThroughput <seconds> <threadsPerUrl> smb://srv1/share/big.bin smb://srv2/share/big.bin ...
+ */
+
+public class MultiServerThroughput {
+
+    static class Reader extends Thread {
+        String url;
+        long deadline;
+        long total;
+        Exception ex;
+
+        Reader( String url, long deadline ) {
+            super( "Reader-" + url );
+            this.url = url;
+            this.deadline = deadline;
+        }
+        public void run() {
+            byte[] b = new byte[0xFFFF];
+            int n;
+
+            try {
+                while (System.currentTimeMillis() < deadline) {
+                    SmbFileInputStream in = new SmbFileInputStream( new SmbFile( url ));
+                    try {
+                        while (( n = in.read( b )) > 0 ) {
+                            total += n;
+                            if (System.currentTimeMillis() >= deadline)
+                                break;
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+            } catch( Exception e ) {
+                ex = e;
+            }
+        }
+    }
+
+    static double run( String[] urls, int threads, long millis ) throws Exception {
+        Reader[] readers = new Reader[urls.length * threads];
+        long t0 = System.currentTimeMillis();
+        long deadline = t0 + millis;
+        long total = 0;
+
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Reader( urls[i % urls.length], deadline );
+            readers[i].start();
+        }
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].join();
+            if (readers[i].ex != null)
+                readers[i].ex.printStackTrace();
+            total += readers[i].total;
+        }
+
+        long t = Math.max( 1, System.currentTimeMillis() - t0 );
+        return total / 1024.0 / 1024.0 / ( t / 1000.0 );
+    }
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 3) {
+            System.err.println( "usage: MultiServerThroughput <seconds> <threadsPerUrl> <url> [<url> ...]" );
+            return;
+        }
+
+        long millis = Long.parseLong( argv[0] ) * 1000L;
+        int threads = Integer.parseInt( argv[1] );
+        String[] urls = new String[argv.length - 2];
+        System.arraycopy( argv, 2, urls, 0, urls.length );
+
+        double sum = 0.0;
+        for (int i = 0; i < urls.length; i++) {
+            double r = run( new String[] { urls[i] }, threads, millis );
+            System.out.println( urls[i] + " alone: " + (int)r + " MB/s" );
+            sum += r;
+        }
+
+        double all = run( urls, threads, millis );
+        System.out.println( urls.length + " servers concurrently: " + (int)all + " MB/s" );
+        System.out.println( "sum of individual rates: " + (int)sum + " MB/s" );
+        if (sum > 0.0)
+            System.out.println( "scaling: " + (int)(all * 100.0 / sum) + "% of ideal" );
+    }
+}
@@ -0,0 +1,30 @@
+import jcifs.smb.*;
+
+public class ParallelCopy {
+
+    public static void main( String argv[] ) throws Exception {
+
+        SmbFile from = new SmbFile( argv[0] );
+        SmbFile to = new SmbFile( argv[1] );
+        final SmbCopy copy = new SmbCopy();
+
+        if( argv.length > 2 ) {
+            copy.setMaxFiles( Integer.parseInt( argv[2] ));
+        }
+        copy.setListener( new SmbCopyListener() {
+            public void fileCopied( SmbFile src, SmbFile dest, long length ) {
+                System.out.println( dest + " " + length + " bytes, " +
+                        copy.getThroughput() + " bytes/sec" );
+            }
+            public void copyFailed( SmbFile src, SmbFile dest, SmbException e ) {
+                System.out.println( src + " failed: " + e.getMessage() );
+            }
+        });
+
+        copy.copy( from, to );
+
+        System.out.println( copy.getFilesCopied() + " files, " +
+                copy.getBytesCopied() + " bytes copied in " +
+                copy.getElapsedTime() + " ms" );
+    }
+}
@@ -0,0 +1,33 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb2.Smb2File;
+import java.io.InputStream;
+import java.io.FileOutputStream;
+
+public class Smb2Get {
+
+    public static void main( String argv[] ) throws Exception {
+
+        SmbFile f = new SmbFile( argv[0] );
+        Smb2File f2 = new Smb2File( f );
+        InputStream in = f2.getInputStream();
+        FileOutputStream out = new FileOutputStream( f.getName() );
+
+        System.out.println( f2.isSmb2() ? "SMB2" : "SMB1" );
+
+        long t0 = System.currentTimeMillis();
+
+        byte[] b = new byte[0x100000];
+        int n, tot = 0;
+        while(( n = in.read( b )) > 0 ) {
+            out.write( b, 0, n );
+            tot += n;
+        }
+
+        long t = System.currentTimeMillis() - t0;
+
+        System.out.println( tot + " bytes transfered in " + t + " ms" );
+
+        in.close();
+        out.close();
+    }
+}
@@ -0,0 +1,20 @@
+import jcifs.smb.SmbFile;
+import java.io.File;
+
+public class Upload {
+
+    public static void main( String argv[] ) throws Exception {
+
+        File src = new File( argv[0] );
+        SmbFile f = new SmbFile( argv[1] );
+        int parallelism = argv.length > 2 ? Integer.parseInt( argv[2] ) : 8;
+
+        long t0 = System.currentTimeMillis();
+
+        long n = f.uploadFrom( src, parallelism );
+
+        long t = System.currentTimeMillis() - t0;
+
+        System.out.println( n + " bytes transfered in " + t + " ms" );
+    }
+}
@@ -0,0 +1,40 @@
+import jcifs.smb.*;
+
+public class Walk {
+
+    public static void main( String argv[] ) throws Exception {
+        if (argv.length < 1) {
+            System.err.println("usage: Walk <smburl> [<depth>]\n");
+            System.exit(1);
+        }
+
+        SmbFile dir = new SmbFile( argv[0] );
+        SmbWalkOptions options = new SmbWalkOptions();
+        if( argv.length > 1 ) {
+            options.setMaxDepth( Integer.parseInt( argv[1] ));
+        }
+        final long[] totals = new long[3];
+
+        long t1 = System.currentTimeMillis();
+        dir.walk( new SmbFileVisitor() {
+            public synchronized boolean visitDirectory( SmbFile d ) {
+                totals[1]++;
+                return true;
+            }
+            public synchronized void visitFile( SmbFile f ) {
+                totals[0]++;
+                try {
+                    totals[2] += f.length();
+                } catch( SmbException se ) {
+                }
+            }
+            public void visitFailed( SmbFile d, SmbException e ) {
+                System.err.println( d + ": " + e.getMessage() );
+            }
+        }, options );
+        long t2 = System.currentTimeMillis() - t1;
+
+        System.out.println( totals[0] + " files, " + totals[1] + " directories, " +
+                totals[2] + " bytes in " + t2 + "ms" );
+    }
+}
@@ -0,0 +1,23 @@
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbFileChange;
+import jcifs.smb.SmbWatch;
+
+public class Watch {
+
+    static final String[] ACTIONS = { "overflow", "added", "removed",
+            "modified", "renamed from", "renamed to" };
+
+    public static void main( String argv[] ) throws Exception {
+
+        SmbFile dir = new SmbFile( argv[0] );
+        SmbWatch watch = dir.watch( SmbWatch.FILE_NOTIFY_CHANGE_FILE_NAME |
+                    SmbWatch.FILE_NOTIFY_CHANGE_DIR_NAME |
+                    SmbWatch.FILE_NOTIFY_CHANGE_SIZE |
+                    SmbWatch.FILE_NOTIFY_CHANGE_LAST_WRITE, true );
+
+        for( ;; ) {
+            SmbFileChange change = watch.take();
+            System.out.println( ACTIONS[change.getAction()] + " " + change.getFile() );
+        }
+    }
+}
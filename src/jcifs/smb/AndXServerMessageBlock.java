@@ -269,7 +269,7 @@ abstract class AndXServerMessageBlock extends ServerMessageBlock {
                  * Just a plain smb. Read it as normal.
                  */
 
-                buffer[bufferIndex++] = (byte)( andx.wordCount & 0xFF );
+                andx.wordCount = buffer[bufferIndex++] & 0xFF;
 
                 if( andx.wordCount != 0 ) {
                     /*
@@ -23,10 +23,17 @@ import jcifs.Config;
 public class BufferCache {
 
     private static final int MAX_BUFFERS = Config.getInt( "jcifs.smb.maxBuffers", 16 );
+    private static final int MAX_TRANSPORT_BUFFERS = Config.getInt( "jcifs.smb.maxTransportBuffers", 32 );
 
     static Object[] cache = new Object[MAX_BUFFERS];
     private static int freeBuffers = 0;
 
+    /* Each connected SmbTransport holds two of these (encode and decode) so
+     * that traffic to different servers does not contend for one buffer.
+     */
+    static Object[] transportCache = new Object[MAX_TRANSPORT_BUFFERS];
+    private static int freeTransportBuffers = 0;
+
     static public byte[] getBuffer() {
         synchronized( cache ) {
             byte[] buf;
@@ -66,4 +73,35 @@ public class BufferCache {
             }
         }
     }
+    static byte[] getTransportBuffer() {
+        synchronized( transportCache ) {
+            if (freeTransportBuffers > 0) {
+                for (int i = 0; i < MAX_TRANSPORT_BUFFERS; i++) {
+                    if( transportCache[i] != null ) {
+                        byte[] buf = (byte[])transportCache[i];
+                        transportCache[i] = null;
+                        freeTransportBuffers--;
+                        return buf;
+                    }
+                }
+            }
+
+            return new byte[SmbTransport.BUF_SIZE];
+        }
+    }
+    static void releaseTransportBuffer( byte[] buf ) {
+        if (buf == null || buf.length != SmbTransport.BUF_SIZE)
+            return;
+        synchronized( transportCache ) {
+            if (freeTransportBuffers < MAX_TRANSPORT_BUFFERS) {
+                for (int i = 0; i < MAX_TRANSPORT_BUFFERS; i++) {
+                    if (transportCache[i] == null) {
+                        transportCache[i] = buf;
+                        freeTransportBuffers++;
+                        return;
+                    }
+                }
+            }
+        }
+    }
 }
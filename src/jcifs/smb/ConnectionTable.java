@@ -0,0 +1,222 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.net.InetAddress;
+import java.util.*;
+import jcifs.Config;
+import jcifs.UniAddress;
+
+/* The set of open SmbTransports. Transports are hashed on the parts of
+ * SmbTransport.matches that must be equal (server address and local
+ * address and port) and the few transports in a bucket are then checked
+ * with matches() itself, which also accepts a wildcard port and tests the
+ * hostName. The table is split into segments that are locked separately
+ * so that looking up transports to different servers does not serialize
+ * on one monitor.
+ */
+
+class ConnectionTable {
+
+    static final int SEGMENTS = 16;
+
+    static class Key {
+        UniAddress address;
+        InetAddress localAddr;
+        int localPort;
+
+        Key( UniAddress address, InetAddress localAddr, int localPort ) {
+            this.address = address;
+            this.localAddr = localAddr;
+            this.localPort = localPort;
+        }
+
+        public int hashCode() {
+            int h = address.hashCode() * 31 + localPort;
+            if (localAddr != null)
+                h = h * 31 + localAddr.hashCode();
+            return h;
+        }
+        public boolean equals( Object obj ) {
+            if (obj instanceof Key) {
+                Key k = (Key)obj;
+                return address.equals( k.address ) &&
+                        localPort == k.localPort &&
+                        (localAddr == k.localAddr ||
+                                (localAddr != null && localAddr.equals( k.localAddr )));
+            }
+            return false;
+        }
+    }
+
+    /* The transports for one Key along with the number of them that
+     * may be opened to spread load before they are shared.
+     */
+    static class Bucket {
+        LinkedList conns = new LinkedList();
+        int poolSize;
+
+        Bucket( UniAddress address ) {
+            poolSize = poolSize( address );
+        }
+    }
+
+    /* The jcifs.smb.client.transportsPerServer.<host> property, where <host>
+     * is the server name or IP address, overrides the default for that host.
+     */
+    static int poolSize( UniAddress address ) {
+        String prop = "jcifs.smb.client.transportsPerServer.";
+        int size = Config.getInt( prop + address.getHostName(), 0 );
+        if (size < 1)
+            size = Config.getInt( prop + address.getHostAddress(), 0 );
+        if (size < 1)
+            size = SmbConstants.TRANSPORTS_PER_SERVER;
+        return size < 1 ? 1 : size;
+    }
+
+    HashMap[] segments = new HashMap[SEGMENTS];
+    int picks = 0;
+
+    ConnectionTable() {
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new HashMap();
+    }
+
+    HashMap segmentFor( Key key ) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7FFFFFFF) % SEGMENTS];
+    }
+    Bucket bucketFor( HashMap segment, Key key ) {
+        Bucket bucket = (Bucket)segment.get( key );
+        if (bucket == null) {
+            bucket = new Bucket( key.address );
+            segment.put( key, bucket );
+        }
+        return bucket;
+    }
+
+    /* Return a transport that matches the given parameters and has fewer
+     * than ssnLimit sessions (0 meaning no limit, 1 meaning never share a
+     * transport) or create and add a new one. Until the server has its
+     * pool size worth of matching transports a new one is created for each
+     * caller. After that the transport with the fewest requests in flight
+     * is returned, ties going to the one that was picked least recently.
+     * Transports that have been disconnected or failed are dropped as the
+     * bucket is scanned.
+     */
+    SmbTransport get( UniAddress address, int port,
+                InetAddress localAddr, int localPort, String hostName, int ssnLimit ) {
+        Key key = new Key( address, localAddr, localPort );
+        HashMap segment = segmentFor( key );
+        SmbTransport conn, best = null;
+        int n = 0, bestInflight = 0;
+
+        synchronized (segment) {
+            Bucket bucket = bucketFor( segment, key );
+
+            ListIterator iter = bucket.conns.listIterator();
+            while (iter.hasNext()) {
+                conn = (SmbTransport)iter.next();
+                if (conn.isDead()) {
+                    iter.remove();
+                    continue;
+                }
+                if (ssnLimit != 1 &&
+                        conn.matches( address, port, localAddr, localPort, hostName ) &&
+                        (ssnLimit == 0 || conn.sessions.size() < ssnLimit)) {
+                    int inflight = conn.getInflight();
+                    if (best == null || inflight < bestInflight ||
+                            (inflight == bestInflight && conn.picked < best.picked)) {
+                        best = conn;
+                        bestInflight = inflight;
+                    }
+                    n++;
+                }
+            }
+
+            if (best == null || n < bucket.poolSize) {
+                best = new SmbTransport( address, port, localAddr, localPort );
+                bucket.conns.add( 0, best );
+            }
+            synchronized (this) {
+                best.picked = ++picks;
+            }
+        }
+
+        return best;
+    }
+
+    /* A transport that was dropped from the table while disconnected is
+     * added back when something still holding it reconnects.
+     */
+    void add( SmbTransport conn ) {
+        Key key = new Key( conn.address, conn.localAddr, conn.localPort );
+        HashMap segment = segmentFor( key );
+
+        synchronized (segment) {
+            Bucket bucket = bucketFor( segment, key );
+            if (bucket.conns.contains( conn ) == false)
+                bucket.conns.add( 0, conn );
+        }
+    }
+    /* Drop a transport that has been disconnected. The bucket goes too
+     * once it is empty so that servers no longer used do not leave
+     * entries behind.
+     */
+    void remove( SmbTransport conn ) {
+        Key key = new Key( conn.address, conn.localAddr, conn.localPort );
+        HashMap segment = segmentFor( key );
+
+        synchronized (segment) {
+            Bucket bucket = (Bucket)segment.get( key );
+            if (bucket != null && bucket.conns.remove( conn ) && bucket.conns.isEmpty())
+                segment.remove( key );
+        }
+    }
+
+    /* All transports currently in the table. Transports found dead, such
+     * as those that failed to connect, are dropped along with any bucket
+     * that is left empty.
+     */
+    SmbTransport[] toArray() {
+        ArrayList list = new ArrayList();
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            synchronized (segments[i]) {
+                Iterator iter = segments[i].values().iterator();
+                while (iter.hasNext()) {
+                    Bucket bucket = (Bucket)iter.next();
+                    Iterator bi = bucket.conns.iterator();
+                    while (bi.hasNext()) {
+                        SmbTransport conn = (SmbTransport)bi.next();
+                        if (conn.isDead())
+                            bi.remove();
+                        else
+                            list.add( conn );
+                    }
+                    if (bucket.conns.isEmpty())
+                        iter.remove();
+                }
+            }
+        }
+
+        return (SmbTransport[])list.toArray( new SmbTransport[list.size()] );
+    }
+}
@@ -0,0 +1,99 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import jcifs.util.Hexdump;
+
+/* An FSCTL on an open file. The input is sent as the data of the
+ * transaction and the output comes back as the data of the response.
+ */
+
+class NtTransIoctl extends SmbComNtTransaction {
+
+    static final int FSCTL_SRV_REQUEST_RESUME_KEY = 0x00140078;
+    static final int FSCTL_SRV_COPYCHUNK          = 0x001440F2;
+
+    /* The statuses with which a server says it does not support an
+     * FSCTL at all rather than that it failed for this file.
+     */
+    static final int STATUS_INVALID_DEVICE_REQUEST = 0xC0000010;
+    static final int STATUS_NOT_SUPPORTED          = 0xC00000BB;
+
+    static boolean isUnsupported( SmbException se ) {
+        int status = se.getNtStatus();
+        return status == STATUS_INVALID_DEVICE_REQUEST ||
+                status == STATUS_NOT_SUPPORTED ||
+                status == NtStatus.NT_STATUS_NOT_IMPLEMENTED;
+    }
+
+    int fid;
+    int functionCode;
+    byte[] input;
+    int inputLength;
+
+    NtTransIoctl( int fid, int functionCode, byte[] input, int inputLength, int maxOutput ) {
+        this.fid = fid;
+        this.functionCode = functionCode;
+        this.input = input;
+        this.inputLength = inputLength;
+        command = SMB_COM_NT_TRANSACT;
+        function = NT_TRANSACT_IOCTL;
+        setupCount = 4;
+        totalDataCount = inputLength;
+        maxParameterCount = 0;
+        maxDataCount = maxOutput;
+        maxSetupCount = (byte)0x01;
+    }
+
+    int writeSetupWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        writeInt4( functionCode, dst, dstIndex );
+        dstIndex += 4;
+        writeInt2( fid, dst, dstIndex );
+        dstIndex += 2;
+        dst[dstIndex++] = (byte)0x01; // IsFsctl
+        dst[dstIndex++] = (byte)0x00; // IsFlags
+
+        return dstIndex - start;
+    }
+    int writeParametersWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int writeDataWireFormat( byte[] dst, int dstIndex ) {
+        if (inputLength > 0)
+            System.arraycopy( input, 0, dst, dstIndex, inputLength );
+        return inputLength;
+    }
+    int readSetupWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    int readParametersWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    int readDataWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return new String( "NtTransIoctl[" + super.toString() +
+            ",fid=0x" + Hexdump.toHexString( fid, 4 ) +
+            ",functionCode=0x" + Hexdump.toHexString( functionCode, 8 ) +
+            ",inputLength=" + inputLength + "]" );
+    }
+}
@@ -0,0 +1,80 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import jcifs.util.Hexdump;
+
+/* Ask the server to complete the request when something in the directory
+ * open as fid changes. The server holds the request until then so it is
+ * sent with no response timeout; see SmbWatch.
+ */
+
+class NtTransNotifyChange extends SmbComNtTransaction {
+
+    int fid;
+    int completionFilter;
+    boolean watchTree;
+
+    NtTransNotifyChange( int fid, int completionFilter, boolean watchTree ) {
+        this.fid = fid;
+        this.completionFilter = completionFilter;
+        this.watchTree = watchTree;
+        command = SMB_COM_NT_TRANSACT;
+        function = NT_TRANSACT_NOTIFY_CHANGE;
+        setupCount = 4;
+        totalDataCount = 0;
+        maxParameterCount = SmbWatch.BUFFER_SIZE;
+        maxDataCount = 0;
+        maxSetupCount = (byte)0x00;
+    }
+
+    int writeSetupWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        writeInt4( completionFilter, dst, dstIndex );
+        dstIndex += 4;
+        writeInt2( fid, dst, dstIndex );
+        dstIndex += 2;
+        dst[dstIndex++] = watchTree ? (byte)0x01 : (byte)0x00;
+        dst[dstIndex++] = (byte)0x00; // Reserved
+
+        return dstIndex - start;
+    }
+    int writeParametersWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int writeDataWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readSetupWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    int readParametersWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    int readDataWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return new String( "NtTransNotifyChange[" + super.toString() +
+            ",fid=0x" + Hexdump.toHexString( fid, 4 ) +
+            ",completionFilter=0x" + Hexdump.toHexString( completionFilter, 8 ) +
+            ",watchTree=" + watchTree + "]" );
+    }
+}
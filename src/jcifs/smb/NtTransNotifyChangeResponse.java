@@ -0,0 +1,92 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+class NtTransNotifyChangeResponse extends SmbComNtTransactionResponse {
+
+    static final int STATUS_NOTIFY_ENUM_DIR = 0x0000010C;
+
+    ArrayList changes = new ArrayList();
+
+    /* The server could not record all of the changes since the last
+     * request. checkStatus turns the status into a generic error so it
+     * is noted here before that happens.
+     */
+    boolean enumDir;
+
+    NtTransNotifyChangeResponse() {
+        super();
+    }
+
+    int readHeaderWireFormat( byte[] buffer, int bufferIndex ) {
+        int n = super.readHeaderWireFormat( buffer, bufferIndex );
+        enumDir = errorCode == STATUS_NOTIFY_ENUM_DIR;
+        return n;
+    }
+    int writeSetupWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int writeParametersWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int writeDataWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readSetupWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    /* A list of FILE_NOTIFY_INFORMATION structures.
+     */
+    int readParametersWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        int end = bufferIndex + len;
+
+        while (bufferIndex + 12 <= end) {
+            int nextEntryOffset = readInt4( buffer, bufferIndex );
+            int action = readInt4( buffer, bufferIndex + 4 );
+            int fileNameLength = readInt4( buffer, bufferIndex + 8 );
+
+            if (fileNameLength < 0 || bufferIndex + 12 + fileNameLength > end)
+                break;
+            try {
+                String name = new String( buffer, bufferIndex + 12, fileNameLength, "UTF-16LE" );
+                changes.add( new SmbFileChange( action, name.replace( '\\', '/' )));
+            } catch( UnsupportedEncodingException uee ) {
+                break;
+            }
+
+            if (nextEntryOffset <= 0)
+                break;
+            bufferIndex += nextEntryOffset;
+        }
+
+        return len;
+    }
+    int readDataWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return new String( "NtTransNotifyChangeResponse[" +
+            super.toString() +
+            ",changes=" + changes.size() +
+            ",enumDir=" + enumDir + "]" );
+    }
+}
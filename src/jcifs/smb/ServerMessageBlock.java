@@ -137,6 +137,7 @@ abstract class ServerMessageBlock extends Response implements Request, SmbConsta
     static final byte SMB_COM_QUERY_INFORMATION  = (byte)0x08;
     static final byte SMB_COM_WRITE              = (byte)0x0B;
     static final byte SMB_COM_CHECK_DIRECTORY    = (byte)0x10;
+    static final byte SMB_COM_LOCKING_ANDX       = (byte)0x24;
     static final byte SMB_COM_TRANSACTION        = (byte)0x25;
     static final byte SMB_COM_TRANSACTION_SECONDARY = (byte)0x26;
     static final byte SMB_COM_MOVE               = (byte)0x2A;
@@ -184,6 +185,12 @@ abstract class ServerMessageBlock extends Response implements Request, SmbConsta
     String path;
     SigningDigest digest = null;
     ServerMessageBlock response;
+    /* If gatherLen is not 0 the last gatherLen bytes of the encoded message
+     * were not copied into the destination buffer by encode and must be
+     * written from gatherBuf after it (see SmbComWriteAndX).
+     */
+    byte[] gatherBuf;
+    int gatherOff, gatherLen;
 
     ServerMessageBlock() {
         flags = (byte)( FLAGS_PATH_NAMES_CASELESS | FLAGS_PATH_NAMES_CANONICALIZED );
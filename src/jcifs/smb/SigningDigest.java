@@ -3,6 +3,7 @@ package jcifs.smb;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import jcifs.Config;
 import jcifs.util.LogStream;
 import jcifs.util.Hexdump;
@@ -120,7 +121,7 @@ public class SigningDigest implements SmbConstants {
      * @param offset The starting offset at which the SMB header begins.
      * @param length The length of the SMB data starting at offset. 
      */
-    void sign(byte[] data, int offset, int length,
+    synchronized void sign(byte[] data, int offset, int length,
                 ServerMessageBlock request, ServerMessageBlock response) {
         request.signSeq = signSequence;
         if( response != null ) {
@@ -133,7 +134,9 @@ public class SigningDigest implements SmbConstants {
             int index = offset + ServerMessageBlock.SIGNATURE_OFFSET;
             for (int i = 0; i < 8; i++) data[index + i] = 0;
             ServerMessageBlock.writeInt4(signSequence, data, index);
-            update(data, offset, length);
+            update(data, offset, length - request.gatherLen);
+            if (request.gatherLen > 0)
+                update(request.gatherBuf, request.gatherOff, request.gatherLen);
             System.arraycopy(digest(), 0, data, index, 8);
             if (bypass) {
                 bypass = false;
@@ -143,7 +146,13 @@ public class SigningDigest implements SmbConstants {
             if( log.level > 0 )
                 ex.printStackTrace( log );
         } finally {
-            signSequence += 2;
+            /* An oplock break acknowledgement has no response
+             */
+            if( response == null && request.command == ServerMessageBlock.SMB_COM_LOCKING_ANDX ) {
+                signSequence += 1;
+            } else {
+                signSequence += 2;
+            }
         }
     } 
 
@@ -155,7 +164,7 @@ public class SigningDigest implements SmbConstants {
      * @param offset The starting offset at which the SMB header begins.
      * @param length The length of the SMB data starting at offset. 
      */
-    boolean verify(byte[] data, int offset, ServerMessageBlock response) {
+    synchronized boolean verify(byte[] data, int offset, ServerMessageBlock response) {
         update(macSigningKey, 0, macSigningKey.length);
         int index = offset;
         update(data, index, ServerMessageBlock.SIGNATURE_OFFSET); 
@@ -170,7 +179,18 @@ public class SigningDigest implements SmbConstants {
             SmbComReadAndXResponse raxr = (SmbComReadAndXResponse)response;
             int length = response.length - raxr.dataLength;
             update(data, index, length - ServerMessageBlock.SIGNATURE_OFFSET - 8);
-            update(raxr.b, raxr.off, raxr.dataLength);
+            if (raxr.bb != null) {
+                /* the data was read up to the buffer's position */
+                ByteBuffer data0 = raxr.bb.duplicate();
+                data0.limit(data0.position());
+                data0.position(data0.position() - raxr.dataLength);
+                if (raxr.dataLength > 0) {
+                    digest.update(data0);
+                    updates++;
+                }
+            } else {
+                update(raxr.b, raxr.off, raxr.dataLength);
+            }
         } else {
             update(data, index, response.length - ServerMessageBlock.SIGNATURE_OFFSET - 8);
         }
@@ -0,0 +1,75 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import jcifs.util.Hexdump;
+
+/* Only used to acknowledge an oplock break, which the server does not
+ * respond to. The same command arrives from the server with mid 0xFFFF
+ * to break the oplock.
+ */
+
+class SmbComLockingAndX extends AndXServerMessageBlock {
+
+    static final byte LOCKING_ANDX_OPLOCK_RELEASE = (byte)0x02;
+
+    private int fid;
+    private byte typeOfLock, newOplockLevel;
+
+    SmbComLockingAndX( int fid, int newOplockLevel ) {
+        super( null );
+        this.fid = fid;
+        this.newOplockLevel = (byte)newOplockLevel;
+        typeOfLock = LOCKING_ANDX_OPLOCK_RELEASE;
+        command = SMB_COM_LOCKING_ANDX;
+    }
+
+    int writeParameterWordsWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        writeInt2( fid, dst, dstIndex );
+        dstIndex += 2;
+        dst[dstIndex++] = typeOfLock;
+        dst[dstIndex++] = newOplockLevel;
+        writeInt4( 0, dst, dstIndex ); /* timeout */
+        dstIndex += 4;
+        writeInt2( 0, dst, dstIndex ); /* number of unlocks */
+        dstIndex += 2;
+        writeInt2( 0, dst, dstIndex ); /* number of locks */
+        dstIndex += 2;
+
+        return dstIndex - start;
+    }
+    int writeBytesWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readParameterWordsWireFormat( byte[] buffer, int bufferIndex ) {
+        return 0;
+    }
+    int readBytesWireFormat( byte[] buffer, int bufferIndex ) {
+        return 0;
+    }
+    public String toString() {
+        return new String( "SmbComLockingAndX[" +
+            super.toString() +
+            ",fid=" + fid +
+            ",typeOfLock=0x" + Hexdump.toHexString( typeOfLock, 2 ) +
+            ",newOplockLevel=" + newOplockLevel + "]" );
+    }
+}
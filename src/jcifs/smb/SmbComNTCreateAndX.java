@@ -18,10 +18,16 @@
 
 package jcifs.smb;
 
+import jcifs.Config;
 import jcifs.util.Hexdump;
 
 class SmbComNTCreateAndX extends AndXServerMessageBlock {
 
+    private static final int READ_ANDX_BATCH_LIMIT =
+            Config.getInt( "jcifs.smb.client.NTCreateAndX.ReadAndX", 1 );
+    private static final int CLOSE_BATCH_LIMIT =
+            Config.getInt( "jcifs.smb.client.NTCreateAndX.Close", 1 );
+
     // share access specified in SmbFile
 
     // create disposition
@@ -136,6 +142,24 @@ int flags0, desiredAccess;
         securityFlags = (byte)0x03; // SECURITY_CONTEXT_TRACKING | SECURITY_EFFECTIVE_ONLY
     }
 
+    /* Open a file or directory only to read its attributes. The access
+     * requested cannot conflict with how anyone else has it open.
+     */
+    void setAttributesOnly() {
+        desiredAccess = FILE_READ_ATTRIBUTES;
+        shareAccess = SmbFile.FILE_SHARE_READ | SmbFile.FILE_SHARE_WRITE | SmbFile.FILE_SHARE_DELETE;
+        createDisposition = FILE_OPEN;
+        createOptions = 0;
+    }
+    int getBatchLimit( byte command ) {
+        if( command == SMB_COM_READ_ANDX ) {
+            return READ_ANDX_BATCH_LIMIT;
+        }
+        if( command == SMB_COM_CLOSE ) {
+            return CLOSE_BATCH_LIMIT;
+        }
+        return 0;
+    }
     int writeParameterWordsWireFormat( byte[] dst, int dstIndex ) {
         int start = dstIndex;
 
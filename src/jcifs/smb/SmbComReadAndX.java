@@ -28,6 +28,7 @@ class SmbComReadAndX extends AndXServerMessageBlock {
     private int fid,
         openTimeout;
 int maxCount, minCount, remaining;
+    boolean maxCountHigh; /* set by the transport if CAP_LARGE_READX was negotiated */
 
     SmbComReadAndX() {
         super( null );
@@ -62,7 +63,10 @@ int maxCount, minCount, remaining;
         dstIndex += 2;
         writeInt2( minCount, dst, dstIndex );
         dstIndex += 2;
-        writeInt4( openTimeout, dst, dstIndex );
+        /* With CAP_LARGE_READX the Timeout field carries the high bits of
+         * MaxCount instead and must not be left at 0xFFFFFFFF.
+         */
+        writeInt4( maxCountHigh ? maxCount >>> 16 : openTimeout, dst, dstIndex );
         dstIndex += 4;
         writeInt2( remaining, dst, dstIndex );
         dstIndex += 2;
@@ -18,10 +18,18 @@
 
 package jcifs.smb;
 
+import java.nio.ByteBuffer;
+
 class SmbComReadAndXResponse extends AndXServerMessageBlock {
 
     byte[] b;
+    ByteBuffer bb; /* used instead of b if not null */
     int off, dataCompactionMode, dataLength, dataOffset;
+    /* Set if this response follows another in an AndX chain. The transport
+     * then reads the whole message into its buffer and the data is copied
+     * out of it by readBytesWireFormat.
+     */
+    boolean chained;
 
     SmbComReadAndXResponse() {
     }
@@ -30,6 +38,10 @@ class SmbComReadAndXResponse extends AndXServerMessageBlock {
         this.off = off;
     }
 
+    SmbComReadAndXResponse( ByteBuffer bb ) {
+        this.bb = bb;
+    }
+
     void setParam( byte[] b, int off ) {
         this.b = b;
         this.off = off;
@@ -49,13 +61,30 @@ class SmbComReadAndXResponse extends AndXServerMessageBlock {
         dataLength = readInt2( buffer, bufferIndex );
         bufferIndex += 2;
         dataOffset = readInt2( buffer, bufferIndex );
-        bufferIndex += 12; // 10 reserved
+        bufferIndex += 2;
+        dataLength |= readInt2( buffer, bufferIndex ) << 16; // DataLengthHigh
+        bufferIndex += 10; // 8 reserved
 
         return bufferIndex - start;
     }
     int readBytesWireFormat( byte[] buffer, int bufferIndex ) {
-        // handled special in SmbTransport.doRecv()
-        return 0;
+        if (chained == false) {
+            // handled special in SmbTransport.doRecv()
+            return 0;
+        }
+        int src = headerStart + dataOffset;
+        int n = dataLength;
+        if (n < 0 || src + n > buffer.length)
+            n = 0;
+        if (bb != null) {
+            n = Math.min( n, bb.remaining() );
+            bb.put( buffer, src, n );
+        } else {
+            n = Math.min( n, b.length - off );
+            System.arraycopy( buffer, src, b, off, n );
+        }
+        dataLength = n;
+        return byteCount;
     }
     public String toString() {
         return new String( "SmbComReadAndXResponse[" +
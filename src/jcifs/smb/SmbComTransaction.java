@@ -224,11 +224,14 @@ abstract class SmbComTransaction extends ServerMessageBlock implements Enumerati
             dstIndex += writeString( name, dst, dstIndex );
         }
 
-        if( parameterCount > 0 ) {
+        /* The data offset includes the pad even if there are no parameters
+         */
+        if( parameterCount > 0 || dataCount > 0 ) {
             while( p-- > 0 ) {
                 dst[dstIndex++] = (byte)0x00;       // Pad
             }
-
+        }
+        if( parameterCount > 0 ) {
             System.arraycopy( txn_buf, bufParameterOffset, dst, dstIndex, parameterCount );
             dstIndex += parameterCount;
         }
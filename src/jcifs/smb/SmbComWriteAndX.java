@@ -27,6 +27,9 @@ class SmbComWriteAndX extends AndXServerMessageBlock {
                             Config.getInt( "jcifs.smb.client.WriteAndX.ReadAndX", 1 );
     private static final int CLOSE_BATCH_LIMIT =
                             Config.getInt( "jcifs.smb.client.WriteAndX.Close", 1 );
+    /* Below this the data is cheaper to copy than to write separately
+     */
+    private static final int GATHER_MIN = 1024;
 
     private int fid,
         remaining,
@@ -97,8 +100,8 @@ dataOffset += pad;
         dstIndex += 2;
         writeInt2( remaining, dst, dstIndex );
         dstIndex += 2;
-        dst[dstIndex++] = (byte)0x00;
-        dst[dstIndex++] = (byte)0x00;
+        writeInt2( dataLength >>> 16, dst, dstIndex ); /* DataLengthHigh */
+        dstIndex += 2;
         writeInt2( dataLength, dst, dstIndex );
         dstIndex += 2;
         writeInt2( dataOffset, dst, dstIndex );
@@ -114,7 +117,19 @@ dataOffset += pad;
 while( pad-- > 0 ) {
     dst[dstIndex++] = (byte)0xEE;
 }
-        System.arraycopy( b, off, dst, dstIndex, dataLength );
+        /* If the data is the last thing in the message the transport can
+         * write it straight from the caller's array after the rest of the
+         * message instead of it being copied into the send buffer first.
+         */
+        if( batchLevel == 0 && andx == null && dataLength >= GATHER_MIN ) {
+            gatherBuf = b;
+            gatherOff = off;
+            gatherLen = dataLength;
+        } else {
+            gatherBuf = null;
+            gatherLen = 0;
+            System.arraycopy( b, off, dst, dstIndex, dataLength );
+        }
         dstIndex += dataLength;
 
         return dstIndex - start;
@@ -33,6 +33,7 @@ class SmbComWriteAndXResponse extends AndXServerMessageBlock {
     }
     int readParameterWordsWireFormat( byte[] buffer, int bufferIndex ) {
         count = readInt2( buffer, bufferIndex ) & 0xFFFFL;
+        count |= (readInt2( buffer, bufferIndex + 4 ) & 0xFFFFL) << 16; // CountHigh
         return 8;
     }
     int readBytesWireFormat( byte[] buffer, int bufferIndex ) {
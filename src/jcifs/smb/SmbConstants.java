@@ -1,6 +1,5 @@
 package jcifs.smb;
 
-import java.util.LinkedList;
 import java.net.InetAddress;
 import java.util.TimeZone;
 import jcifs.Config;
@@ -63,6 +62,8 @@ interface SmbConstants {
     static final int CAP_LOCK_AND_READ    = 0x0100;
     static final int CAP_NT_FIND          = 0x0200;
     static final int CAP_DFS              = 0x1000;
+    static final int CAP_LARGE_READX      = 0x4000;
+    static final int CAP_LARGE_WRITEX     = 0x8000;
     static final int CAP_EXTENDED_SECURITY = 0x80000000;
 
     // file attribute encoding
@@ -126,7 +127,31 @@ interface SmbConstants {
     static final long MILLISECONDS_BETWEEN_1970_AND_1601 = 11644473600000L;
     static final TimeZone TZ = TimeZone.getDefault();
 
+    static final boolean USE_LARGE_READWRITE = Config.getBoolean( "jcifs.smb.client.useLargeReadWrite", true );
+    /* A NetBIOS session message carries at most 0x1FFFF bytes so leave
+     * room for the SMB header and ReadAndX/WriteAndX parameters.
+     */
+    static final int MAX_LARGE_READWRITE_SIZE = 127 * 1024;
+    static final int LARGE_READ_SIZE = Math.min( MAX_LARGE_READWRITE_SIZE,
+                Config.getInt( "jcifs.smb.client.largeReadSize", 0xFFFE ));
+    static final int LARGE_WRITE_SIZE = Math.min( MAX_LARGE_READWRITE_SIZE,
+                Config.getInt( "jcifs.smb.client.largeWriteSize", 0xFF00 ));
+    static final boolean USE_SMB2 = Config.getBoolean( "jcifs.smb.client.useSMB2", false );
     static final boolean USE_BATCHING = Config.getBoolean( "jcifs.smb.client.useBatching", true );
+    static final boolean USE_OPLOCKS = Config.getBoolean( "jcifs.smb.client.useOplocks", false );
+    static final int OPLOCK_CACHE_SIZE = Config.getInt( "jcifs.smb.client.oplockCacheSize", 0x40000 );
+    static final int OPLOCK_HOLD_TIME = Config.getInt( "jcifs.smb.client.oplockHoldTime", 10000 );
+    static final int READ_AHEAD = Config.getInt( "jcifs.smb.client.readAhead", 0 );
+    static final int WRITE_BEHIND = Config.getInt( "jcifs.smb.client.writeBehind", 0 );
+    static final boolean USE_SERVER_SIDE_COPY = Config.getBoolean( "jcifs.smb.client.useServerSideCopy", true );
+    static final int COPY_CHUNK_SIZE = 0x100000;
+    static final int COPY_CHUNK_COUNT = 16;
+    static final int COPY_FILES = Config.getInt( "jcifs.smb.client.copyFiles", 8 );
+    static final int COPY_FILES_PER_SERVER = Config.getInt( "jcifs.smb.client.copyFilesPerServer", 4 );
+    static final int COPY_BUFFERS = Config.getInt( "jcifs.smb.client.copyBuffers", 8 );
+    static final int WORKER_THREADS = Config.getInt( "jcifs.smb.client.workerThreads", 16 );
+    static final int WALK_LISTINGS = Config.getInt( "jcifs.smb.client.walkListings", 16 );
+    static final int WALK_LISTINGS_PER_TRANSPORT = Config.getInt( "jcifs.smb.client.walkListingsPerTransport", 8 );
     static final String OEM_ENCODING = Config.getProperty( "jcifs.encoding", Config.DEFAULT_OEM_ENCODING );
     static final String UNI_ENCODING = "UTF-16LE";
     static final int DEFAULT_FLAGS2 =
@@ -140,6 +165,7 @@ interface SmbConstants {
                 ( USE_NTSMBS ? CAP_NT_SMBS : 0 ) |
                 ( USE_NTSTATUS ? CAP_STATUS32 : 0 ) |
                 ( USE_UNICODE ? CAP_UNICODE : 0 ) |
+                ( USE_LARGE_READWRITE ? CAP_LARGE_READX | CAP_LARGE_WRITEX : 0 ) |
                 CAP_DFS;
     static final int FLAGS2 = Config.getInt( "jcifs.smb.client.flags2", DEFAULT_FLAGS2 );
     static final int CAPABILITIES = Config.getInt( "jcifs.smb.client.capabilities", DEFAULT_CAPABILITIES );
@@ -147,14 +173,20 @@ interface SmbConstants {
     static final int RESPONSE_TIMEOUT =
                 Config.getInt( "jcifs.smb.client.responseTimeout", DEFAULT_RESPONSE_TIMEOUT );
 
-    static final LinkedList CONNECTIONS = new LinkedList();
+    static final ConnectionTable CONNECTIONS = new ConnectionTable();
 
     static final int SSN_LIMIT =
             Config.getInt( "jcifs.smb.client.ssnLimit", DEFAULT_SSN_LIMIT );
+    static final int TRANSPORTS_PER_SERVER =
+            Config.getInt( "jcifs.smb.client.transportsPerServer", 1 );
     static final int SO_TIMEOUT =
             Config.getInt( "jcifs.smb.client.soTimeout", DEFAULT_SO_TIMEOUT );
+    static final int ECHO_INTERVAL =
+            Config.getInt( "jcifs.smb.client.echoInterval", 0 );
     static final int CONN_TIMEOUT =
             Config.getInt( "jcifs.smb.client.connTimeout", DEFAULT_CONN_TIMEOUT );
+    static final int NIO_SELECTORS =
+            Config.getInt( "jcifs.smb.client.nioSelectors", 0 );
     static final String NATIVE_OS =
             Config.getProperty( "jcifs.smb.client.nativeOs", System.getProperty( "os.name" ));
     static final String NATIVE_LANMAN =
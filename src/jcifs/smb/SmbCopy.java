@@ -0,0 +1,544 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import jcifs.util.LogStream;
+
+/**
+ * Copies a file or a directory tree from one SMB location to another.
+ * The tree is walked by the calling thread which hands each file to a
+ * pool of worker threads so that several files are copied at once, up to
+ * a limit in total and per server. The data of each file is copied with
+ * several reads and writes outstanding at once in buffers shared by all
+ * of the files of the copy. If the source and destination are on the same
+ * server the server is asked to copy the data itself as described for
+ * <tt>jcifs.smb.client.useServerSideCopy</tt>.
+ * <p>
+ * The progress of a copy may be followed from another thread with
+ * {@link #getBytesCopied()}, {@link #getFilesCopied()} and
+ * {@link #getThroughput()} or by setting an {@link SmbCopyListener}.
+ * {@link SmbFile#copyTo(SmbFile)} performs a copy with the default limits.
+ * An <tt>SmbCopy</tt> may be reused but performs one copy at a time.
+ */
+
+public class SmbCopy implements SmbConstants {
+
+    static LogStream log = LogStream.getInstance();
+
+    class Task implements Runnable {
+        SmbFile src, dest;
+        int attributes;
+        long createTime, lastModified, length;
+        String[] servers;
+
+        Task( SmbFile src, SmbFile dest ) throws SmbException {
+            this.src = src;
+            this.dest = dest;
+            attributes = src.getAttributes();
+            createTime = src.createTime();
+            lastModified = src.lastModified();
+            length = isDirectory() ? 0L : src.length();
+        }
+
+        boolean isDirectory() {
+            return (attributes & SmbFile.ATTR_DIRECTORY) != 0;
+        }
+        public void run() {
+            SmbException e = null;
+            long n = 0L;
+
+            try {
+                n = copyFile( this );
+            } catch( SmbException se ) {
+                e = se;
+            } catch( RuntimeException re ) {
+                e = new SmbException( src.toString(), re );
+            }
+            done( this, n, e );
+        }
+    }
+
+    static class Range {
+        long off;
+        int len;
+        byte[] buf;
+        SmbFuture future;
+    }
+
+    int maxFiles = COPY_FILES;
+    int maxFilesPerServer = COPY_FILES_PER_SERVER;
+    int buffers = COPY_BUFFERS;
+    SmbCopyListener listener;
+
+    LinkedList free = new LinkedList();
+    HashMap perServer = new HashMap();
+    int running;
+    SmbException ex;
+    long bytes, start, end;
+    int files, failed;
+
+/**
+ * Constructs an <tt>SmbCopy</tt> with the limits given by the
+ * <tt>jcifs.smb.client.copyFiles</tt>,
+ * <tt>jcifs.smb.client.copyFilesPerServer</tt> and
+ * <tt>jcifs.smb.client.copyBuffers</tt> properties.
+ */
+    public SmbCopy() {
+    }
+
+/**
+ * Sets the most files copied at once.
+ */
+    public void setMaxFiles( int maxFiles ) {
+        this.maxFiles = maxFiles < 1 ? 1 : maxFiles;
+    }
+/**
+ * Sets the most files copied at once from or to any one server.
+ */
+    public void setMaxFilesPerServer( int maxFilesPerServer ) {
+        this.maxFilesPerServer = maxFilesPerServer < 1 ? 1 : maxFilesPerServer;
+    }
+/**
+ * Sets the number of buffers, each of the read or write size, used to
+ * copy one file. This is also the most reads and writes outstanding at
+ * once for each file.
+ */
+    public void setBuffers( int buffers ) {
+        this.buffers = buffers < 1 ? 1 : buffers;
+    }
+/**
+ * Sets the listener told of each file copied or that failed to copy.
+ */
+    public void setListener( SmbCopyListener listener ) {
+        this.listener = listener;
+    }
+
+/**
+ * Copies the file or directory <tt>src</tt> and its contents to
+ * <tt>dest</tt> as described for {@link SmbFile#copyTo(SmbFile)}. This
+ * method returns when every file has been copied or, if
+ * <tt>jcifs.smb.client.ignoreCopyToException</tt> is <tt>false</tt>,
+ * when the files in progress after the first failure have completed.
+ *
+ * @param src the file or directory to copy
+ * @param dest the destination file or directory
+ * @throws SmbException
+ */
+    public void copy( SmbFile src, SmbFile dest ) throws SmbException {
+        synchronized( this ) {
+            bytes = 0L;
+            files = failed = 0;
+            ex = null;
+            start = System.currentTimeMillis();
+            end = 0L;
+        }
+
+        try {
+            src.checkCopy( dest );
+            if( src.exists() == false ) {
+                throw new SmbException( NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, false );
+            }
+            copy0( new Task( src, dest ));
+        } finally {
+            synchronized( this ) {
+                boolean interrupted = false;
+                while( running > 0 ) {
+                    try {
+                        wait();
+                    } catch( InterruptedException ie ) {
+                        interrupted = true;
+                    }
+                }
+                if( interrupted ) {
+                    Thread.currentThread().interrupt();
+                }
+                end = System.currentTimeMillis();
+                free.clear();
+            }
+        }
+        if( ex != null ) {
+            throw ex;
+        }
+    }
+    void copy0( Task t ) throws SmbException {
+        if( t.isDirectory() == false ) {
+            submit( t );
+            return;
+        }
+
+        if( t.dest.getUncPath0().length() > 1 ) {
+            try {
+                t.dest.mkdir();
+                t.dest.setPathInformation( t.attributes, t.createTime, t.lastModified );
+            } catch( SmbException se ) {
+                if( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED &&
+                        se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION ) {
+                    throw se;
+                }
+            }
+        }
+
+        /* Take the attributes of every entry while they are still those
+         * of the listing; getting them later could query each file.
+         */
+        SmbFile[] list = t.src.listFiles( "*",
+                    SmbFile.ATTR_DIRECTORY | SmbFile.ATTR_HIDDEN | SmbFile.ATTR_SYSTEM, null, null );
+        Task[] tasks = new Task[list.length];
+        try {
+            for( int i = 0; i < list.length; i++ ) {
+                SmbFile f = list[i];
+                tasks[i] = new Task( f, new SmbFile( t.dest,
+                                f.getName(),
+                                f.type,
+                                f.getAttributes(),
+                                f.createTime(),
+                                f.lastModified(),
+                                f.length() ));
+            }
+        } catch( UnknownHostException uhe ) {
+            throw new SmbException( t.src.toString(), uhe );
+        } catch( MalformedURLException mue ) {
+            throw new SmbException( t.src.toString(), mue );
+        }
+
+        for( int i = 0; i < tasks.length; i++ ) {
+            copy0( tasks[i] );
+        }
+    }
+
+    /* Wait until the file may be started within the limits and hand it
+     * to a worker thread.
+     */
+    void submit( Task t ) throws SmbException {
+        String s1 = t.src.getServer().toLowerCase();
+        String s2 = t.dest.getServer().toLowerCase();
+        t.servers = s1.equals( s2 ) ? new String[] { s1 } : new String[] { s1, s2 };
+
+        synchronized( this ) {
+            while( ex == null && (running >= maxFiles || busy( t.servers ))) {
+                try {
+                    wait();
+                } catch( InterruptedException ie ) {
+                    throw new SmbException( t.dest.toString(), ie );
+                }
+            }
+            if( ex != null ) {
+                throw ex;
+            }
+            running++;
+            for( int i = 0; i < t.servers.length; i++ ) {
+                int[] count = (int[])perServer.get( t.servers[i] );
+                if( count == null ) {
+                    count = new int[1];
+                    perServer.put( t.servers[i], count );
+                }
+                count[0]++;
+            }
+        }
+
+        WorkerPool.execute( t );
+    }
+    boolean busy( String[] servers ) {
+        for( int i = 0; i < servers.length; i++ ) {
+            int[] count = (int[])perServer.get( servers[i] );
+            if( count != null && count[0] >= maxFilesPerServer ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    void done( Task t, long n, SmbException se ) {
+        try {
+            if( se != null && SmbFile.ignoreCopyToException && log.level > 1 ) {
+                se.printStackTrace( log );
+            }
+            if( listener != null ) {
+                if( se == null ) {
+                    listener.fileCopied( t.src, t.dest, n );
+                } else {
+                    listener.copyFailed( t.src, t.dest, se );
+                }
+            }
+        } finally {
+            synchronized( this ) {
+                if( se == null ) {
+                    files++;
+                } else {
+                    failed++;
+                    if( ex == null && SmbFile.ignoreCopyToException == false ) {
+                        ex = new SmbException( "Failed to copy file from [" +
+                                    t.src + "] to [" + t.dest + "]", se );
+                    }
+                }
+                running--;
+                for( int i = 0; i < t.servers.length; i++ ) {
+                    ((int[])perServer.get( t.servers[i] ))[0]--;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /* Called by a worker thread to copy one file. Returns the number of
+     * bytes copied.
+     */
+    long copyFile( Task t ) throws SmbException {
+        SmbFile src = t.src, dest = t.dest;
+        long n;
+
+        try {
+            src.open( SmbFile.O_RDONLY, 0, SmbFile.ATTR_NORMAL, 0 );
+            dest.connect0();
+
+            /* If both files are on the same server it can copy the
+             * data itself. FSCTL_SRV_COPYCHUNK requires read access
+             * to the target as well.
+             */
+            SmbTransport trans = src.tree.session.transport;
+            boolean serverSide = USE_SERVER_SIDE_COPY &&
+                        dest.tree.session.transport == trans &&
+                        trans.noCopyChunk == false;
+            int access = FILE_WRITE_DATA | FILE_WRITE_ATTRIBUTES;
+            if( serverSide ) {
+                access |= FILE_READ_DATA;
+            }
+
+            try {
+                dest.open( SmbFile.O_CREAT | SmbFile.O_WRONLY | SmbFile.O_TRUNC,
+                        access, t.attributes, 0 );
+            } catch( SmbAuthException sae ) {
+                if(( dest.getAttributes() & SmbFile.ATTR_READONLY ) == 0 ) {
+                    throw sae;
+                }
+                /* Remove READONLY and try again
+                 */
+                dest.setPathInformation( dest.getAttributes() & ~SmbFile.ATTR_READONLY, 0L, 0L );
+                dest.open( SmbFile.O_CREAT | SmbFile.O_WRONLY | SmbFile.O_TRUNC,
+                        access, t.attributes, 0 );
+            }
+
+            if( serverSide && src.copyChunks( dest, t.length )) {
+                n = t.length;
+                synchronized( this ) {
+                    bytes += n;
+                }
+            } else {
+                n = copyData( t );
+            }
+
+            dest.send( new Trans2SetFileInformation(
+                    dest.fid, t.attributes, t.createTime, t.lastModified ),
+                    new Trans2SetFileInformationResponse() );
+            dest.close( 0L );
+        } finally {
+            /* The destination is still open only after an error.
+             */
+            try {
+                dest.close();
+            } catch( SmbException se ) {
+                if( log.level >= 3 )
+                    se.printStackTrace( log );
+            }
+            src.close();
+        }
+
+        return n;
+    }
+    /* Read the file into the buffers of the copy, up to the number of
+     * buffers outstanding, and write each buffer once it has been read.
+     * A read that comes back short ends the copy only if it reaches the
+     * length taken with the attributes; otherwise the rest of it is read
+     * again. Data beyond that length is copied if the file has grown.
+     */
+    long copyData( Task t ) throws SmbException {
+        SmbFile src = t.src, dest = t.dest;
+        SmbTransport rt = src.tree.session.transport;
+        SmbTransport wt = dest.tree.session.transport;
+        int bsize = Math.min( rt.getReadSize( src ), wt.getWriteSize( dest ));
+        boolean andx = wt.hasCapability( ServerMessageBlock.CAP_NT_SMBS );
+        LinkedList reads = new LinkedList();
+        LinkedList writes = new LinkedList();
+        long next = 0L, total = 0L;
+        boolean eof = false;
+
+        for( ;; ) {
+            while( eof == false && reads.size() + writes.size() < buffers &&
+                        (next < t.length || reads.isEmpty()) ) {
+                Range r = new Range();
+                r.off = next;
+                r.len = bsize;
+                r.buf = take( bsize );
+                read( src, r );
+                reads.add( r );
+                next += bsize;
+            }
+            if( reads.isEmpty() ) {
+                break;
+            }
+
+            Range r = (Range)reads.removeFirst();
+            int n = ((Integer)r.future.getResult()).intValue();
+            int len = r.len;
+            if( n > 0 && eof == false ) {
+                r.len = n;
+                write( dest, r, andx );
+                writes.add( r );
+            } else {
+                give( r.buf );
+            }
+            if( n < len && eof == false ) {
+                if( r.off + n >= t.length ) {
+                    eof = true;
+                } else if( n == 0 ) {
+                    throw new SmbException( "Read of " + src + " ended at " +
+                                r.off + " of " + t.length + " bytes" );
+                } else {
+                    Range rest = new Range();
+                    rest.off = r.off + n;
+                    rest.len = len - n;
+                    rest.buf = take( bsize );
+                    read( src, rest );
+                    reads.addFirst( rest );
+                }
+            }
+
+            if( writes.isEmpty() == false && reads.size() + writes.size() >= buffers ) {
+                total += collect( writes );
+            }
+        }
+        while( writes.isEmpty() == false ) {
+            total += collect( writes );
+        }
+        if( total < t.length ) {
+            throw new SmbException( "Copied " + total + " of " +
+                        t.length + " bytes of " + src );
+        }
+
+        return total;
+    }
+    void read( SmbFile src, Range r ) throws SmbException {
+        final SmbComReadAndXResponse resp = new SmbComReadAndXResponse( r.buf, 0 );
+        r.future = new SmbFuture( new SmbComReadAndX( src.fid, r.off, r.len, null ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se != null )
+                    throw se;
+                return Integer.valueOf( resp.dataLength > 0 ? resp.dataLength : 0 );
+            }
+        };
+        src.sendAsync( r.future );
+    }
+    void write( SmbFile dest, Range r, boolean andx ) throws SmbException {
+        final int len = r.len;
+        final ServerMessageBlock resp;
+        ServerMessageBlock req;
+
+        if( andx ) {
+            req = new SmbComWriteAndX( dest.fid, r.off, 0, r.buf, 0, len, null );
+            resp = new SmbComWriteAndXResponse();
+        } else {
+            SmbComWrite w = new SmbComWrite();
+            w.setParam( dest.fid, r.off, 0, r.buf, 0, len );
+            req = w;
+            resp = new SmbComWriteResponse();
+        }
+        r.future = new SmbFuture( req, resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se != null )
+                    throw se;
+                long count = resp instanceof SmbComWriteAndXResponse ?
+                            ((SmbComWriteAndXResponse)resp).count :
+                            ((SmbComWriteResponse)resp).count;
+                if( count != len )
+                    throw new SmbException( "Short write: " + count + " of " + len + " bytes" );
+                return null;
+            }
+        };
+        dest.sendAsync( r.future );
+    }
+    /* Wait for the oldest write and put its buffer back.
+     */
+    int collect( LinkedList writes ) throws SmbException {
+        Range r = (Range)writes.removeFirst();
+        r.future.getResult();
+        give( r.buf );
+        synchronized( this ) {
+            bytes += r.len;
+        }
+        return r.len;
+    }
+    /* Buffers still in use by requests abandoned after an error are never
+     * given back.
+     */
+    byte[] take( int size ) {
+        synchronized( free ) {
+            while( free.isEmpty() == false ) {
+                byte[] b = (byte[])free.removeFirst();
+                if( b.length >= size ) {
+                    return b;
+                }
+            }
+        }
+        return new byte[size];
+    }
+    void give( byte[] b ) {
+        synchronized( free ) {
+            free.add( b );
+        }
+    }
+
+/**
+ * Returns the number of bytes copied so far.
+ */
+    public synchronized long getBytesCopied() {
+        return bytes;
+    }
+/**
+ * Returns the number of files copied so far.
+ */
+    public synchronized int getFilesCopied() {
+        return files;
+    }
+/**
+ * Returns the number of files that failed to copy so far.
+ */
+    public synchronized int getFilesFailed() {
+        return failed;
+    }
+/**
+ * Returns the number of milliseconds since the copy started or, once it
+ * has completed, that it took.
+ */
+    public synchronized long getElapsedTime() {
+        if( start == 0L ) {
+            return 0L;
+        }
+        return (end > 0L ? end : System.currentTimeMillis()) - start;
+    }
+/**
+ * Returns the average number of bytes copied per second so far.
+ */
+    public long getThroughput() {
+        long t = getElapsedTime();
+        return t > 0L ? getBytesCopied() * 1000L / t : 0L;
+    }
+}
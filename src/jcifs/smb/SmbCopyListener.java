@@ -0,0 +1,45 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+/**
+ * Receives the outcome of each file copied by an {@link SmbCopy}. The
+ * methods are called by the threads that copy the files, possibly
+ * several at once, so they should be thread safe and return promptly.
+ */
+
+public interface SmbCopyListener {
+
+/**
+ * Called when a file has been copied.
+ *
+ * @param src the file copied
+ * @param dest the copy
+ * @param length the number of bytes copied
+ */
+    public void fileCopied( SmbFile src, SmbFile dest, long length );
+
+/**
+ * Called when copying a file failed. If
+ * <tt>jcifs.smb.client.ignoreCopyToException</tt> is <tt>true</tt> the
+ * copy continues with the other files; otherwise no further files are
+ * started and the exception is thrown by {@link SmbCopy#copy}.
+ */
+    public void copyFailed( SmbFile src, SmbFile dest, SmbException e );
+}
@@ -0,0 +1,160 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+import jcifs.util.LogStream;
+
+/* Reads a file with several ReadAndX requests outstanding at once and
+ * writes the data to a channel in order. The file is opened once for each
+ * transport the ConnectionTable will open to the server, up to the
+ * parallelism, and the ranges are spread over the handles in turn so that
+ * both the window of each transport and the pool of transports are used.
+ * The data is read by the transport straight into the buffer of its range.
+ */
+
+class SmbDownload {
+
+    static LogStream log = LogStream.getInstance();
+
+    static class Range {
+        long off;
+        int len;
+        byte[] buf;
+        SmbFuture future;
+    }
+
+    SmbFile file;
+    int parallelism;
+    SmbFile[] handles;
+    int readSize;
+    LinkedList pending = new LinkedList();
+    LinkedList free = new LinkedList();
+
+    SmbDownload( SmbFile file, int parallelism ) {
+        this.file = file;
+        this.parallelism = parallelism < 1 ? 1 : parallelism;
+    }
+
+    long run( WritableByteChannel dst ) throws IOException {
+        long length = file.length();
+        long next = 0L, total = 0L;
+
+        try {
+            open();
+
+            int h = 0;
+            for( ;; ) {
+                while( pending.size() < parallelism && next < length ) {
+                    Range r = new Range();
+                    r.off = next;
+                    r.len = (int)Math.min( readSize, length - next );
+                    r.buf = free.isEmpty() ? new byte[readSize] : (byte[])free.removeFirst();
+                    send( handles[h], r );
+                    h = (h + 1) % handles.length;
+                    pending.add( r );
+                    next += r.len;
+                }
+                if( pending.isEmpty() ) {
+                    break;
+                }
+
+                Range r = (Range)pending.removeFirst();
+                int n = ((Integer)r.future.getResult()).intValue();
+                ByteBuffer bb = ByteBuffer.wrap( r.buf, 0, n );
+                while( bb.hasRemaining() ) {
+                    dst.write( bb );
+                }
+                total += n;
+                free.add( r.buf );
+
+                if( n == 0 && r.len > 0 ) {
+                    /* The file was truncated while it was being read
+                     */
+                    throw new SmbException( "Read of " + file + " ended at " +
+                                r.off + " of " + length + " bytes" );
+                } else if( n < r.len ) {
+                    /* The server may return less than asked before the end
+                     * of the file. The rest must be written next so read it
+                     * before anything else.
+                     */
+                    if( log.level >= 4 )
+                        log.println( "download: short read at " + (r.off + n) + " of " + file );
+                    Range rest = new Range();
+                    rest.off = r.off + n;
+                    rest.len = r.len - n;
+                    rest.buf = free.isEmpty() ? new byte[readSize] : (byte[])free.removeFirst();
+                    send( handles[h], rest );
+                    h = (h + 1) % handles.length;
+                    pending.addFirst( rest );
+                }
+            }
+        } finally {
+            close();
+        }
+
+        return total;
+    }
+    void open() throws SmbException {
+        file.connect0();
+        SmbTransport trans = file.tree.session.transport;
+        int n = Math.min( parallelism, ConnectionTable.poolSize( trans.address ));
+
+        handles = new SmbFile[n];
+        readSize = Integer.MAX_VALUE;
+        for( int i = 0; i < n; i++ ) {
+            SmbFile f = new SmbFile( file.getURL(), file.auth );
+            f.open( SmbFile.O_RDONLY, 0, SmbFile.ATTR_NORMAL, 0 );
+            handles[i] = f;
+            readSize = Math.min( readSize, f.tree.session.transport.getReadSize( f ));
+        }
+    }
+    void send( SmbFile f, Range r ) throws SmbException {
+        final SmbComReadAndXResponse resp = new SmbComReadAndXResponse( r.buf, 0 );
+        r.future = new SmbFuture( new SmbComReadAndX( f.fid, r.off, r.len, null ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se != null )
+                    throw se;
+                return Integer.valueOf( resp.dataLength > 0 ? resp.dataLength : 0 );
+            }
+        };
+        f.sendAsync( r.future );
+    }
+    /* Reads still outstanding after an error are abandoned; closing the
+     * handles does not wait for them.
+     */
+    void close() {
+        if( handles == null ) {
+            return;
+        }
+        for( int i = 0; i < handles.length; i++ ) {
+            if( handles[i] != null ) {
+                try {
+                    handles[i].close();
+                } catch( SmbException se ) {
+                    if( log.level >= 3 )
+                        se.printStackTrace( log );
+                }
+            }
+        }
+    }
+}
@@ -22,9 +22,14 @@ import java.net.URLConnection;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -415,7 +420,7 @@ public class SmbFile extends URLConnection implements SmbConstants {
     private long lastModified;
     private int attributes;
     private long attrExpiration;
-    private long size;
+    long size;
     private long sizeExpiration;
     private boolean isExists;
     private int shareAccess = FILE_SHARE_READ | FILE_SHARE_WRITE | FILE_SHARE_DELETE;
@@ -431,6 +436,7 @@ public class SmbFile extends URLConnection implements SmbConstants {
     int type;
     boolean opened;
     int tree_num;
+    SmbOplock oplock;                // Set by open() if the server granted one
 
 /** 
  * Constructs an SmbFile representing a resource on an SMB network such as
@@ -782,6 +788,13 @@ public class SmbFile extends URLConnection implements SmbConstants {
             }
         }
     }
+    void sendAsync( SmbFuture future ) throws SmbException {
+        /* A referral returned by the server is only seen when the
+         * result is collected; see the result methods of the callers.
+         */
+        resolveDfs( (ServerMessageBlock)future.getRequest() );
+        tree.sendAsync( future );
+    }
 
     static String queryLookup( String query, String param ) {
         char in[] = query.toCharArray();
@@ -967,6 +980,13 @@ int addressIndex;
         return tree != null && tree.connectionState == 2;
     }
     int open0( int flags, int access, int attrs, int options ) throws SmbException {
+        return open0( flags, access, attrs, options, false );
+    }
+    /* If oplocks is true a handle to the same file kept open under a batch
+     * oplock is reused or else an oplock is requested with the open. The
+     * oplock field is set to the oplock held, if any.
+     */
+    int open0( int flags, int access, int attrs, int options, boolean oplocks ) throws SmbException {
         int f;
 
         connect0();
@@ -979,6 +999,10 @@ int addressIndex;
          */
 
         if( tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS )) {
+            oplocks = oplocks && USE_OPLOCKS && this instanceof SmbNamedPipe == false;
+            if( oplocks && (oplock = SmbOplock.reopen( this, flags, access, shareAccess )) != null ) {
+                return oplock.fid;
+            }
             SmbComNTCreateAndXResponse response = new SmbComNTCreateAndXResponse();
 SmbComNTCreateAndX request = new SmbComNTCreateAndX( unc, flags, access, shareAccess, attrs, options, null );
 if (this instanceof SmbNamedPipe) {
@@ -986,11 +1010,17 @@ if (this instanceof SmbNamedPipe) {
     request.desiredAccess |= 0x20000;
     response.isExtended = true;
 }
+            if( oplocks ) {
+                request.flags0 |= SmbOplock.REQUEST_BATCH;
+            }
             send( request, response );
             f = response.fid;
             attributes = response.extFileAttributes & ATTR_GET_MASK;
             attrExpiration = System.currentTimeMillis() + attrExpirationPeriod;
             isExists = true;
+            if( oplocks ) {
+                oplock = SmbOplock.granted( this, response, access, shareAccess );
+            }
         } else {
             SmbComOpenAndXResponse response = new SmbComOpenAndXResponse();
             send( new SmbComOpenAndX( unc, access, flags, null ), response );
@@ -1000,12 +1030,127 @@ if (this instanceof SmbNamedPipe) {
         return f;
     }
     void open( int flags, int access, int attrs, int options ) throws SmbException {
+        open( flags, access, attrs, options, false );
+    }
+    /* The streams open with oplocks true. They keep the cache of the
+     * oplock up to date with whatever they write.
+     */
+    void open( int flags, int access, int attrs, int options, boolean oplocks ) throws SmbException {
         if( isOpen() ) {
             return;
         }
-        fid = open0( flags, access, attrs, options );
+        oplock = null;
+        fid = open0( flags, access, attrs, options, oplocks );
+        opened = true;
+        tree_num = tree.tree_num;
+    }
+    /* Open the file and, if the server accepts a ReadAndX chained to the
+     * NTCreateAndX, read up to len bytes from the start of it in the same
+     * round trip. Returns the number of bytes read or -1 if the file was
+     * already open, a handle kept open under an oplock was reused or
+     * nothing was read with the open. The open can succeed and the read
+     * fail, on a directory or a locked range for example, in which case
+     * the file is left open as if it had been opened alone.
+     */
+    int openAndRead( int flags, int access, int attrs, int options,
+                byte[] b, int len ) throws SmbException {
+        if( isOpen() ) {
+            return -1;
+        }
+        connect0();
+        if( tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS ) == false ||
+                    this instanceof SmbNamedPipe ) {
+            open( flags, access, attrs, options, true );
+            return -1;
+        }
+        oplock = null;
+        if( USE_OPLOCKS && (oplock = SmbOplock.reopen( this, flags, access, shareAccess )) != null ) {
+            fid = oplock.fid;
+            opened = true;
+            tree_num = tree.tree_num;
+            return -1;
+        }
+
+        if( log.level >= 3 )
+            log.println( "openAndRead: " + unc + ",len=" + len );
+
+        SmbComReadAndXResponse rresp = new SmbComReadAndXResponse( b, 0 );
+        rresp.chained = true;
+        SmbComNTCreateAndXResponse response = new SmbComNTCreateAndXResponse();
+        response.andx = rresp;
+        SmbComNTCreateAndX request = new SmbComNTCreateAndX( unc, flags, access, shareAccess,
+                    attrs, options, new SmbComReadAndX( 0, 0L, len, null ));
+        if( USE_OPLOCKS ) {
+            request.flags0 |= SmbOplock.REQUEST_BATCH;
+        }
+        try {
+            send( request, response );
+        } catch( SmbException se ) {
+            if( response.errorCode == 0 || response.wordCount == 0 || response.verifyFailed ) {
+                throw se; /* the open failed */
+            }
+            rresp.received = false;
+        }
+        fid = response.fid;
         opened = true;
         tree_num = tree.tree_num;
+        openResult( response );
+        if( USE_OPLOCKS ) {
+            oplock = SmbOplock.granted( this, response, access, shareAccess );
+        }
+
+        return rresp.received ? rresp.dataLength : -1;
+    }
+    /* Cache what an NTCreateAndX response says about the file.
+     */
+    void openResult( SmbComNTCreateAndXResponse response ) {
+        attributes = response.extFileAttributes & ATTR_GET_MASK;
+        createTime = response.creationTime;
+        lastModified = response.lastWriteTime;
+        size = response.directory ? 0L : response.endOfFile;
+        isExists = true;
+        attrExpiration = sizeExpiration = System.currentTimeMillis() + attrExpirationPeriod;
+    }
+    /* Read the attributes, times and size of the file or directory by
+     * opening it with a Close chained to the NTCreateAndX so that it costs
+     * one round trip. Returns false if the server did not take the chain
+     * or the file could not be opened just to read its attributes in which
+     * case the caller must query the path instead.
+     */
+    boolean probe() throws SmbException {
+        if( tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS ) == false ) {
+            return false;
+        }
+        SmbComNTCreateAndX request = new SmbComNTCreateAndX( unc, 0, 0, shareAccess,
+                    ATTR_NORMAL, 0, new SmbComClose( 0, 0L ));
+        if( USE_BATCHING == false || request.getBatchLimit( ServerMessageBlock.SMB_COM_CLOSE ) == 0 ) {
+            return false; /* an open and a close would be two round trips */
+        }
+        request.setAttributesOnly();
+
+        if( log.level >= 3 )
+            log.println( "probe: " + unc );
+
+        SmbComBlankResponse cresp = new SmbComBlankResponse();
+        SmbComNTCreateAndXResponse response = new SmbComNTCreateAndXResponse();
+        response.andx = cresp;
+        try {
+            send( request, response );
+        } catch( SmbException se ) {
+            switch (se.getNtStatus()) {
+                case NtStatus.NT_STATUS_ACCESS_DENIED:
+                case NtStatus.NT_STATUS_SHARING_VIOLATION:
+                    return false;
+            }
+            throw se;
+        }
+        if( cresp.received == false ) {
+            /* The server did not close the file for us
+             */
+            close( response.fid, 0L );
+        }
+        openResult( response );
+        return true;
     }
     boolean isOpen() {
         boolean ans = opened && isConnected() && tree_num == tree.tree_num;
@@ -1026,6 +1171,15 @@ if (this instanceof SmbNamedPipe) {
         if( isOpen() == false ) {
             return;
         }
+        SmbOplock o = oplock;
+        oplock = null;
+        if( o != null ) {
+            if( o.release( lastWriteTime )) {
+                opened = false; /* but the handle is kept until the oplock is broken */
+                return;
+            }
+            o.closed();
+        }
         close( fid, lastWriteTime );
         opened = false;
     }
@@ -1414,11 +1568,14 @@ if (this instanceof SmbNamedPipe) {
                                         share.equalsIgnoreCase( "IPC$" )) {
                 connect0(); // treeConnect is good enough
             } else {
-                Info info = queryPath( getUncPath0(),
-                    Trans2QueryPathInformationResponse.SMB_QUERY_FILE_BASIC_INFO );
-                attributes = info.getAttributes();
-                createTime = info.getCreateTime();
-                lastModified = info.getLastWriteTime();
+                connect0();
+                if( probe() == false ) {
+                    Info info = queryPath( getUncPath0(),
+                        Trans2QueryPathInformationResponse.SMB_QUERY_FILE_BASIC_INFO );
+                    attributes = info.getAttributes();
+                    createTime = info.getCreateTime();
+                    lastModified = info.getLastWriteTime();
+                }
             }
 
             /* If any of the above fail, isExists will not be set true
@@ -1444,6 +1601,75 @@ if (this instanceof SmbNamedPipe) {
         return isExists;
     }
 
+/**
+ * Starts the same test as {@link #exists()} but returns without waiting
+ * for the server to answer. The result of the returned future is a
+ * <tt>Boolean</tt>. Only files and directories within a share are queried
+ * asynchronously; for other resources the test is performed before this
+ * method returns.
+ *
+ * @return a future holding the result of <code>exists()</code>
+ */
+
+    public SmbFuture existsAsync() throws SmbException {
+        if( attrExpiration > System.currentTimeMillis() ) {
+            return new SmbFuture( Boolean.valueOf( isExists ));
+        }
+        if( share == null || getUncPath0().length() == 1 ||
+                                    share.equalsIgnoreCase( "IPC$" )) {
+            return new SmbFuture( Boolean.valueOf( exists() ));
+        }
+
+        connect0();
+        if( tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS ) == false ) {
+            return new SmbFuture( Boolean.valueOf( exists() ));
+        }
+
+        final Trans2QueryPathInformationResponse resp =
+                new Trans2QueryPathInformationResponse(
+                Trans2QueryPathInformationResponse.SMB_QUERY_FILE_BASIC_INFO );
+        SmbFuture future = new SmbFuture( new Trans2QueryPathInformation( getUncPath0(),
+                Trans2QueryPathInformationResponse.SMB_QUERY_FILE_BASIC_INFO ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                return Boolean.valueOf( existsResult( resp.info, se ));
+            }
+        };
+        sendAsync( future );
+        return future;
+    }
+    boolean existsResult( Info info, SmbException se ) throws SmbException {
+        if( se instanceof DfsReferral ) {
+            attrExpiration = 0;
+            return exists();
+        }
+
+        attributes = ATTR_READONLY | ATTR_DIRECTORY;
+        createTime = 0L;
+        lastModified = 0L;
+        isExists = false;
+
+        if( se == null ) {
+            attributes = info.getAttributes();
+            createTime = info.getCreateTime();
+            lastModified = info.getLastWriteTime();
+            isExists = true;
+        } else {
+            switch (se.getNtStatus()) {
+                case NtStatus.NT_STATUS_NO_SUCH_FILE:
+                case NtStatus.NT_STATUS_OBJECT_NAME_INVALID:
+                case NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND:
+                case NtStatus.NT_STATUS_OBJECT_PATH_NOT_FOUND:
+                    break;
+                default:
+                    throw se;
+            }
+        }
+
+        attrExpiration = System.currentTimeMillis() + attrExpirationPeriod;
+
+        return isExists;
+    }
+
 /**
  * Tests to see if the file this <code>SmbFile</code> represents can be
  * read. Because any file, directory, or other resource can be read if it
@@ -1581,6 +1807,32 @@ if (this instanceof SmbNamedPipe) {
         }
         return 0L;
     }
+/**
+ * Watch this directory for changes. The server reports the kinds of
+ * changes selected by <tt>filter</tt>, a combination of the
+ * <tt>SmbWatch.FILE_NOTIFY_CHANGE_</tt> constants, made to the entries of
+ * this directory or, if <tt>recursive</tt> is true, to anything beneath
+ * it. The changes are collected with {@link jcifs.smb.SmbWatch#take()}.
+ * The watch keeps its own handle on the directory until it is closed.
+ *
+ * @param filter the changes to report
+ * @param recursive whether to include changes in subdirectories
+ * @return the watch
+ * @throws SmbException if this is not a directory or it cannot be opened
+ */
+    public SmbWatch watch( int filter, boolean recursive ) throws SmbException {
+        return watch( filter, recursive, null );
+    }
+/**
+ * Watch this directory for changes as with {@link #watch(int,boolean)}
+ * but pass each change to <tt>listener</tt> rather than queuing it.
+ */
+    public SmbWatch watch( int filter, boolean recursive,
+                SmbWatchListener listener ) throws SmbException {
+        SmbWatch watch = new SmbWatch( this, filter, recursive, listener );
+        watch.start();
+        return watch;
+    }
 /**
  * List the contents of this SMB resource. The list returned by this
  * method will be;
@@ -1703,6 +1955,96 @@ if (this instanceof SmbNamedPipe) {
     public SmbFile[] listFiles( SmbFileFilter filter ) throws SmbException {
         return listFiles( "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, filter );
     }
+/**
+ * Starts the same listing as {@link #listFiles()} but returns without
+ * waiting for the server to answer. The result of the returned future is
+ * an <tt>SmbFile[]</tt>. For a directory the first batch of entries is
+ * requested asynchronously; if the server has more, the remaining batches
+ * are fetched by the thread that calls <tt>getResult</tt>. Workgroups,
+ * servers and shares are listed before this method returns.
+ *
+ * @return a future holding the result of <code>listFiles()</code>
+ */
+    public SmbFuture listFilesAsync() throws SmbException {
+        String p = url.getPath();
+
+        if( url.getHost().length() == 0 || share == null ||
+                    p.lastIndexOf( '/' ) != ( p.length() - 1 )) {
+            return new SmbFuture( listFiles() );
+        }
+
+        final Trans2FindFirst2Response resp = new Trans2FindFirst2Response();
+        SmbFuture future = new SmbFuture( new Trans2FindFirst2( getUncPath0(),
+                "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se instanceof DfsReferral ) {
+                    return listFiles();
+                } else if( se != null ) {
+                    throw se;
+                }
+                ArrayList list = new ArrayList();
+                try {
+                    doFindNext( list, true, resp, null, null );
+                } catch (UnknownHostException uhe) {
+                    throw new SmbException(url.toString(), uhe);
+                } catch (MalformedURLException mue) {
+                    throw new SmbException(url.toString(), mue);
+                }
+                return (SmbFile[])list.toArray(new SmbFile[list.size()]);
+            }
+        };
+        sendAsync( future );
+        return future;
+    }
+/**
+ * Returns an iterator over the contents of this directory that requests
+ * the entries from the server as they are needed rather than listing
+ * the whole directory before returning. The entries are those that
+ * {@link #listFiles(SmbFileFilter)} with the same <tt>wildcard</tt> and
+ * <tt>filter</tt> would return. Workgroups, servers and shares are
+ * listed before this method returns.
+ *
+ * @param wildcard a wildcard expression as described for {@link #listFiles(String)}
+ * @param filter a file filter to exclude files from the results or <tt>null</tt>
+ * @return an iterator over the entries of this directory
+ * @throws SmbException
+ */
+    public SmbFileIterator iterate( String wildcard, SmbFileFilter filter ) throws SmbException {
+        int searchAttributes = ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM;
+
+        if( url.getHost().length() == 0 || share == null ) {
+            return new SmbFileIterator( listFiles( wildcard, searchAttributes, null, filter ));
+        }
+
+        if (filter != null && filter instanceof DosFileFilter) {
+            DosFileFilter dff = (DosFileFilter)filter;
+            if (dff.wildcard != null)
+                wildcard = dff.wildcard;
+            searchAttributes = dff.attributes;
+        }
+
+        return findFirst( wildcard, searchAttributes, null, filter );
+    }
+/**
+ * Walks the tree of files and directories below this directory, passing
+ * each entry to <tt>visitor</tt>. Subdirectories are listed concurrently
+ * by a pool of worker threads, within the limits of <tt>options</tt>, and
+ * the entries are passed to the visitor as each listing returns them.
+ * The attributes of the entries are those of the listing so that
+ * visiting a large tree costs little more than listing its directories.
+ * This method returns when every directory has been listed.
+ *
+ * @param visitor receives the entries and the directories that could not be listed
+ * @param options the depth, filter and limits of the walk or <tt>null</tt> for the defaults
+ * @throws SmbException if this directory cannot be listed
+ * @throws RuntimeException thrown by the visitor, after which the walk stops
+ */
+    public void walk( SmbFileVisitor visitor, SmbWalkOptions options ) throws SmbException {
+        if( options == null ) {
+            options = new SmbWalkOptions();
+        }
+        new SmbWalk( visitor, options ).walk( this );
+    }
     String[] list( String wildcard, int searchAttributes,
                 SmbFilenameFilter fnf, SmbFileFilter ff ) throws SmbException {
         ArrayList list = new ArrayList();
@@ -1967,9 +2309,17 @@ if (this instanceof SmbNamedPipe) {
                 int searchAttributes,
                 SmbFilenameFilter fnf,
                 SmbFileFilter ff ) throws SmbException, UnknownHostException, MalformedURLException {
+        addEntries( list, files, findFirst( wildcard, searchAttributes, fnf, ff ));
+    }
+    /* Start a search of this directory and return an iterator over
+     * its entries.
+     */
+    SmbFileIterator findFirst( String wildcard,
+                int searchAttributes,
+                SmbFilenameFilter fnf,
+                SmbFileFilter ff ) throws SmbException {
         SmbComTransaction req;
         Trans2FindFirst2Response resp;
-        int sid;
         String path = getUncPath0();
         String p = url.getPath();
 
@@ -1985,56 +2335,30 @@ if (this instanceof SmbNamedPipe) {
 
         send( req, resp );
 
-        sid = resp.sid;
-        req = new Trans2FindNext2( sid, resp.resumeKey, resp.lastName );
-
-        /* The only difference between first2 and next2 responses is subCommand
-         * so let's recycle the response object.
-         */
-        resp.subCommand = SmbComTransaction.TRANS2_FIND_NEXT2;
-
-        for( ;; ) {
-            for( int i = 0; i < resp.numEntries; i++ ) {
-                FileEntry e = resp.results[i];
-                String name = e.getName();
-                if( name.length() < 3 ) {
-                    int h = name.hashCode();
-                    if( h == HASH_DOT || h == HASH_DOT_DOT ) {
-                        if (name.equals(".") || name.equals(".."))
-                            continue;
-                    }
-                }
-                if( fnf != null && fnf.accept( this, name ) == false ) {
-                    continue;
-                }
-                if( name.length() > 0 ) {
-                    SmbFile f = new SmbFile( this, name, TYPE_FILESYSTEM,
-                            e.getAttributes(), e.createTime(), e.lastModified(), e.length() );
-                    if( ff != null && ff.accept( f ) == false ) {
-                        continue;
-                    }
-                    if( files ) {
-                        list.add( f );
-                    } else {
-                        list.add( name );
-                    }
-                }
-            }
+        return new SmbFileIterator( this, resp, fnf, ff );
+    }
+    /* Collect the entries of a FIND_FIRST2 response and any further
+     * FIND_NEXT2 responses until the end of the search and then close it.
+     */
+    void doFindNext( ArrayList list,
+                boolean files,
+                Trans2FindFirst2Response resp,
+                SmbFilenameFilter fnf,
+                SmbFileFilter ff ) throws SmbException, UnknownHostException, MalformedURLException {
+        addEntries( list, files, new SmbFileIterator( this, resp, fnf, ff ));
+    }
+    void addEntries( ArrayList list,
+                boolean files,
+                SmbFileIterator iter ) throws SmbException, UnknownHostException, MalformedURLException {
+        SmbFile f;
 
-            if( resp.isEndOfSearch || resp.numEntries == 0 ) {
-                break;
+        while(( f = iter.advance() ) != null ) {
+            if( files ) {
+                list.add( f );
+            } else {
+                /* the unc ends with the name exactly as the server sent it */
+                list.add( f.unc.substring( f.unc.lastIndexOf( '\\' ) + 1 ));
             }
-
-            req.reset( resp.resumeKey, resp.lastName );
-            resp.reset();
-            send( req, resp );
-        }
-
-        try {
-            send( new SmbComFindClose2( sid ), blank_resp() );
-        } catch (SmbException se) {
-            if( log.level >= 4 )
-                se.printStackTrace( log );
         }
     }
 
@@ -2076,227 +2400,100 @@ if (this instanceof SmbNamedPipe) {
         send( new SmbComRename( unc, dest.unc ), blank_resp() );
     }
 
-    class WriterThread extends Thread {
-        byte[] b;
-        int n;
-        long off;
-        boolean ready;
-        SmbFile dest;
-        SmbException e = null;
-        boolean useNTSmbs;
-        SmbComWriteAndX reqx;
-        SmbComWrite req;
-        ServerMessageBlock resp;
-
-        WriterThread() throws SmbException {
-            super( "JCIFS-WriterThread" );
-            useNTSmbs = tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS );
-            if( useNTSmbs ) {
-                reqx = new SmbComWriteAndX();
-                resp = new SmbComWriteAndXResponse();
-            } else {
-                req = new SmbComWrite();
-                resp = new SmbComWriteResponse();
-            }
-            ready = false;
-        }
-
-        synchronized void write( byte[] b, int n, SmbFile dest, long off ) {
-            this.b = b;
-            this.n = n;
-            this.dest = dest;
-            this.off = off;
-            ready = false;
-            notify();
-        }
-
-        public void run() {
-            synchronized( this ) {
-                try {
-                    for( ;; ) {
-                        notify();
-                        ready = true;
-                        while( ready ) {
-                            wait();
-                        }
-                        if( n == -1 ) {
-                            return;
-                        }
-                        if( useNTSmbs ) {
-                            reqx.setParam( dest.fid, off, n, b, 0, n );
-                            dest.send( reqx, resp );
-                        } else {
-                            req.setParam( dest.fid, off, n, b, 0, n );
-                            dest.send( req, resp );
-                        }
-                    }
-                } catch( SmbException e ) {
-                    this.e = e;
-                } catch( Exception x ) {
-                    this.e = new SmbException( "WriterThread", x );
-                }
-                notify();
+    /* Have the server copy the len bytes of this file to dest with
+     * FSCTL_SRV_COPYCHUNK. Both must be open on the same transport. Returns
+     * false if the server does not support it before anything was written
+     * so that the caller can copy the data itself.
+     */
+    boolean copyChunks( SmbFile dest, long len ) throws SmbException {
+        SmbTransport trans = tree.session.transport;
+        int chunkSize = COPY_CHUNK_SIZE;
+        int maxChunks = COPY_CHUNK_COUNT;
+        boolean retried = false;
+        long off = 0L;
+
+        NtTransIoctlResponse resp = new NtTransIoctlResponse();
+        try {
+            send( new NtTransIoctl( fid, NtTransIoctl.FSCTL_SRV_REQUEST_RESUME_KEY, null, 0, 32 ), resp );
+        } catch( SmbException se ) {
+            if( log.level >= 3 )
+                log.println( "server side copy not possible: " + se.getMessage() );
+            if( NtTransIoctl.isUnsupported( se )) {
+                trans.noCopyChunk = true;
             }
+            return false;
         }
-    }
-    void copyTo0( SmbFile dest, byte[][] b, int bsize, WriterThread w,
-            SmbComReadAndX req, SmbComReadAndXResponse resp ) throws SmbException {
-        int i;
-
-        if( attrExpiration < System.currentTimeMillis() ) {
-            attributes = ATTR_READONLY | ATTR_DIRECTORY;
-            createTime = 0L;
-            lastModified = 0L;
-            isExists = false;
-
-            Info info = queryPath( getUncPath0(),
-                    Trans2QueryPathInformationResponse.SMB_QUERY_FILE_BASIC_INFO );
-            attributes = info.getAttributes();
-            createTime = info.getCreateTime();
-            lastModified = info.getLastWriteTime();
-
-            /* If any of the above fails, isExists will not be set true
-             */
-
-            isExists = true;
-            attrExpiration = System.currentTimeMillis() + attrExpirationPeriod;
+        if( resp.outputLength < 24 ) {
+            trans.noCopyChunk = true;
+            return false;
         }
 
-        if( isDirectory() ) {
-            SmbFile[] files;
-            SmbFile ndest;
+        byte[] input = new byte[32 + maxChunks * 24];
+        System.arraycopy( resp.output, 0, input, 0, 24 ); /* resume key */
 
-            String path = dest.getUncPath0();
-            if( path.length() > 1 ) {
-                try {
-                    dest.mkdir();
-                    dest.setPathInformation( attributes, createTime, lastModified );
-                } catch( SmbException se ) {
-                    if( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED &&
-                            se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION ) {
-                        throw se;
-                    }
-                }
-            }
+        while( off < len ) {
+            int count = 0, ii = 32;
+            long o = off;
 
-            files = listFiles( "*", ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, null );
-            try {
-                for( i = 0; i < files.length; i++ ) {
-                    ndest = new SmbFile( dest,
-                                    files[i].getName(),
-                                    files[i].type,
-                                    files[i].attributes,
-                                    files[i].createTime,
-                                    files[i].lastModified,
-                                    files[i].size );
-                    files[i].copyTo0( ndest, b, bsize, w, req, resp );
-                }
-            } catch( UnknownHostException uhe ) {
-                throw new SmbException( url.toString(), uhe );
-            } catch( MalformedURLException mue ) {
-                throw new SmbException( url.toString(), mue );
+            while( count < maxChunks && o < len ) {
+                int n = (int)Math.min( chunkSize, len - o );
+                ServerMessageBlock.writeInt8( o, input, ii );
+                ServerMessageBlock.writeInt8( o, input, ii + 8 );
+                ServerMessageBlock.writeInt4( n, input, ii + 16 );
+                ServerMessageBlock.writeInt4( 0, input, ii + 20 );
+                ii += 24;
+                o += n;
+                count++;
             }
-        } else {
-            long off;
+            ServerMessageBlock.writeInt4( count, input, 24 );
+            ServerMessageBlock.writeInt4( 0, input, 28 );
 
+            resp = new NtTransIoctlResponse();
             try {
-                open( SmbFile.O_RDONLY, 0, ATTR_NORMAL, 0 );
-                try {
-                    dest.open( SmbFile.O_CREAT | SmbFile.O_WRONLY | SmbFile.O_TRUNC,
-                            FILE_WRITE_DATA | FILE_WRITE_ATTRIBUTES,
-                            attributes, 0 );
-                } catch( SmbAuthException sae ) {
-                    if(( dest.attributes & ATTR_READONLY ) != 0 ) {
-                                                /* Remove READONLY and try again
-                                                 */
-                        dest.setPathInformation( dest.attributes & ~ATTR_READONLY, 0L, 0L );
-                        dest.open( SmbFile.O_CREAT | SmbFile.O_WRONLY | SmbFile.O_TRUNC,
-                                FILE_WRITE_DATA | FILE_WRITE_ATTRIBUTES,
-                                attributes, 0 );
-                    } else {
-                        throw sae;
+                dest.send( new NtTransIoctl( dest.fid, NtTransIoctl.FSCTL_SRV_COPYCHUNK, input, ii, 12 ), resp );
+            } catch( SmbException se ) {
+                if( retried == false && resp.outputLength >= 12 ) {
+                    /* The server returned its limits. Try again within them.
+                     */
+                    int c = ServerMessageBlock.readInt4( resp.output, 0 );
+                    int s = ServerMessageBlock.readInt4( resp.output, 4 );
+                    if( c > 0 && s > 0 ) {
+                        maxChunks = Math.min( maxChunks, c );
+                        chunkSize = Math.min( chunkSize, s );
+                        retried = true;
+                        continue;
                     }
                 }
-    
-                i = 0;
-                off = 0L;
-                for( ;; ) {
-                    req.setParam( fid, off, bsize );
-                    resp.setParam( b[i], 0 );
-                    send( req, resp );
-    
-                    synchronized( w ) {
-                        if( w.e != null ) {
-                            throw w.e;
-                        }
-                        while( !w.ready ) {
-                            try {
-                                w.wait();
-                            } catch( InterruptedException ie ) {
-                                throw new SmbException( dest.url.toString(), ie );
-                            }
-                        }
-                        if( w.e != null ) {
-                            throw w.e;
-                        }
-                        if( resp.dataLength <= 0 ) {
-                            break;
-                        }
-                        w.write( b[i], resp.dataLength, dest, off );
+                if( off == 0L ) {
+                    if( log.level >= 3 )
+                        log.println( "server side copy failed: " + se.getMessage() );
+                    if( NtTransIoctl.isUnsupported( se )) {
+                        trans.noCopyChunk = true;
                     }
-    
-                    i = i == 1 ? 0 : 1;
-                    off += resp.dataLength;
+                    return false;
                 }
-    
-                dest.send( new Trans2SetFileInformation(
-                        dest.fid, attributes, createTime, lastModified ),
-                        new Trans2SetFileInformationResponse() );
-                dest.close( 0L );
-            } catch( SmbException se ) {
-
-                if (ignoreCopyToException == false)
-                    throw new SmbException("Failed to copy file from [" + this.toString() + "] to [" + dest.toString() + "]", se);
+                throw se;
+            }
 
-                if( log.level > 1 )
-                    se.printStackTrace( log );
-            } finally {
-                close();
+            long written = resp.outputLength >= 12 ?
+                        ServerMessageBlock.readInt4( resp.output, 8 ) & 0xFFFFFFFFL : 0L;
+            if( written <= 0L ) {
+                throw new SmbException( "Server side copy of " + this + " made no progress" );
             }
+            off += written;
         }
-    }
-/**
- * This method will copy the file or directory represented by this
- * <tt>SmbFile</tt> and it's sub-contents to the location specified by the
- * <tt>dest</tt> parameter. This file and the destination file do not
- * need to be on the same host. This operation does not copy extended
- * file attibutes such as ACLs but it does copy regular attributes as
- * well as create and last write times. This method is almost twice as
- * efficient as manually copying as it employs an additional write
- * thread to read and write data concurrently.
- * <p/>
- * It is not possible (nor meaningful) to copy entire workgroups or
- * servers.
- *
- * @param dest the destination file or directory
- * @throws SmbException
- */
-    public void copyTo( SmbFile dest ) throws SmbException {
-        SmbComReadAndX req;
-        SmbComReadAndXResponse resp;
-        WriterThread w;
-        int bsize;
-        byte[][] b;
 
+        return true;
+    }
+    /* Checks that this file may be copied to dest and connects both.
+     */
+    void checkCopy( SmbFile dest ) throws SmbException {
         /* Should be able to copy an entire share actually
          */
         if( share == null || dest.share == null) {
             throw new SmbException( "Invalid operation for workgroups or servers" );
         }
 
-        req = new SmbComReadAndX();
-        resp = new SmbComReadAndXResponse();
-
         connect0();
         dest.connect0();
 
@@ -2322,31 +2519,88 @@ if (this instanceof SmbNamedPipe) {
             }
         } catch (UnknownHostException uhe) {
         }
+    }
+/**
+ * This method will copy the file or directory represented by this
+ * <tt>SmbFile</tt> and it's sub-contents to the location specified by the
+ * <tt>dest</tt> parameter. This file and the destination file do not
+ * need to be on the same host. This operation does not copy extended
+ * file attibutes such as ACLs but it does copy regular attributes as
+ * well as create and last write times. Several files are copied at once
+ * by a pool of worker threads and the data of each file is read and
+ * written with several requests outstanding at once. See {@link SmbCopy}
+ * to change the limits or follow the progress of a copy.
+ * <p/>
+ * It is not possible (nor meaningful) to copy entire workgroups or
+ * servers.
+ *
+ * @param dest the destination file or directory
+ * @throws SmbException
+ */
+    public void copyTo( SmbFile dest ) throws SmbException {
+        new SmbCopy().copy( this, dest );
+    }
 
-        w = new WriterThread();
-        w.setDaemon( true );
-        w.start();
-
-        /* Downgrade one transport to the lower of the negotiated buffer sizes
-         * so we can just send whatever is received.
-         */
-
-        SmbTransport t1 = tree.session.transport;
-        SmbTransport t2 = dest.tree.session.transport;
-
-        if( t1.snd_buf_size < t2.snd_buf_size ) {
-            t2.snd_buf_size = t1.snd_buf_size;
-        } else {
-            t1.snd_buf_size = t2.snd_buf_size;
+/**
+ * Reads this file into <tt>out</tt> with up to <tt>parallelism</tt> reads
+ * outstanding at once. The file is divided into ranges of the read size
+ * which are requested in order and, if
+ * <tt>jcifs.smb.client.transportsPerServer</tt> allows it, over several
+ * connections to the server. The data is written to <tt>out</tt> in order
+ * as each range arrives. The length of the file is taken when the download
+ * starts; if the file shrinks meanwhile an exception is thrown.
+ *
+ * @param out the stream to write the data to
+ * @param parallelism the most reads outstanding at once
+ * @return the number of bytes written
+ * @throws IOException if reading the file or writing the data fails
+ */
+    public long downloadTo( OutputStream out, int parallelism ) throws IOException {
+        return downloadTo( Channels.newChannel( out ), parallelism );
+    }
+/**
+ * Reads this file into <tt>dst</tt>, such as a <tt>FileChannel</tt>, as
+ * with {@link #downloadTo(OutputStream,int)}.
+ */
+    public long downloadTo( WritableByteChannel dst, int parallelism ) throws IOException {
+        if( isFile() == false ) {
+            throw new SmbException( "Not a file: " + url );
         }
-
-        bsize = Math.min( t1.rcv_buf_size - 70, t1.snd_buf_size - 70 );
-        b = new byte[2][bsize];
-
+        return new SmbDownload( this, parallelism ).run( dst );
+    }
+/**
+ * Creates or replaces this file with the contents of the local file
+ * <tt>src</tt>, writing up to <tt>parallelism</tt> ranges at once. Like
+ * {@link #downloadTo(OutputStream,int)} the writes may be spread over
+ * several connections to the server. Once all of the data has been written
+ * the last modified time of this file is set to that of <tt>src</tt>.
+ *
+ * @param src the local file to upload
+ * @param parallelism the most writes outstanding at once
+ * @return the number of bytes written
+ * @throws IOException if reading the local file or writing this file fails
+ */
+    public long uploadFrom( File src, int parallelism ) throws IOException {
+        FileInputStream in = new FileInputStream( src );
         try {
-            copyTo0( dest, b, bsize, w, req, resp );
+            return uploadFrom( in.getChannel(), src.lastModified(), parallelism );
         } finally {
-            w.write( null, -1, null, 0 );
+            in.close();
+        }
+    }
+/**
+ * Creates or replaces this file with the contents of <tt>src</tt> from
+ * its start to its current size as with {@link #uploadFrom(File,int)}.
+ * The times of this file are left to the server.
+ */
+    public long uploadFrom( FileChannel src, int parallelism ) throws IOException {
+        return uploadFrom( src, 0L, parallelism );
+    }
+    long uploadFrom( FileChannel src, long lastModified, int parallelism ) throws IOException {
+        try {
+            return new SmbUpload( this, parallelism ).run( src, lastModified );
+        } finally {
+            attrExpiration = sizeExpiration = 0;
         }
     }
 
@@ -2459,6 +2713,51 @@ if (this instanceof SmbNamedPipe) {
         return size;
     }
 
+/**
+ * Starts the same query as {@link #length()} but returns without waiting
+ * for the server to answer. The result of the returned future is a
+ * <tt>Long</tt>. Only the size of files and directories within a share is
+ * queried asynchronously; for other resources the query is performed
+ * before this method returns.
+ *
+ * @return a future holding the result of <code>length()</code>
+ */
+
+    public SmbFuture lengthAsync() throws SmbException {
+        if( sizeExpiration > System.currentTimeMillis() ) {
+            return new SmbFuture( Long.valueOf( size ));
+        }
+        if( getType() == TYPE_SHARE || getUncPath0().length() == 1 ||
+                                    type == TYPE_NAMED_PIPE ) {
+            return new SmbFuture( Long.valueOf( length() ));
+        }
+
+        connect0();
+        if( tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS ) == false ) {
+            return new SmbFuture( Long.valueOf( length() ));
+        }
+
+        final Trans2QueryPathInformationResponse resp =
+                new Trans2QueryPathInformationResponse(
+                Trans2QueryPathInformationResponse.SMB_QUERY_FILE_STANDARD_INFO );
+        SmbFuture future = new SmbFuture( new Trans2QueryPathInformation( getUncPath0(),
+                Trans2QueryPathInformationResponse.SMB_QUERY_FILE_STANDARD_INFO ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se instanceof DfsReferral ) {
+                    sizeExpiration = 0;
+                    return Long.valueOf( length() );
+                } else if( se != null ) {
+                    throw se;
+                }
+                size = resp.info.getSize();
+                sizeExpiration = System.currentTimeMillis() + attrExpirationPeriod;
+                return Long.valueOf( size );
+            }
+        };
+        sendAsync( future );
+        return future;
+    }
+
 /**
  * This method returns the free disk space in bytes of the drive this share
  * represents or the drive on which the directory or file resides. Objects
@@ -2837,19 +3136,27 @@ if (this instanceof SmbNamedPipe) {
 
 /**
  * This URLConnection method just returns a new <tt>SmbFileInputStream</tt> created with this file.
+ * If <tt>jcifs.smb.client.useSMB2</tt> is set the file is read with SMB2 if possible
+ * (see <tt>jcifs.smb2.Smb2File</tt>).
  *
  * @throws IOException thrown by <tt>SmbFileInputStream</tt> constructor
  */
     public InputStream getInputStream() throws IOException {
+        if (USE_SMB2)
+            return new jcifs.smb2.Smb2File( this ).getInputStream();
         return new SmbFileInputStream( this );
     }
 
 /**
  * This URLConnection method just returns a new <tt>SmbFileOutputStream</tt> created with this file.
+ * If <tt>jcifs.smb.client.useSMB2</tt> is set the file is written with SMB2 if possible
+ * (see <tt>jcifs.smb2.Smb2File</tt>).
  *
  * @throws IOException thrown by <tt>SmbFileOutputStream</tt> constructor
  */
     public OutputStream getOutputStream() throws IOException {
+        if (USE_SMB2)
+            return new jcifs.smb2.Smb2File( this ).getOutputStream();
         return new SmbFileOutputStream( this );
     }
 
@@ -0,0 +1,83 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+
+/**
+ * A change to a directory reported by an {@link SmbWatch}.
+ */
+
+public class SmbFileChange {
+
+/**
+ * More changes occurred than the server could report. The name is
+ * <tt>null</tt> and the caller should list the directory again to find
+ * out what changed.
+ */
+    public static final int OVERFLOW = 0;
+
+    public static final int FILE_ACTION_ADDED            = 1;
+    public static final int FILE_ACTION_REMOVED          = 2;
+    public static final int FILE_ACTION_MODIFIED         = 3;
+/**
+ * The file was renamed from this name. It is normally followed by a change
+ * with the action <tt>FILE_ACTION_RENAMED_NEW_NAME</tt>.
+ */
+    public static final int FILE_ACTION_RENAMED_OLD_NAME = 4;
+    public static final int FILE_ACTION_RENAMED_NEW_NAME = 5;
+
+    int action;
+    String name;
+    SmbFile dir;
+
+    SmbFileChange( int action, String name ) {
+        this.action = action;
+        this.name = name;
+    }
+
+/**
+ * Returns one of the <tt>FILE_ACTION_</tt> constants or <tt>OVERFLOW</tt>.
+ */
+    public int getAction() {
+        return action;
+    }
+/**
+ * Returns the path of the file that changed relative to the watched
+ * directory using '/' as the separator. It only contains a directory
+ * component if the watch is recursive.
+ */
+    public String getName() {
+        return name;
+    }
+/**
+ * Returns the file that changed or the watched directory itself if the
+ * action is <tt>OVERFLOW</tt>.
+ */
+    public SmbFile getFile() throws MalformedURLException, UnknownHostException {
+        if (name == null)
+            return dir;
+        return new SmbFile( dir, name );
+    }
+
+    public String toString() {
+        return "SmbFileChange[action=" + action + ",name=" + name + "]";
+    }
+}
@@ -24,18 +24,56 @@ import java.net.MalformedURLException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedList;
 
+import jcifs.Config;
 import jcifs.util.transport.TransportException;
 
 /**
  * This InputStream can read bytes from a file on an SMB file server. Offsets are 64 bits.
+ * It is also a <tt>ReadableByteChannel</tt> so that data may be read
+ * straight into a (possibly direct) <tt>ByteBuffer</tt>, or into a local
+ * file with <tt>FileChannel.transferFrom</tt>.
+ * <p>
+ * If <tt>jcifs.smb.client.readAhead</tt> is set, a stream that is read
+ * sequentially keeps that many reads beyond the current position
+ * outstanding and serves later reads from them. <tt>skip</tt> discards
+ * data read ahead.
  */
 
-public class SmbFileInputStream extends InputStream {
+public class SmbFileInputStream extends InputStream implements ReadableByteChannel {
+
+    /* The most data read along with the open of the file
+     */
+    static final int OPEN_READ_SIZE = Config.getInt( "jcifs.smb.client.openReadSize", 4096 );
 
     private long fp;
     private int readSize, openFlags, access;
     private byte[] tmp = new byte[1];
+    /* The start of the file if it was read with the open. A short read
+     * need not be the end of the file; headEof is only set if the open
+     * also said the file ends there. Otherwise reads beyond the head go
+     * to the server.
+     */
+    private byte[] head;
+    private int headLen;
+    private boolean headEof;
+
+    /* Reads sent ahead of the file pointer, in order, and spare buffers.
+     * The first chunk holds the data at fp.
+     */
+    static class Chunk {
+        long off;
+        byte[] buf;
+        SmbFuture future;
+        int n = -1, pos;
+    }
+    private LinkedList ahead, free;
+    private long aheadEnd;
+    private boolean aheadEof;
+    private int sequential;
 
     SmbFile file;
 
@@ -70,13 +108,27 @@ public class SmbFileInputStream extends InputStream {
         this.openFlags = openFlags & 0xFFFF;
         this.access = (openFlags >>> 16) & 0xFFFF;
         if (file.type != SmbFile.TYPE_NAMED_PIPE) {
-            file.open( openFlags, access, SmbFile.ATTR_NORMAL, 0 );
+            file.connect0();
+            SmbTransport trans = file.tree.session.transport;
+            int len = Math.min( OPEN_READ_SIZE, trans.rcv_buf_size - 256 );
+            if (len > 0 && (openFlags & SmbFile.O_TRUNC) == 0) {
+                head = new byte[len];
+                headLen = file.openAndRead( openFlags, access, SmbFile.ATTR_NORMAL, 0, head, len );
+                if (headLen < 0) {
+                    head = null;
+                    headLen = 0;
+                } else {
+                    headEof = headLen < len && headLen == file.size;
+                    if (file.oplock != null)
+                        file.oplock.put( 0L, head, 0, headLen );
+                }
+            }
+            file.open( openFlags, access, SmbFile.ATTR_NORMAL, 0, true );
             this.openFlags &= ~(SmbFile.O_CREAT | SmbFile.O_TRUNC);
         } else {
             file.connect0();
         }
-        readSize = Math.min( file.tree.session.transport.rcv_buf_size - 70,
-                            file.tree.session.transport.server.maxBufferSize - 70 );
+        readSize = file.tree.session.transport.getReadSize( file );
     }
 
     protected IOException seToIoe(SmbException se) {
@@ -101,8 +153,10 @@ public class SmbFileInputStream extends InputStream {
 
     public void close() throws IOException {
         try {
+            drop();
             file.close();
             tmp = null;
+            head = null;
         } catch (SmbException se) {
             throw seToIoe(se);
         }
@@ -115,7 +169,7 @@ public class SmbFileInputStream extends InputStream {
  */
 
     public int read() throws IOException {
-        // need oplocks to cache otherwise use BufferedInputStream
+        // cached only if an oplock is held otherwise use BufferedInputStream
         if( read( tmp, 0, 1 ) == -1 ) {
             return -1;
         }
@@ -145,22 +199,68 @@ public class SmbFileInputStream extends InputStream {
         if( len <= 0 ) {
             return 0;
         }
+        return readDirect( new SmbComReadAndXResponse( b, off ), len );
+    }
+
+/**
+ * Reads bytes from this stream into the given buffer. The data is read
+ * from the network directly into the buffer; if it is a heap buffer no
+ * other copy is made. The buffer's position is advanced by the number
+ * of bytes read.
+ *
+ * @return the number of bytes read or -1 if the end of the file has been reached
+ * @throws IOException if a network error occurs
+ */
+
+    public int read( ByteBuffer dst ) throws IOException {
+        if( dst.remaining() <= 0 ) {
+            return 0;
+        }
+        return readDirect( new SmbComReadAndXResponse( dst ), dst.remaining() );
+    }
+    private int readDirect( SmbComReadAndXResponse response, int len ) throws IOException {
         long start = fp;
 
         if( tmp == null ) {
             throw new IOException( "Bad file descriptor" );
         }
+        if( fp < headLen ) {
+            return readHead( response, len );
+        }
+        if( headEof ) {
+            return -1;
+        }
         // ensure file is open
-        file.open( openFlags, access, SmbFile.ATTR_NORMAL, 0 );
+        file.open( openFlags, access, SmbFile.ATTR_NORMAL, 0, true );
+
+        if( file.oplock != null ) {
+            int n;
+            try {
+                n = file.oplock.read( file, fp, response, len );
+            } catch( SmbException se ) {
+                throw seToIoe(se);
+            }
+            if( n != 0 ) {
+                if( n > 0 )
+                    fp += n;
+                return n;
+            }
+        }
+
+        /* Start reading ahead on the second read in a row that was not
+         * preceded by a skip.
+         */
+        if( SmbConstants.READ_AHEAD > 0 && file.type != SmbFile.TYPE_NAMED_PIPE &&
+                    ++sequential >= 2 ) {
+            return readAhead( response, len );
+        }
 
         /*
          * Read AndX Request / Response
          */
 
         if( file.log.level >= 4 )
-            file.log.println( "read: fid=" + file.fid + ",off=" + off + ",len=" + len );
-
-        SmbComReadAndXResponse response = new SmbComReadAndXResponse( b, off );
+            file.log.println( "read: fid=" + file.fid + ",off=" + response.off + ",len=" + len );
 
         if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
             response.responseTimeout = 0;
@@ -191,11 +291,174 @@ if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
             }
             fp += n;
             len -= n;
-            response.off += n;
+            response.off += n; /* a ByteBuffer's position was advanced as it was read */
         } while( len > 0 && n == r );
 
         return (int)(fp - start);
     }
+
+    /* Keep READ_AHEAD reads of readSize outstanding beyond fp, unless the
+     * end of the file was reached, and copy from them. Only waits for the
+     * first.
+     */
+    private int readAhead( SmbComReadAndXResponse response, int len ) throws IOException {
+        long start = fp;
+
+        if( ahead == null ) {
+            ahead = new LinkedList();
+            free = new LinkedList();
+        }
+        try {
+            fill();
+            while( len > 0 && ahead.isEmpty() == false ) {
+                Chunk c = (Chunk)ahead.getFirst();
+                if( c.n < 0 ) {
+                    if( fp > start && c.future.isDone() == false ) {
+                        break;
+                    }
+                    c.n = ((Integer)c.future.getResult()).intValue();
+                }
+                int m = Math.min( len, c.n - c.pos );
+                if( m > 0 ) {
+                    if( response.bb != null ) {
+                        response.bb.put( c.buf, c.pos, m );
+                    } else {
+                        System.arraycopy( c.buf, c.pos, response.b, response.off, m );
+                        response.off += m;
+                    }
+                    c.pos += m;
+                    fp += m;
+                    len -= m;
+                }
+                if( c.pos < c.n ) {
+                    break;
+                }
+                ahead.removeFirst();
+                free.add( c.buf );
+                if( c.n < readSize ) {
+                    /* A short read need not be the end of the file but the
+                     * reads sent after it no longer follow on from fp. Start
+                     * over from fp with the next read.
+                     */
+                    drop();
+                    return fp > start ? (int)(fp - start) : -1;
+                }
+            }
+            fill();
+        } catch( SmbException se ) {
+            drop();
+            throw seToIoe(se);
+        }
+
+        return fp > start ? (int)(fp - start) : -1;
+    }
+    private void fill() throws SmbException {
+        if( ahead.isEmpty() ) {
+            aheadEnd = fp;
+            aheadEof = false;
+        }
+        while( ahead.size() < SmbConstants.READ_AHEAD && aheadEof == false ) {
+            final Chunk c = new Chunk();
+            c.off = aheadEnd;
+            c.buf = free.isEmpty() ? new byte[readSize] : (byte[])free.removeFirst();
+            final SmbComReadAndXResponse resp = new SmbComReadAndXResponse( c.buf, 0 );
+            c.future = new SmbFuture( new SmbComReadAndX( file.fid, c.off, readSize, null ), resp ) {
+                Object result( SmbException se ) throws SmbException {
+                    if( se != null )
+                        throw se;
+                    return Integer.valueOf( resp.dataLength > 0 ? resp.dataLength : 0 );
+                }
+            };
+            file.sendAsync( c.future );
+            ahead.add( c );
+            aheadEnd += readSize;
+        }
+    }
+    /* Discard whatever was read ahead. The buffers of reads that are still
+     * outstanding are not reused.
+     */
+    private void drop() {
+        sequential = 0;
+        if( ahead == null ) {
+            return;
+        }
+        while( ahead.isEmpty() == false ) {
+            Chunk c = (Chunk)ahead.removeFirst();
+            if( c.future.isDone() ) {
+                free.add( c.buf );
+            }
+        }
+        aheadEof = true;
+    }
+
+    /* Copy from the data read with the open. The caller has checked that
+     * fp is within it.
+     */
+    private int readHead( SmbComReadAndXResponse response, int len ) {
+        int n = (int)Math.min( len, headLen - fp );
+        if( response.bb != null ) {
+            response.bb.put( head, (int)fp, n );
+        } else {
+            System.arraycopy( head, (int)fp, response.b, response.off, n );
+        }
+        fp += n;
+        return n;
+    }
+
+/**
+ * Starts reading up to <tt>len</tt> bytes from the current position
+ * without waiting for the data to arrive. At most one server read is
+ * issued so fewer bytes may be returned. The file pointer is advanced by
+ * the number of bytes requested so several reads may be outstanding at
+ * once. The result of the returned future is an <tt>Integer</tt> holding
+ * the number of bytes read or -1 at the end of the file. The contents of
+ * <tt>b</tt> are undefined until the future completes. Reads from named
+ * pipes are performed before this method returns.
+ *
+ * @throws IOException if a network error occurs
+ */
+
+    public SmbFuture readAsync( byte[] b, int off, int len ) throws IOException {
+        if( len <= 0 || file.type == SmbFile.TYPE_NAMED_PIPE || fp < headLen || headEof ||
+                    file.oplock != null ) {
+            return new SmbFuture( Integer.valueOf( readDirect( b, off, len )));
+        }
+        if( tmp == null ) {
+            throw new IOException( "Bad file descriptor" );
+        }
+        drop();
+
+        try {
+            // ensure file is open
+            file.open( openFlags, access, SmbFile.ATTR_NORMAL, 0, true );
+
+            int r = len > readSize ? readSize : len;
+
+            if( file.log.level >= 4 )
+                file.log.println( "readAsync: fid=" + file.fid + ",r=" + r + ",fp=" + fp );
+
+            final SmbComReadAndXResponse resp = new SmbComReadAndXResponse( b, off );
+            SmbFuture future = new SmbFuture( new SmbComReadAndX( file.fid, fp, r, null ), resp ) {
+                Object result( SmbException se ) throws SmbException {
+                    if( se != null )
+                        throw se;
+                    return Integer.valueOf( resp.dataLength > 0 ? resp.dataLength : -1 );
+                }
+            };
+            file.sendAsync( future );
+            fp += r;
+            return future;
+        } catch( SmbException se ) {
+            throw seToIoe(se);
+        }
+    }
+/**
+ * Tells whether or not this stream is open.
+ */
+
+    public boolean isOpen() {
+        return tmp != null;
+    }
 /**
  * This stream class is unbuffered. Therefore this method will always
  * return 0 for streams connected to regular files. However, a 
@@ -238,6 +501,7 @@ if( file.type == SmbFile.TYPE_NAMED_PIPE ) {
  */
     public long skip( long n ) throws IOException {
         if (n > 0) {
+            drop();
             fp += n;
             return n;
         }
@@ -0,0 +1,214 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import jcifs.util.LogStream;
+
+/**
+ * Iterates over the contents of a directory without listing it all at
+ * once. Returned by {@link SmbFile#iterate(String,SmbFileFilter)}. The
+ * entries of a directory within a share are decoded from one
+ * <tt>FIND_FIRST2</tt> or <tt>FIND_NEXT2</tt> response at a time. The next
+ * batch is requested as soon as one has been received so that it arrives
+ * while the entries of the current batch are returned, and at most two
+ * batches are held at once whatever the size of the directory. The
+ * search is closed once the last entry has been returned or by
+ * {@link #close()}, which should be called if the iteration is abandoned
+ * early.
+ * <p>
+ * Workgroups, servers and shares are listed as by <tt>listFiles</tt>
+ * when the iterator is created.
+ */
+
+public class SmbFileIterator {
+
+    static LogStream log = LogStream.getInstance();
+
+    SmbFile dir;
+    SmbFilenameFilter fnf;
+    SmbFileFilter ff;
+    SmbFile[] files;
+    Trans2FindFirst2Response resp, spare;
+    Trans2FindNext2 req;
+    SmbFuture future; /* the FIND_NEXT2 sent ahead, if any */
+    int sid, index;
+    boolean closed;
+    SmbFile next;
+
+    /* Iterate over the shares, servers or workgroups listed already.
+     */
+    SmbFileIterator( SmbFile[] files ) {
+        this.files = files;
+        closed = true;
+    }
+    /* Iterate over the directory entries of the FIND_FIRST2 response
+     * and those of the FIND_NEXT2 responses that follow it.
+     */
+    SmbFileIterator( SmbFile dir,
+                Trans2FindFirst2Response resp,
+                SmbFilenameFilter fnf,
+                SmbFileFilter ff ) throws SmbException {
+        this.dir = dir;
+        this.resp = resp;
+        this.fnf = fnf;
+        this.ff = ff;
+        sid = resp.sid;
+        req = new Trans2FindNext2( sid, resp.resumeKey, resp.lastName );
+
+        /* The only difference between first2 and next2 responses is subCommand
+         * so let's recycle the response object.
+         */
+        resp.subCommand = SmbComTransaction.TRANS2_FIND_NEXT2;
+        spare = new Trans2FindFirst2Response();
+        spare.subCommand = SmbComTransaction.TRANS2_FIND_NEXT2;
+
+        prefetch();
+    }
+
+/**
+ * Returns <tt>true</tt> if there is another entry. The next batch of
+ * entries is requested from the server if the current one has been
+ * exhausted.
+ *
+ * @throws SmbException if requesting the next batch of entries fails
+ */
+    public boolean hasNext() throws SmbException {
+        if( next == null ) {
+            try {
+                next = advance();
+            } catch( UnknownHostException uhe ) {
+                throw new SmbException( dir.toString(), uhe );
+            } catch( MalformedURLException mue ) {
+                throw new SmbException( dir.toString(), mue );
+            }
+        }
+        return next != null;
+    }
+/**
+ * Returns the next entry or <tt>null</tt> if there are no more.
+ *
+ * @throws SmbException if requesting the next batch of entries fails
+ */
+    public SmbFile next() throws SmbException {
+        if( hasNext() == false ) {
+            return null;
+        }
+        SmbFile f = next;
+        next = null;
+        return f;
+    }
+/**
+ * Closes the search on the server if it has not ended already. Further
+ * calls to <tt>hasNext</tt> return <tt>false</tt>.
+ */
+    public void close() throws SmbException {
+        files = null;
+        index = 0;
+        next = null;
+        if( closed ) {
+            return;
+        }
+        closed = true;
+        resp = null;
+        try {
+            /* Let the request sent ahead complete before the search
+             * is closed under it.
+             */
+            if( future != null ) {
+                SmbFuture f = future;
+                future = null;
+                try {
+                    f.getResult();
+                } catch( SmbException se ) {
+                }
+            }
+            dir.send( new SmbComFindClose2( sid ), new SmbComBlankResponse() );
+        } catch (SmbException se) {
+            if( log.level >= 4 )
+                se.printStackTrace( log );
+        }
+    }
+
+    SmbFile advance() throws SmbException, UnknownHostException, MalformedURLException {
+        if( files != null ) {
+            return index < files.length ? files[index++] : null;
+        }
+
+        while( resp != null ) {
+            while( index < resp.numEntries ) {
+                FileEntry e = resp.results[index++];
+                String name = e.getName();
+                if( name.length() < 3 ) {
+                    int h = name.hashCode();
+                    if( h == SmbFile.HASH_DOT || h == SmbFile.HASH_DOT_DOT ) {
+                        if (name.equals(".") || name.equals(".."))
+                            continue;
+                    }
+                }
+                if( fnf != null && fnf.accept( dir, name ) == false ) {
+                    continue;
+                }
+                if( name.length() > 0 ) {
+                    SmbFile f = new SmbFile( dir, name, SmbFile.TYPE_FILESYSTEM,
+                            e.getAttributes(), e.createTime(), e.lastModified(), e.length() );
+                    if( ff != null && ff.accept( f ) == false ) {
+                        continue;
+                    }
+                    return f;
+                }
+            }
+
+            if( resp.isEndOfSearch || resp.numEntries == 0 ) {
+                close();
+                break;
+            }
+
+            Trans2FindFirst2Response r = (Trans2FindFirst2Response)future.getResult();
+            future = null;
+            spare = resp;
+            resp = r;
+            index = 0;
+            prefetch();
+        }
+
+        return null;
+    }
+    /* Send the FIND_NEXT2 for the batch after the current one without
+     * waiting for it. The resume key and name are taken from the current
+     * batch before any of its entries are returned.
+     */
+    void prefetch() throws SmbException {
+        if( resp.isEndOfSearch || resp.numEntries == 0 ) {
+            return;
+        }
+        req.reset( resp.resumeKey, resp.lastName );
+        spare.reset();
+        final Trans2FindFirst2Response r = spare;
+        future = new SmbFuture( req, r ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se != null )
+                    throw se;
+                return r;
+            }
+        };
+        dir.sendAsync( future );
+    }
+}
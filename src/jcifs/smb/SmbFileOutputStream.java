@@ -23,10 +23,16 @@ import java.io.OutputStream;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.net.MalformedURLException;
+import java.util.LinkedList;
 import jcifs.util.LogStream;
 
 /**
  * This <code>OutputStream</code> can write bytes to a file on an SMB file server.
+ * <p>
+ * If <tt>jcifs.smb.client.writeBehind</tt> is set, writes to files return
+ * once the data has been sent and up to that many writes are outstanding
+ * at once. An error returned by the server for one of them is thrown by
+ * the next <tt>write</tt>, <tt>flush</tt> or <tt>close</tt>.
  */
 
 public class SmbFileOutputStream extends OutputStream {
@@ -40,6 +46,9 @@ public class SmbFileOutputStream extends OutputStream {
     private SmbComWriteAndXResponse rspx;
     private SmbComWrite req;
     private SmbComWriteResponse rsp;
+    private int window;
+    private LinkedList pending, free; /* outstanding write futures, spare buffers */
+    private IOException ex;
 
 /**
  * Creates an {@link java.io.OutputStream} for writing to a file
@@ -139,9 +148,9 @@ write, and/or delete the file while the jCIFS user has the file open.
             file.send( new TransWaitNamedPipe( "\\pipe" + file.unc ),
                                         new TransWaitNamedPipeResponse() );
         }
-        file.open( openFlags, access | SmbConstants.FILE_WRITE_DATA, SmbFile.ATTR_NORMAL, 0 );
+        file.open( openFlags, access | SmbConstants.FILE_WRITE_DATA, SmbFile.ATTR_NORMAL, 0, true );
         this.openFlags &= ~(SmbFile.O_CREAT | SmbFile.O_TRUNC); /* in case close and reopen */
-        writeSize = file.tree.session.transport.snd_buf_size - 70;
+        writeSize = file.tree.session.transport.getWriteSize( file );
 
         useNTSmbs = file.tree.session.transport.hasCapability( ServerMessageBlock.CAP_NT_SMBS );
         if( useNTSmbs ) {
@@ -151,6 +160,11 @@ write, and/or delete the file while the jCIFS user has the file open.
             req = new SmbComWrite();
             rsp = new SmbComWriteResponse();    
         }
+        if( useNTSmbs && SmbConstants.WRITE_BEHIND > 0 && file instanceof SmbNamedPipe == false ) {
+            window = SmbConstants.WRITE_BEHIND;
+            pending = new LinkedList();
+            free = new LinkedList();
+        }
     }
 
 /**
@@ -161,8 +175,30 @@ write, and/or delete the file while the jCIFS user has the file open.
  */
 
     public void close() throws IOException {
-        file.close();
-        tmp = null;
+        try {
+            flush();
+        } finally {
+            file.close();
+            tmp = null;
+            ex = null;
+        }
+    }
+
+/**
+ * Waits for all outstanding writes to complete.
+ *
+ * @throws IOException if one of them failed
+ */
+
+    public void flush() throws IOException {
+        if( pending != null ) {
+            while( pending.isEmpty() == false ) {
+                collect();
+            }
+            if( ex != null ) {
+                throw ex;
+            }
+        }
     }
 
 /**
@@ -194,7 +230,7 @@ write, and/or delete the file while the jCIFS user has the file open.
     void ensureOpen() throws IOException {
         // ensure file is open
         if( file.isOpen() == false ) {
-            file.open( openFlags, access | SmbConstants.FILE_WRITE_DATA, SmbFile.ATTR_NORMAL, 0 );
+            file.open( openFlags, access | SmbConstants.FILE_WRITE_DATA, SmbFile.ATTR_NORMAL, 0, true );
             if( append ) {
                 fp = file.length();
             }
@@ -231,6 +267,11 @@ write, and/or delete the file while the jCIFS user has the file open.
         if( file.log.level >= 4 )
             file.log.println( "write: fid=" + file.fid + ",off=" + off + ",len=" + len );
 
+        if( window > 0 && flags == 0 ) {
+            writeBehind( b, off, len );
+            return;
+        }
+
         int w;
         do {
             w = len > writeSize ? writeSize : len;
@@ -243,6 +284,9 @@ if ((flags & 1) != 0) {
     reqx.writeMode = 0;
 }
                 file.send( reqx, rspx );
+                if( file.oplock != null ) {
+                    file.oplock.write( fp, b, off, (int)rspx.count );
+                }
                 fp += rspx.count;
                 len -= rspx.count;
                 off += rspx.count;
@@ -255,5 +299,63 @@ if ((flags & 1) != 0) {
             }
         } while( len > 0 );
     }
+    /* Copy the data into buffers from the pool and send them without
+     * waiting for the responses. Once window writes are outstanding the
+     * oldest must complete before another is sent.
+     */
+    private void writeBehind( byte[] b, int off, int len ) throws IOException {
+        do {
+            while( pending.isEmpty() == false && (pending.size() >= window ||
+                        ((SmbFuture)pending.getFirst()).isDone()) ) {
+                collect();
+            }
+            if( ex != null ) {
+                throw ex;
+            }
+
+            final int w = len > writeSize ? writeSize : len;
+            final byte[] buf = free.isEmpty() ? new byte[writeSize] : (byte[])free.removeFirst();
+            System.arraycopy( b, off, buf, 0, w );
+
+            final SmbComWriteAndXResponse resp = new SmbComWriteAndXResponse();
+            SmbFuture future = new SmbFuture( new SmbComWriteAndX( file.fid, fp, 0, buf, 0, w, null ), resp ) {
+                Object result( SmbException se ) throws SmbException {
+                    if( se != null )
+                        throw se;
+                    if( resp.count != w )
+                        throw new SmbException( "Short write: " + resp.count + " of " + w + " bytes" );
+                    return buf;
+                }
+            };
+            file.sendAsync( future );
+            pending.add( future );
+            if( file.oplock != null ) {
+                file.oplock.write( fp, buf, 0, w );
+            }
+
+            fp += w;
+            len -= w;
+            off += w;
+        } while( len > 0 );
+    }
+    /* Wait for the oldest outstanding write and put its buffer back in the
+     * pool. Only the first error is kept.
+     */
+    private void collect() {
+        SmbFuture future = (SmbFuture)pending.removeFirst();
+        try {
+            free.add( future.getResult() );
+        } catch( SmbException se ) {
+            if( ex == null ) {
+                ex = se;
+            }
+            SmbOplock o = file.oplock;
+            if( o != null ) {
+                synchronized( o ) {
+                    o.invalidate(); /* it has data that was not written */
+                }
+            }
+        }
+    }
 }
 
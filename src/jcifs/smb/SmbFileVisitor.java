@@ -0,0 +1,51 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+/**
+ * Receives the entries found by {@link SmbFile#walk(SmbFileVisitor,SmbWalkOptions)}.
+ * Directories are listed by several threads at once so the methods may
+ * be called concurrently and must be thread safe. The attributes, times
+ * and length of the <tt>SmbFile</tt>s passed are those of the directory
+ * entry and are returned without contacting the server for the
+ * <tt>jcifs.smb.client.attrExpirationPeriod</tt> after the entry was
+ * listed.
+ */
+
+public interface SmbFileVisitor {
+
+/**
+ * Called for each directory found. Return <tt>true</tt> to have its
+ * contents walked, within the depth of the walk, or <tt>false</tt> to
+ * skip them.
+ */
+    public boolean visitDirectory( SmbFile dir );
+
+/**
+ * Called for each entry that is not a directory.
+ */
+    public void visitFile( SmbFile file );
+
+/**
+ * Called if listing a directory below the one being walked fails. Its
+ * entries listed before the failure have been visited; the walk
+ * continues with the other directories.
+ */
+    public void visitFailed( SmbFile dir, SmbException e );
+}
@@ -0,0 +1,107 @@
+/* jcifs smb client library in Java
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.IOException;
+import jcifs.util.transport.ResponseFuture;
+
+/**
+ * The result of an asynchronous operation such as
+ * {@link jcifs.smb.SmbFile#existsAsync()} or
+ * {@link jcifs.smb.SmbFileInputStream#readAsync(byte[],int,int)}.
+ * The request has been sent when the future is returned. Call
+ * <tt>getResult</tt> to wait for and collect the result or register a
+ * {@link jcifs.util.transport.ResponseListener} with <tt>setListener</tt>
+ * to be told when it is ready. Listeners are called by the transport
+ * thread and must not perform further blocking SMB operations; they
+ * should hand the future off to another thread if they need to.
+ */
+
+public class SmbFuture extends ResponseFuture {
+
+    SmbTransport transport;
+    long timeout = SmbTransport.RESPONSE_TIMEOUT;
+
+    private Object lock = new Object();
+    private boolean resolved;
+    private Object result;
+    private SmbException ex;
+
+    SmbFuture( ServerMessageBlock request, ServerMessageBlock response ) {
+        super( request, response );
+    }
+    /* A future that completed without going to the server
+     */
+    SmbFuture( Object result ) {
+        super( null, null );
+        this.result = result;
+        resolved = true;
+        setDone( null );
+    }
+
+    /* Interpret the response. If se is not null the server returned an
+     * error. Subclasses may recover from it (e.g. by falling back to the
+     * synchronous operation for a DFS referral) or throw it.
+     */
+    Object result( SmbException se ) throws SmbException {
+        if (se != null)
+            throw se;
+        return response;
+    }
+
+/**
+ * Waits for the operation to complete and returns its result. The type
+ * of the result depends on the operation that returned this future.
+ */
+
+    public Object getResult() throws SmbException {
+        /* Not synchronized on this; the transport thread completes the
+         * future while holding the response and then this monitor.
+         */
+        synchronized (lock) {
+            if (resolved == false)
+                resolve();
+            if (ex != null)
+                throw ex;
+            return result;
+        }
+    }
+    private void resolve() {
+        SmbException se = null;
+
+        try {
+            get();
+            transport.checkStatus( (ServerMessageBlock)request, (ServerMessageBlock)response );
+        } catch( SmbException se0 ) {
+            se = se0;
+        } catch( IOException ioe ) {
+            se = new SmbException( ioe.getMessage(), ioe );
+        } finally {
+            if (response instanceof SmbComTransactionResponse) {
+                BufferCache.releaseBuffer( ((SmbComTransactionResponse)response).txn_buf );
+            }
+        }
+
+        try {
+            result = result( se );
+        } catch( SmbException se1 ) {
+            ex = se1;
+        }
+        resolved = true;
+    }
+}
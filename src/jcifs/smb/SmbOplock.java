@@ -0,0 +1,431 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import jcifs.util.LogStream;
+
+/* An oplock granted on an open file and the data of the file cached while
+ * it is held. As long as the server has not broken the oplock no other
+ * client can change the file so pages read once are served from memory
+ * and the size of the file is known without asking. Writes go to the
+ * server as before and then update the cached pages.
+ *
+ * Under a batch oplock closing the file is deferred for up to
+ * oplockHoldTime milliseconds so that opening the same path again reuses
+ * the handle along with everything cached for it. When the server breaks
+ * the oplock the cache is dropped and the break is acknowledged, or the
+ * handle closed if the caller had already closed it, by a separate thread;
+ * the transport thread must not wait on a response of its own.
+ */
+
+class SmbOplock implements SmbConstants {
+
+    static final int REQUEST_BATCH = 0x06; /* NT_CREATE_REQUEST_OPLOCK | NT_CREATE_REQUEST_OPBATCH */
+
+    static final int LEVEL_NONE = 0;
+    static final int LEVEL_EXCLUSIVE = 1;
+    static final int LEVEL_BATCH = 2;
+    static final int LEVEL_II = 3;
+
+    static final int PAGE_SIZE = 0x8000;
+    static final int MAX_DEFERRED = 64; /* per transport */
+
+    /* Stands in for an oplock broken before the open that was granted it
+     * had returned.
+     */
+    static final Object BROKEN = new Object();
+
+    static LogStream log = LogStream.getInstance();
+
+    static LinkedList breaks = new LinkedList();
+    static Thread breaker = null;
+
+    static Integer key( int tid, int fid ) {
+        return Integer.valueOf( (tid & 0xFFFF) << 16 | (fid & 0xFFFF) );
+    }
+
+    /* Called by the transport thread with an unsolicited LOCKING_ANDX.
+     */
+    static void oplockBreak( SmbTransport trans, int tid, int fid ) {
+        synchronized (breaks) {
+            breaks.add( trans );
+            breaks.add( key( tid, fid ));
+            if (breaker == null) {
+                breaker = new Thread( "SmbOplockBreaks" ) {
+                    public void run() {
+                        for ( ;; ) {
+                            SmbTransport trans;
+                            Integer k;
+                            synchronized (breaks) {
+                                while (breaks.isEmpty()) {
+                                    try {
+                                        breaks.wait();
+                                    } catch( InterruptedException ie ) {
+                                    }
+                                }
+                                trans = (SmbTransport)breaks.removeFirst();
+                                k = (Integer)breaks.removeFirst();
+                            }
+                            try {
+                                oplockBreak( trans, k );
+                            } catch( Throwable t ) {
+                                if (log.level >= 2)
+                                    t.printStackTrace( log );
+                            }
+                        }
+                    }
+                };
+                breaker.setDaemon( true );
+                breaker.start();
+            }
+            breaks.notify();
+        }
+    }
+    static void oplockBreak( SmbTransport trans, Integer k ) throws SmbException {
+        SmbOplock oplock;
+
+        synchronized (trans.oplocks) {
+            Object obj = trans.oplocks.get( k );
+            if (obj instanceof SmbOplock == false) {
+                /* Not registered yet (or already closed). The open that
+                 * was granted it acknowledges the break when it sees this.
+                 */
+                trans.oplocks.put( k, BROKEN );
+                return;
+            }
+            oplock = (SmbOplock)obj;
+        }
+        oplock.oplockBreak();
+    }
+
+    /* Look for a handle to unc that was closed under a batch oplock and
+     * is still open with the same access and sharing.
+     */
+    static SmbOplock reopen( SmbFile file, int flags, int access, int shareAccess ) {
+        if ((flags & (SmbFile.O_TRUNC | SmbFile.O_EXCL)) != 0)
+            return null;
+        SmbTransport trans = file.tree.session.transport;
+        String dkey = file.tree.tid + file.unc;
+        SmbOplock oplock;
+
+        synchronized (trans.oplocks) {
+            oplock = (SmbOplock)trans.deferred.get( dkey );
+        }
+        if (oplock == null)
+            return null;
+        synchronized (oplock) {
+            if (oplock.deferred == false || oplock.broken || oplock.isValid() == false ||
+                        oplock.access != access || oplock.shareAccess != shareAccess)
+                return null;
+            oplock.deferred = false;
+            synchronized (trans.oplocks) {
+                trans.deferred.remove( dkey );
+            }
+        }
+        if (log.level >= 3)
+            log.println( "reopen: " + oplock );
+        return oplock;
+    }
+
+    /* Returns the oplock the open was granted or null if there was none.
+     * If it was broken before it could be registered it is returned
+     * broken so that it is still forgotten when the file is closed.
+     */
+    static SmbOplock granted( SmbFile file, SmbComNTCreateAndXResponse response,
+                int access, int shareAccess ) throws SmbException {
+        if (response.oplockLevel == LEVEL_NONE || response.directory)
+            return null;
+        SmbOplock oplock = new SmbOplock( file, response, access, shareAccess );
+        SmbTransport trans = oplock.tree.session.transport;
+        Integer k = key( oplock.tid, oplock.fid );
+        boolean broken;
+
+        synchronized (trans.oplocks) {
+            broken = trans.oplocks.put( k, oplock ) == BROKEN;
+        }
+        if (log.level >= 3)
+            log.println( "granted: " + oplock );
+        if (broken)
+            oplock.oplockBreak();
+        return oplock;
+    }
+
+    /* Forget every oplock held over a transport that has gone away.
+     */
+    static void disconnected( SmbTransport trans ) {
+        Object[] oplocks;
+
+        synchronized (trans.oplocks) {
+            oplocks = trans.oplocks.values().toArray();
+            trans.oplocks.clear();
+            trans.deferred.clear();
+        }
+        for (int i = 0; i < oplocks.length; i++) {
+            if (oplocks[i] instanceof SmbOplock) {
+                SmbOplock oplock = (SmbOplock)oplocks[i];
+                synchronized (oplock) {
+                    oplock.invalidate();
+                    oplock.deferred = false;
+                }
+            }
+        }
+    }
+
+    /* Close the handles that have been held after being closed for
+     * longer than oplockHoldTime.
+     */
+    static void closeExpired( SmbTransport trans, long now ) {
+        Object[] deferred;
+
+        synchronized (trans.oplocks) {
+            if (trans.deferred.isEmpty())
+                return;
+            deferred = trans.deferred.values().toArray();
+        }
+        for (int i = 0; i < deferred.length; i++) {
+            SmbOplock oplock = (SmbOplock)deferred[i];
+            if (now - oplock.closeTime >= OPLOCK_HOLD_TIME || oplock.isValid() == false) {
+                try {
+                    oplock.close( true );
+                } catch( SmbException se ) {
+                    if (log.level >= 3)
+                        se.printStackTrace( log );
+                }
+            }
+        }
+    }
+
+    SmbTree tree;
+    int tree_num, tid, fid, level, access, shareAccess;
+    String unc;
+    long size, closeTime;
+    HashMap pages = new HashMap();
+    int cached;
+    boolean broken, deferred;
+
+    SmbOplock( SmbFile file, SmbComNTCreateAndXResponse response, int access, int shareAccess ) {
+        tree = file.tree;
+        tree_num = tree.tree_num;
+        tid = tree.tid;
+        fid = response.fid;
+        level = response.oplockLevel;
+        this.access = access;
+        this.shareAccess = shareAccess;
+        unc = file.unc;
+        size = response.endOfFile;
+    }
+
+    boolean isValid() {
+        return tree_num == tree.tree_num && tree.connectionState == 2;
+    }
+    void invalidate() {
+        broken = true;
+        pages = null;
+        cached = 0;
+    }
+
+    /* Copy up to len bytes from off into the response, reading the page
+     * they are in from the server first if it is not cached. Returns the
+     * number of bytes copied, -1 at the end of the file or 0 if the cache
+     * cannot be used in which case the caller must read from the server.
+     */
+    int read( SmbFile file, long off, SmbComReadAndXResponse response, int len ) throws SmbException {
+        Long index = Long.valueOf( off / PAGE_SIZE );
+        long start = index.longValue() * PAGE_SIZE;
+        byte[] page;
+        long end;
+
+        synchronized (this) {
+            if (broken || isValid() == false)
+                return 0;
+            if (off >= size)
+                return -1;
+            page = (byte[])pages.get( index );
+            end = size;
+        }
+        if (page == null) {
+            int plen = (int)Math.min( PAGE_SIZE, end - start );
+            if (plen > OPLOCK_CACHE_SIZE - cached)
+                return 0; /* cache is full */
+            page = new byte[plen];
+            SmbComReadAndXResponse r = new SmbComReadAndXResponse( page, 0 );
+            int n = 0;
+            do {
+                file.send( new SmbComReadAndX( fid, start + n, plen - n, null ), r );
+                if (r.dataLength <= 0)
+                    return 0; /* shorter than the oplock says; ask the server */
+                n += r.dataLength;
+                r.off = n;
+            } while (n < plen);
+            synchronized (this) {
+                /* A break may have arrived while the page was read
+                 */
+                if (broken == false && pages.get( index ) == null &&
+                            end == size && cached + plen <= OPLOCK_CACHE_SIZE) {
+                    pages.put( index, page );
+                    cached += plen;
+                }
+            }
+        }
+
+        int poff = (int)(off - start);
+        int n = Math.min( len, page.length - poff );
+        if (n <= 0)
+            return -1;
+        if (response.bb != null) {
+            response.bb.put( page, poff, n );
+        } else {
+            System.arraycopy( page, poff, response.b, response.off, n );
+        }
+        return n;
+    }
+    /* Cache the whole pages within len bytes of b read from off.
+     */
+    synchronized void put( long off, byte[] b, int boff, int len ) {
+        if (broken)
+            return;
+        long i = (off + PAGE_SIZE - 1) / PAGE_SIZE;
+        for ( ;; ) {
+            long start = i * PAGE_SIZE;
+            int plen = (int)Math.min( PAGE_SIZE, size - start );
+            if (plen <= 0 || start + plen > off + len || cached + plen > OPLOCK_CACHE_SIZE)
+                break;
+            Long index = Long.valueOf( i++ );
+            if (pages.get( index ) == null) {
+                byte[] page = new byte[plen];
+                System.arraycopy( b, boff + (int)(start - off), page, 0, plen );
+                pages.put( index, page );
+                cached += plen;
+            }
+        }
+    }
+    /* Bring the cache up to date with len bytes of b written at off.
+     */
+    synchronized void write( long off, byte[] b, int boff, int len ) {
+        if (broken || len <= 0)
+            return;
+        if (off + len > size)
+            setSize( off + len );
+        for (long i = off / PAGE_SIZE; i * PAGE_SIZE < off + len; i++) {
+            byte[] page = (byte[])pages.get( Long.valueOf( i ));
+            if (page == null)
+                continue;
+            long start = i * PAGE_SIZE;
+            long from = Math.max( off, start );
+            long to = Math.min( off + len, start + page.length );
+            System.arraycopy( b, boff + (int)(from - off), page, (int)(from - start), (int)(to - from) );
+        }
+    }
+    /* The file was truncated or extended. Pages past the new end of the
+     * file and the page that held the old end are dropped.
+     */
+    synchronized void setSize( long newSize ) {
+        if (broken)
+            return;
+        long last = Math.min( size, newSize ) / PAGE_SIZE;
+        Iterator iter = pages.keySet().iterator();
+        while (iter.hasNext()) {
+            Long index = (Long)iter.next();
+            if (index.longValue() >= last) {
+                cached -= ((byte[])pages.get( index )).length;
+                iter.remove();
+            }
+        }
+        size = newSize;
+    }
+
+    /* Called when the file is closed. Returns true if the handle is to be
+     * kept open, otherwise the caller closes it and then calls closed().
+     */
+    boolean release( long lastWriteTime ) {
+        if (level != LEVEL_BATCH || OPLOCK_HOLD_TIME <= 0 || lastWriteTime != 0L)
+            return false;
+        SmbTransport trans = tree.session.transport;
+        String dkey = tid + unc;
+        synchronized (this) {
+            if (broken || isValid() == false)
+                return false;
+            synchronized (trans.oplocks) {
+                if (trans.deferred.size() >= MAX_DEFERRED || trans.deferred.get( dkey ) != null)
+                    return false;
+                trans.deferred.put( dkey, this );
+            }
+            deferred = true;
+            closeTime = System.currentTimeMillis();
+        }
+        if (log.level >= 3)
+            log.println( "close deferred: " + this );
+        return true;
+    }
+    void closed() {
+        SmbTransport trans = tree.session.transport;
+        synchronized (this) {
+            invalidate();
+            synchronized (trans.oplocks) {
+                if (trans.oplocks.get( key( tid, fid )) == this)
+                    trans.oplocks.remove( key( tid, fid ));
+            }
+        }
+    }
+    /* Close a handle that was kept open. Returns false if it was not
+     * deferred after all.
+     */
+    boolean close( boolean expired ) throws SmbException {
+        SmbTransport trans = tree.session.transport;
+        synchronized (this) {
+            if (deferred == false)
+                return false;
+            deferred = false;
+            invalidate();
+            synchronized (trans.oplocks) {
+                trans.deferred.remove( tid + unc );
+                trans.oplocks.remove( key( tid, fid ));
+            }
+        }
+        if (isValid()) {
+            if (log.level >= 3)
+                log.println( (expired ? "close expired: " : "close broken: ") + this );
+            tree.send( new SmbComClose( fid, 0L ), new SmbComBlankResponse() );
+        }
+        return true;
+    }
+    void oplockBreak() throws SmbException {
+        if (log.level >= 3)
+            log.println( "oplock break: " + this );
+        synchronized (this) {
+            if (broken && deferred == false)
+                return;
+            invalidate();
+        }
+        /* Closing the file acknowledges the break
+         */
+        if (close( false ) == false && level != LEVEL_II && isValid()) {
+            tree.send( new SmbComLockingAndX( fid, LEVEL_NONE ), null );
+        }
+    }
+
+    public String toString() {
+        return "SmbOplock[tid=" + tid + ",fid=" + fid + ",level=" + level +
+                ",unc=" + unc + ",size=" + size + ",cached=" + cached +
+                ",broken=" + broken + ",deferred=" + deferred + "]";
+    }
+}
@@ -54,9 +54,9 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
         } else {
             throw new IllegalArgumentException( "Invalid mode" );
         }
-        file.open( openFlags, access, SmbFile.ATTR_NORMAL, options );
-        readSize = file.tree.session.transport.rcv_buf_size - 70;
-        writeSize = file.tree.session.transport.snd_buf_size - 70;
+        file.open( openFlags, access, SmbFile.ATTR_NORMAL, options, true );
+        readSize = file.tree.session.transport.getReadSize( file );
+        writeSize = file.tree.session.transport.getWriteSize( file );
         fp = 0L;
     }
 
@@ -77,11 +77,17 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
 
         // ensure file is open
         if( file.isOpen() == false ) {
-            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options );
+            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options, true );
         }
 
         int r, n;
         SmbComReadAndXResponse response = new SmbComReadAndXResponse( b, off );
+        if( file.oplock != null && (n = file.oplock.read( file, fp, response, len )) != 0 ) {
+            if( n > 0 ) {
+                fp += n;
+            }
+            return n;
+        }
         do {
             r = len > readSize ? readSize : len;
             file.send( new SmbComReadAndX( file.fid, fp, r, null ), response );
@@ -130,13 +136,16 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
 
         // ensure file is open
         if( file.isOpen() == false ) {
-            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options );
+            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options, true );
         }
 
         int w;
         do {
             w = len > writeSize ? writeSize : len;
             file.send( new SmbComWriteAndX( file.fid, fp, len - w, b, off, w, null ), write_andx_resp );
+            if( file.oplock != null ) {
+                file.oplock.write( fp, b, off, (int)write_andx_resp.count );
+            }
             fp += write_andx_resp.count;
             len -= write_andx_resp.count;
             off += write_andx_resp.count;
@@ -154,10 +163,13 @@ public class SmbRandomAccessFile implements DataOutput, DataInput {
     public void setLength( long newLength ) throws SmbException {
         // ensure file is open
         if( file.isOpen() == false ) {
-            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options );
+            file.open( openFlags, 0, SmbFile.ATTR_NORMAL, options, true );
         }
         SmbComWriteResponse rsp = new SmbComWriteResponse();
         file.send( new SmbComWrite( file.fid, (int)(newLength & 0xFFFFFFFFL), 0, tmp, 0, 0 ), rsp );
+        if( file.oplock != null ) {
+            file.oplock.setSize( newLength );
+        }
     }
     public void close() throws SmbException {
         file.close();
@@ -160,7 +160,8 @@ synchronized (DOMAIN) {
     int connectionState;
     int uid;
     Vector trees;
-    // Transport parameters allows trans to be removed from CONNECTIONS
+    // Transport parameters allow the transport to be looked up again if it is
+    // dropped from CONNECTIONS while disconnected
     private UniAddress address;
     private int port, localPort;
     private InetAddress localAddr;
@@ -168,6 +169,7 @@ synchronized (DOMAIN) {
     SmbTransport transport = null;
     NtlmPasswordAuthentication auth;
     long expiration;
+    int watches; /* outstanding SmbWatch requests, see logoffExpired */
     String netbiosName = null;
 
     SmbSession( UniAddress address, int port,
@@ -215,11 +217,13 @@ synchronized (transport()) {
         }
 
         expiration = System.currentTimeMillis() + SmbTransport.SO_TIMEOUT;
+}
         sessionSetup( request, response );
         if( response != null && response.received ) {
             return;
         }
 
+synchronized (transport()) {
         if (request instanceof SmbComTreeConnectAndX) {
             SmbComTreeConnectAndX tcax = (SmbComTreeConnectAndX)request;
             if (netbiosName != null && tcax.path.endsWith("\\IPC$")) {
@@ -234,6 +238,10 @@ synchronized (transport()) {
 
         request.uid = uid;
         request.auth = auth;
+}
+        /* The transport lock is not held while waiting for the response so
+         * that other threads can keep their own requests in flight.
+         */
         try {
             transport.send( request, response );
         } catch (SmbException se) {
@@ -243,18 +251,35 @@ synchronized (transport()) {
             request.digest = null;
             throw se;
         }
+    }
+    void sendAsync( SmbFuture future ) throws SmbException {
+        ServerMessageBlock request = (ServerMessageBlock)future.getRequest();
+synchronized (transport()) {
+        expiration = System.currentTimeMillis() + SmbTransport.SO_TIMEOUT;
 }
+        sessionSetup( null, null );
+synchronized (transport()) {
+        request.uid = uid;
+        request.auth = auth;
+}
+        try {
+            transport.sendAsync( future );
+        } catch (SmbException se) {
+            request.digest = null;
+            throw se;
+        }
     }
     void sessionSetup( ServerMessageBlock andx,
                 ServerMessageBlock andxResponse ) throws SmbException {
-synchronized (transport()) {
         NtlmContext nctx = null;
         SmbException ex = null;
         SmbComSessionSetupAndX request;
         SmbComSessionSetupAndXResponse response;
         byte[] token = new byte[0];
         int state = 10;
+        boolean established = false;
 
+synchronized (transport()) {
         while (connectionState != 0) {
             if (connectionState == 2 || connectionState == 3) // connected or disconnecting
                 return;
@@ -265,7 +290,12 @@ synchronized (transport()) {
             }
         }
         connectionState = 1; // trying ...
-
+}
+        /* The transport lock is not held during the exchange below so that
+         * requests of other sessions can be sent and a full window cannot
+         * stall the transport. Other threads wanting this session wait for
+         * connectionState to leave 1.
+         */
         try {
             transport.connect();
 
@@ -337,7 +367,7 @@ synchronized (transport()) {
                             transport.digest = request.digest;
                         }
     
-                        connectionState = 2;    
+                        established = true;
 
                         state = 0;
     
@@ -355,7 +385,7 @@ synchronized (transport()) {
 
                             netbiosName = nctx.getNetbiosName();
 
-                            connectionState = 2;
+                            established = true;
 
                             state = 0;
                             break;
@@ -426,12 +456,13 @@ synchronized (transport()) {
             } while (state != 0);
         } catch (SmbException se) {
             logoff(true);
-            connectionState = 0;
             throw se;
         } finally {
+synchronized (transport) {
+            connectionState = established ? 2 : 0;
             transport.notifyAll();
-        }
 }
+        }
     }
     void logoff( boolean inError ) {
 synchronized (transport()) {
@@ -21,6 +21,7 @@ package jcifs.smb;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.SocketChannel;
 import java.util.*;
 
 import jcifs.*;
@@ -32,35 +33,24 @@ import jcifs.dcerpc.msrpc.*;
 
 public class SmbTransport extends Transport implements SmbConstants {
 
-    static final byte[] BUF = new byte[0xFFFF];
+    static final int BUF_SIZE = 0xFFFF;
     static final SmbComNegotiate NEGOTIATE_REQUEST = new SmbComNegotiate();
     static LogStream log = LogStream.getInstance();
     static HashMap dfsRoots = null;
+    static SelectorPool selectorPool = null;
 
-    static synchronized SmbTransport getSmbTransport( UniAddress address, int port ) {
+    static synchronized SelectorPool getSelectorPool() throws IOException {
+        if (selectorPool == null)
+            selectorPool = new SelectorPool( "SmbSelector", NIO_SELECTORS );
+        return selectorPool;
+    }
+
+    static SmbTransport getSmbTransport( UniAddress address, int port ) {
         return getSmbTransport( address, port, LADDR, LPORT, null );
     }
-    static synchronized SmbTransport getSmbTransport( UniAddress address, int port,
+    static SmbTransport getSmbTransport( UniAddress address, int port,
                                     InetAddress localAddr, int localPort, String hostName ) {
-        SmbTransport conn;
-
-        synchronized( CONNECTIONS ) {
-            if( SSN_LIMIT != 1 ) {
-                ListIterator iter = CONNECTIONS.listIterator();
-                while( iter.hasNext() ) {
-                    conn = (SmbTransport)iter.next();
-                    if( conn.matches( address, port, localAddr, localPort, hostName ) &&
-                            ( SSN_LIMIT == 0 || conn.sessions.size() < SSN_LIMIT )) {
-                        return conn;
-                    }
-                }
-            }
-
-            conn = new SmbTransport( address, port, localAddr, localPort );
-            CONNECTIONS.add( 0, conn );
-        }
-
-        return conn;
+        return CONNECTIONS.get( address, port, localAddr, localPort, hostName, SSN_LIMIT );
     }
 
     class ServerData {
@@ -93,11 +83,16 @@ public class SmbTransport extends Transport implements SmbConstants {
     OutputStream out;
     InputStream in;
     byte[] sbuf = new byte[512]; /* small local buffer */
+    byte[] snd_buf, rcv_buf;     /* from BufferCache while connected */
     SmbComBlankResponse key = new SmbComBlankResponse();
     long sessionExpiration = System.currentTimeMillis() + SO_TIMEOUT;
     LinkedList referrals = new LinkedList();
     SigningDigest digest = null;
     LinkedList sessions = new LinkedList();
+    HashMap oplocks = new HashMap();  /* tid and fid to SmbOplock, see SmbOplock */
+    HashMap deferred = new HashMap(); /* tid and path to SmbOplock of files kept open */
+    int watches; /* SmbWatch requests in response_map, see TransportMonitor */
+    boolean noCopyChunk; /* server rejected FSCTL_SRV_COPYCHUNK, see SmbFile.copyChunks */
     ServerData server = new ServerData();
     /* Negotiated values */
     int flags2 = FLAGS2;
@@ -108,6 +103,9 @@ public class SmbTransport extends Transport implements SmbConstants {
     int sessionKey = 0x00000000;
     boolean useUnicode = USE_UNICODE;
     String tconHostName = null;
+    int picked; /* see ConnectionTable.get */
+    long lastUsed = System.currentTimeMillis(); /* last request other than an echo */
+    long lastEcho;
 
     SmbTransport( UniAddress address, int port, InetAddress localAddr, int localPort ) {
         this.address = address;
@@ -121,7 +119,6 @@ public class SmbTransport extends Transport implements SmbConstants {
     }
     synchronized SmbSession getSmbSession( NtlmPasswordAuthentication auth ) {
         SmbSession ssn;
-        long now;
 
         ListIterator iter = sessions.listIterator();
         while( iter.hasNext() ) {
@@ -132,17 +129,7 @@ public class SmbTransport extends Transport implements SmbConstants {
             }
         }
 
-                                        /* logoff old sessions */
-        if (SO_TIMEOUT > 0 && sessionExpiration < (now = System.currentTimeMillis())) {
-            sessionExpiration = now + SO_TIMEOUT;
-            iter = sessions.listIterator();
-            while( iter.hasNext() ) {
-                ssn = (SmbSession)iter.next();
-                if( ssn.expiration < now ) {
-                    ssn.logoff( false );
-                }
-            }
-        }
+        logoffExpired( System.currentTimeMillis() );
 
         ssn = new SmbSession( address, port, localAddr, localPort, auth );
         ssn.transport = this;
@@ -150,6 +137,18 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         return ssn;
     }
+    synchronized void logoffExpired( long now ) {
+        if (SO_TIMEOUT > 0 && sessionExpiration < now) {
+            sessionExpiration = now + SO_TIMEOUT;
+            ListIterator iter = sessions.listIterator();
+            while( iter.hasNext() ) {
+                SmbSession ssn = (SmbSession)iter.next();
+                if( ssn.expiration < now && ssn.watches == 0 ) {
+                    ssn.logoff( false );
+                }
+            }
+        }
+    }
     boolean matches( UniAddress address, int port, InetAddress localAddr, int localPort, String hostName ) {
         if (hostName == null)
             hostName = address.getHostName();
@@ -171,6 +170,20 @@ public class SmbTransport extends Transport implements SmbConstants {
         }
         return (capabilities & cap) == cap;
     }
+    /* The most data one ReadAndX or WriteAndX on the file should carry.
+     * Large reads and writes are only used for files on disk; otherwise
+     * the whole message must fit in the negotiated buffer sizes.
+     */
+    int getReadSize( SmbFile file ) throws SmbException {
+        if (file.type != SmbFile.TYPE_NAMED_PIPE && hasCapability( CAP_LARGE_READX ))
+            return LARGE_READ_SIZE;
+        return Math.min( rcv_buf_size - 70, server.maxBufferSize - 70 );
+    }
+    int getWriteSize( SmbFile file ) throws SmbException {
+        if (file.type != SmbFile.TYPE_NAMED_PIPE && hasCapability( CAP_LARGE_WRITEX ))
+            return LARGE_WRITE_SIZE;
+        return snd_buf_size - 70;
+    }
     boolean isSignatureSetupRequired( NtlmPasswordAuthentication auth ) {
         return ( flags2 & ServerMessageBlock.FLAGS2_SECURITY_SIGNATURES ) != 0 &&
                 digest == null &&
@@ -178,6 +191,14 @@ public class SmbTransport extends Transport implements SmbConstants {
                 NtlmPasswordAuthentication.NULL.equals( auth ) == false;
     }
 
+    Socket newSocket() throws IOException {
+        /* With a SelectorPool the socket must have a channel. It stays in
+         * blocking mode until negotiation is complete.
+         */
+        if (NIO_SELECTORS > 0)
+            return SocketChannel.open().socket();
+        return new Socket();
+    }
     void ssn139() throws IOException {
         Name calledName = new Name( address.firstCalledName(), 0x20, null );
         do {
@@ -190,14 +211,15 @@ public class SmbTransport extends Transport implements SmbConstants {
             socket.setSoTimeout( SO_TIMEOUT );
 */
 
-            socket = new Socket();
+            socket = newSocket();
             if (localAddr != null)
                 socket.bind(new InetSocketAddress(localAddr, localPort));
             socket.connect(new InetSocketAddress(address.getHostAddress(), 139), CONN_TIMEOUT);
             socket.setSoTimeout( SO_TIMEOUT );
+            socket.setTcpNoDelay( TCP_NODELAY );
 
             out = socket.getOutputStream();
-            in = socket.getInputStream();
+            in = new RingInputStream( socket.getInputStream(), BUF_SIZE );
 
             SessionServicePacket ssp = new SessionRequestPacket( calledName,
                     NbtAddress.getLocalName() );
@@ -258,14 +280,15 @@ public class SmbTransport extends Transport implements SmbConstants {
                 }
                 socket.setSoTimeout( SO_TIMEOUT );
 */
-                socket = new Socket();
+                socket = newSocket();
                 if (localAddr != null)
                     socket.bind(new InetSocketAddress(localAddr, localPort));
                 socket.connect(new InetSocketAddress(address.getHostAddress(), port), CONN_TIMEOUT);
                 socket.setSoTimeout( SO_TIMEOUT );
+                socket.setTcpNoDelay( TCP_NODELAY );
 
                 out = socket.getOutputStream();
-                in = socket.getInputStream();
+                in = new RingInputStream( socket.getInputStream(), BUF_SIZE );
             }
 
             if (++mid == 32000) mid = 1;
@@ -358,6 +381,32 @@ public class SmbTransport extends Transport implements SmbConstants {
                 flags2 &= 0xFFFF ^ ServerMessageBlock.FLAGS2_UNICODE;
             }
         }
+
+        /* Buffers are per transport so that messages to different
+         * servers can be encoded and decoded concurrently.
+         */
+        if (snd_buf == null) {
+            /* A large WriteAndX that cannot be gathered is copied whole
+             * into snd_buf (see doSend).
+             */
+            if ((capabilities & CAP_LARGE_WRITEX) != 0 && 4 + LARGE_WRITE_SIZE + 128 > BUF_SIZE) {
+                snd_buf = new byte[4 + LARGE_WRITE_SIZE + 128]; /* not cached */
+            } else {
+                snd_buf = BufferCache.getTransportBuffer();
+            }
+        }
+        if (rcv_buf == null)
+            rcv_buf = BufferCache.getTransportBuffer();
+
+        if (NIO_SELECTORS > 0) {
+            SocketChannel channel = socket.getChannel();
+            getSelectorPool().register( channel, this,
+                        (capabilities & CAP_LARGE_READX) != 0 ? 4 + 0x1FFFF : 4 + BUF_SIZE, SO_TIMEOUT );
+            out = new ChannelOutputStream( channel, SO_TIMEOUT );
+        }
+
+        CONNECTIONS.add( this );
+        TransportMonitor.startMonitor();
     }
     protected void doDisconnect( boolean hard ) throws IOException {
         ListIterator iter = sessions.listIterator();
@@ -371,9 +420,24 @@ public class SmbTransport extends Transport implements SmbConstants {
             in.close();
             socket.close();
         } finally {
+            CONNECTIONS.remove( this );
+            SmbOplock.disconnected( this );
             digest = null;
             socket = null;
             tconHostName = null;
+            BufferCache.releaseTransportBuffer( snd_buf );
+            snd_buf = null;
+            if (rcv_buf != null) {
+                /* The transport thread may still be decoding into rcv_buf
+                 * (it does not hold this lock). The socket is closed so
+                 * it will not be for long. Once released doRecv will not
+                 * touch it (see below).
+                 */
+                synchronized (rcv_buf) {
+                    BufferCache.releaseTransportBuffer( rcv_buf );
+                    rcv_buf = null;
+                }
+            }
         }
     }
 
@@ -382,6 +446,30 @@ public class SmbTransport extends Transport implements SmbConstants {
         if (++mid == 32000) mid = 1;
         ((ServerMessageBlock)request).mid = mid;
     }
+    protected int keyOf( Request request ) {
+        return ((ServerMessageBlock)request).mid;
+    }
+    protected int getWindowSize() {
+        return maxMpxCount;
+    }
+    protected boolean isComplete( Response response ) {
+        if (response instanceof SmbComTransactionResponse)
+            return ((SmbComTransactionResponse)response).hasMoreElements() == false;
+        return true;
+    }
+    static final byte[] HEADER_SIG = { 0x00, 0x00, 0, 0, (byte)0xFF, (byte)'S', (byte)'M', (byte)'B' };
+
+    static boolean mayBeHeader( byte[] b, int i ) {
+        /* 00SSFSMB as in peekKey, checking only bytes before offset 36
+         */
+        for (int j = 0; j < HEADER_SIG.length && i + j < 36; j++) {
+            if (j == 1 && (b[i + j] & 0xFE) == 0)
+                continue; /* the low bit extends the length to 17 bits */
+            if ((j < 2 || j > 3) && b[i + j] != HEADER_SIG[j])
+                return false;
+        }
+        return true;
+    }
     protected Request peekKey() throws IOException {
         int n;
         do {
@@ -398,14 +486,15 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         for ( ;; ) {
             /* 01234567
-             * 00SSFSMB
+             * 0LSSFSMB
              * 0 - 0's
+             * L - 0 or 1, the high bit of the size (large ReadAndX)
              * S - size of payload
              * FSMB - 0xFF SMB magic #
              */
 
             if (sbuf[0] == (byte)0x00 &&
-                        sbuf[1] == (byte)0x00 &&
+                        (sbuf[1] & 0xFE) == 0x00 &&
                         sbuf[4] == (byte)0xFF &&
                         sbuf[5] == (byte)'S' &&
                         sbuf[6] == (byte)'M' &&
@@ -413,13 +502,16 @@ public class SmbTransport extends Transport implements SmbConstants {
                 break; /* all good */
             }
                                         /* out of phase maybe? */
-                          /* inch forward 1 byte and try again */
-            for (int i = 0; i < 35; i++) {
-                sbuf[i] = sbuf[i + 1];
+            /* Slide forward to the next offset at which the bytes we
+             * already have could be the start of a header and read only
+             * as many bytes as were dropped.
+             */
+            int i = 1;
+            while (i < 36 && !mayBeHeader( sbuf, i )) {
+                i++;
             }
-            int b;
-            if ((b = in.read()) == -1) return null;
-            sbuf[35] = (byte)b;
+            System.arraycopy( sbuf, i, sbuf, 0, 36 - i );
+            if (readn( in, sbuf, 36 - i, i ) < i) return null;
         }
 
         key.mid = Encdec.dec_uint16le( sbuf, 34 ) & 0xFFFF;
@@ -427,30 +519,71 @@ public class SmbTransport extends Transport implements SmbConstants {
         /* Unless key returned is null or invalid Transport.loop() always
          * calls doRecv() after and no one else but the transport thread
          * should call doRecv(). Therefore it is ok to expect that the data
-         * in sbuf will be preserved for copying into BUF in doRecv().
+         * in sbuf will be preserved for copying into rcv_buf in doRecv().
          */
 
         return key;
     }
 
+    protected void frameReceived( byte[] b, int off, int len ) throws IOException {
+        /* peekKey and doRecv read the frame as if it were the socket
+         */
+        in = new ByteArrayInputStream( b, off, len );
+        receive();
+    }
+
     protected void doSend( Request request ) throws IOException {
-        synchronized (BUF) {
+        byte[] buf = snd_buf;
+        if (buf == null)
+            throw new IOException( "Transport closed: " + this );
+        synchronized (buf) {
             ServerMessageBlock smb = (ServerMessageBlock)request;
-            int n = smb.encode( BUF, 4 );
-            Encdec.enc_uint32be( n & 0xFFFF, BUF, 0 ); /* 4 byte session message header */
+            if ((capabilities & CAP_LARGE_READX) != 0) {
+                ServerMessageBlock m = smb;
+                do {
+                    if (m instanceof SmbComReadAndX)
+                        ((SmbComReadAndX)m).maxCountHigh = true;
+                } while (m instanceof AndXServerMessageBlock &&
+                        (m = ((AndXServerMessageBlock)m).andx) != null);
+            }
+            int n = smb.encode( buf, 4 );
+            Encdec.enc_uint32be( n & 0x1FFFF, buf, 0 ); /* 4 byte session message header */
+            int gathered = smb.gatherLen;
             if (log.level >= 4) {
+                ServerMessageBlock m = smb;
                 do {
-                    log.println( smb );
-                } while (smb instanceof AndXServerMessageBlock &&
-                        (smb = ((AndXServerMessageBlock)smb).andx) != null);
+                    log.println( m );
+                } while (m instanceof AndXServerMessageBlock &&
+                        (m = ((AndXServerMessageBlock)m).andx) != null);
                 if (log.level >= 6) {
-                    Hexdump.hexdump( log, BUF, 4, n );
+                    Hexdump.hexdump( log, buf, 4, n - gathered );
                 }
             }
             /* For some reason this can sometimes get broken up into another
              * "NBSS Continuation Message" frame according to WireShark
              */
-            out.write( BUF, 0, 4 + n );
+            if (gathered > 0) {
+                /* A socket stream cannot gather so the message goes out in
+                 * two writes. Without TCP_NODELAY Nagle would hold the
+                 * second back until the first is acknowledged so the data
+                 * is copied after all.
+                 */
+                if (out instanceof ChannelOutputStream) {
+                    ((ChannelOutputStream)out).write( buf, 0, 4 + n - gathered,
+                                smb.gatherBuf, smb.gatherOff, gathered );
+                } else if (TCP_NODELAY) {
+                    out.write( buf, 0, 4 + n - gathered );
+                    out.write( smb.gatherBuf, smb.gatherOff, gathered );
+                } else {
+                    System.arraycopy( smb.gatherBuf, smb.gatherOff,
+                                buf, 4 + n - gathered, gathered );
+                    out.write( buf, 0, 4 + n );
+                }
+                smb.gatherBuf = null; /* do not hold on to the caller's array */
+                smb.gatherLen = 0;
+            } else {
+                out.write( buf, 0, 4 + n );
+            }
         }
     }
     protected void doSend0( Request request ) throws IOException {
@@ -473,31 +606,55 @@ public class SmbTransport extends Transport implements SmbConstants {
         resp.useUnicode = useUnicode;
         resp.extendedSecurity = (capabilities & CAP_EXTENDED_SECURITY) == CAP_EXTENDED_SECURITY;
 
-        synchronized (BUF) {
-            System.arraycopy( sbuf, 0, BUF, 0, 4 + HEADER_LENGTH );
-            int size = Encdec.dec_uint16be( BUF, 2 ) & 0xFFFF;
-            if (size < (HEADER_LENGTH + 1) || (4 + size) > rcv_buf_size ) {
+        byte[] buf = rcv_buf;
+        if (buf == null)
+            throw new IOException( "Transport closed: " + this );
+        synchronized (buf) {
+            /* doDisconnect may have returned buf to the BufferCache
+             * between reading rcv_buf and taking the lock
+             */
+            if (buf != rcv_buf)
+                throw new IOException( "Transport closed: " + this );
+            System.arraycopy( sbuf, 0, buf, 0, 4 + HEADER_LENGTH );
+            int size = Encdec.dec_uint32be( buf, 0 ) & 0x1FFFF;
+            if (size < (HEADER_LENGTH + 1)) {
                 throw new IOException( "Invalid payload size: " + size );
             }
-            int errorCode = Encdec.dec_uint32le( BUF, 9 ) & 0xFFFFFFFF;
+            int errorCode = Encdec.dec_uint32le( buf, 9 ) & 0xFFFFFFFF;
             if (resp.command == ServerMessageBlock.SMB_COM_READ_ANDX &&
                         (errorCode == 0 ||
                         errorCode == 0x80000005)) { // overflow indicator normal for pipe
                 SmbComReadAndXResponse r = (SmbComReadAndXResponse)resp;
                 int off = HEADER_LENGTH;
                                     /* WordCount thru dataOffset always 27 */
-                readn( in, BUF, 4 + off, 27 ); off += 27;
-                resp.decode( BUF, 4 );
+                readn( in, buf, 4 + off, 27 ); off += 27;
+                resp.decode( buf, 4 );
                                               /* EMC can send pad w/o data */
                 int pad = r.dataOffset - off;
-                if (r.byteCount > 0 && pad > 0 && pad < 4)
-                    readn( in, BUF, 4 + off, pad);
+                                   /* byteCount is truncated for large reads */
+                if ((r.byteCount > 0 || r.dataLength > 0) && pad > 0 && pad < 4) {
+                    readn( in, buf, 4 + off, pad);
+                    off += pad;
+                }
 
-                if (r.dataLength > 0)
-                    readn( in, r.b, r.off, r.dataLength );  /* read direct */
+                if (r.dataLength < 0 || r.dataLength > size - off)
+                    throw new IOException( "Invalid data length: " + r.dataLength );
+                if (r.dataLength > 0) {                /* read direct */
+                    if (r.bb != null) {
+                        if (r.dataLength > r.bb.remaining())
+                            throw new IOException( "Invalid data length: " + r.dataLength );
+                        readn( in, r.bb, r.dataLength );
+                    } else {
+                        readn( in, r.b, r.off, r.dataLength );
+                    }
+                }
             } else {
-                readn( in, BUF, 4 + 32, size - 32 );
-                resp.decode( BUF, 4 );
+                /* Only ReadAndX data may exceed rcv_buf_size
+                 */
+                if ((4 + size) > rcv_buf_size)
+                    throw new IOException( "Invalid payload size: " + size );
+                readn( in, buf, 4 + 32, size - 32 );
+                resp.decode( buf, 4 );
                 if (resp instanceof SmbComTransactionResponse) {
                     ((SmbComTransactionResponse)resp).nextElement();
                 }
@@ -508,24 +665,52 @@ public class SmbTransport extends Transport implements SmbConstants {
              * (perhaps for DOS reasons).
              */
             if (digest != null && resp.errorCode == 0) {
-                digest.verify( BUF, 4, resp );
+                digest.verify( buf, 4, resp );
             }
 
             if (log.level >= 4) {
                 log.println( response );
                 if (log.level >= 6) {
-                    Hexdump.hexdump( log, BUF, 4, size );
+                    Hexdump.hexdump( log, buf, 4, Math.min( size, rcv_buf_size - 4 ));
                 }
             }
         }
     }
     protected void doSkip() throws IOException {
-        int size = Encdec.dec_uint16be( sbuf, 2 ) & 0xFFFF;
-        if (size < 33 || (4 + size) > rcv_buf_size ) {
-            /* log message? */
-            in.skip( in.available() );
-        } else {
-            in.skip( size - 32 );
+        int size = Encdec.dec_uint32be( sbuf, 0 ) & 0x1FFFF;
+        /* An oplock break is a request from the server. The handling of it
+         * sends requests of its own so it is passed to another thread.
+         */
+        if (sbuf[8] == ServerMessageBlock.SMB_COM_LOCKING_ANDX &&
+                    (sbuf[13] & FLAGS_RESPONSE) == 0 &&
+                    (Encdec.dec_uint16le( sbuf, 34 ) & 0xFFFF) == 0xFFFF &&
+                    size >= 32 + 17 && 4 + size <= sbuf.length) {
+            readn( in, sbuf, 4 + 32, size - 32 );
+            if ((sbuf[4 + 32 + 7] & SmbComLockingAndX.LOCKING_ANDX_OPLOCK_RELEASE) != 0) {
+                int tid = Encdec.dec_uint16le( sbuf, 28 ) & 0xFFFF;
+                int fid = Encdec.dec_uint16le( sbuf, 4 + 32 + 5 ) & 0xFFFF;
+                if (log.level >= 4)
+                    log.println( "oplock break: tid=" + tid + ",fid=" + fid );
+                SmbOplock.oplockBreak( this, tid, fid );
+            }
+            return;
+        }
+        /* The response is not wanted or is too large; the rest of the
+         * message must be consumed so that the next header is read from
+         * the start of the next message. A skip of the buffered stream
+         * only skips as much as it has buffered.
+         */
+        skip( size - 32 );
+    }
+    void skip( int n ) throws IOException {
+        while (n > 0) {
+            int k = (int)in.skip( n );
+            if (k <= 0) {
+                if (in.read() < 0)
+                    throw new IOException( "end of stream" );
+                k = 1;
+            }
+            n -= k;
         }
     }
     void checkStatus( ServerMessageBlock req, ServerMessageBlock resp ) throws SmbException {
@@ -570,6 +755,7 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         connect(); /* must negotiate before we can test flags2, useUnicode, etc */
 
+        lastUsed = System.currentTimeMillis();
         request.flags2 |= flags2;
         request.useUnicode = useUnicode;
         request.response = response; /* needed by sign */
@@ -578,7 +764,9 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         try {
             if (response == null) {
-                doSend0( request );
+                synchronized (this) {
+                    doSend0( request );
+                }
                 return;
             } else if (request instanceof SmbComTransaction) {
                 response.command = request.command;
@@ -596,55 +784,46 @@ public class SmbTransport extends Transport implements SmbConstants {
                      */ 
 
                     req.nextElement();
-                    if (req.hasMoreElements()) {
-                        SmbComBlankResponse interim = new SmbComBlankResponse();
-                        super.sendrecv( req, interim, RESPONSE_TIMEOUT );
-                        if (interim.errorCode != 0) {
-                            checkStatus( req, interim );
+                    boolean interim = req.hasMoreElements();
+                    if (interim) {
+                        SmbComBlankResponse interimResponse = new SmbComBlankResponse();
+                        super.sendrecv( req, interimResponse, RESPONSE_TIMEOUT );
+                        if (interimResponse.errorCode != 0) {
+                            checkStatus( req, interimResponse );
                         }
                         req.nextElement();
-                    } else {
-                        makeKey( req );
                     }
 
-                    synchronized (this) {
-                        response.received = false;
-                        resp.isReceived = false;
-                        try {
-                            response_map.put( req, resp );
+                    acquireWindow( req, RESPONSE_TIMEOUT );
+                    response.received = false;
+                    ResponseFuture future = new ResponseFuture( req, resp );
 
-                            /* 
-                             * Send multiple fragments
-                             */
+                    /* 
+                     * Send multiple fragments
+                     */
 
+                    synchronized (this) {
+                        if (interim == false)
+                            makeKey( req );
+                        register( future, RESPONSE_TIMEOUT );
+                        try {
                             do {
                                 doSend0( req );
                             } while( req.hasMoreElements() && req.nextElement() != null );
-
-                            /* 
-                             * Receive multiple fragments
-                             */
-
-                            long timeout = RESPONSE_TIMEOUT;
-                            resp.expiration = System.currentTimeMillis() + timeout;
-                            while( resp.hasMoreElements() ) {
-                                wait( timeout );
-                                timeout = resp.expiration - System.currentTimeMillis();
-                                if (timeout <= 0) {
-                                    throw new TransportException( this +
-                                            " timedout waiting for response to " +
-                                            req );
-                                }
-                            }
-                            if (response.errorCode != 0) {
-                                checkStatus( req, resp );
-                            }
-                        } catch( InterruptedException ie ) {
-                            throw new TransportException( ie );
-                        } finally {
-                            response_map.remove( req );
+                        } catch( IOException ioe ) {
+                            complete( future, ioe );
+                            throw ioe;
                         }
                     }
+
+                    /* 
+                     * Receive multiple fragments (see isComplete)
+                     */
+
+                    future.get();
+                    if (response.errorCode != 0) {
+                        checkStatus( req, resp );
+                    }
                 } finally {
                     BufferCache.releaseBuffer( req.txn_buf );
                     BufferCache.releaseBuffer( resp.txn_buf );
@@ -662,6 +841,69 @@ public class SmbTransport extends Transport implements SmbConstants {
 
         checkStatus( request, response );
     }
+    void sendAsync( SmbFuture future ) throws SmbException {
+        ServerMessageBlock request = (ServerMessageBlock)future.getRequest();
+        ServerMessageBlock response = (ServerMessageBlock)future.getResponse();
+
+        connect();
+
+        lastUsed = System.currentTimeMillis();
+        request.flags2 |= flags2;
+        request.useUnicode = useUnicode;
+        request.response = response;
+        if (request.digest == null)
+            request.digest = digest;
+        response.command = request.command;
+        future.transport = this;
+
+        try {
+            if (request instanceof SmbComTransaction) {
+                SmbComTransaction req = (SmbComTransaction)request;
+                SmbComTransactionResponse resp = (SmbComTransactionResponse)response;
+
+                req.maxBufferSize = snd_buf_size;
+                resp.reset();
+
+                /* The response buffer is released by SmbFuture.getResult
+                 */
+                BufferCache.getBuffers( req, resp );
+                try {
+                    req.nextElement();
+                    if (req.hasMoreElements()) {
+                        throw new SmbException( "Transaction too large to send asynchronously" );
+                    }
+                    super.sendAsync( future, future.timeout );
+                } catch( IOException ioe ) {
+                    BufferCache.releaseBuffer( resp.txn_buf );
+                    throw ioe;
+                } finally {
+                    BufferCache.releaseBuffer( req.txn_buf );
+                }
+            } else {
+                super.sendAsync( future, future.timeout );
+            }
+        } catch( SmbException se ) {
+            throw se;
+        } catch( IOException ioe ) {
+            throw new SmbException( ioe.getMessage(), ioe );
+        }
+    }
+    /* Send an SMB_COM_ECHO without counting it as use of the transport.
+     * Any response at all shows that the server is still there.
+     */
+    ResponseFuture echo() throws IOException {
+        SmbComEcho request = new SmbComEcho( 1 );
+        SmbComEchoResponse response = new SmbComEchoResponse();
+
+        request.flags2 |= flags2;
+        request.useUnicode = useUnicode;
+        request.response = response;
+        request.digest = digest;
+        response.command = request.command;
+        lastEcho = System.currentTimeMillis();
+
+        return super.sendAsync( request, response, RESPONSE_TIMEOUT );
+    }
     public String toString() {
         return super.toString() + "[" + address + ":" + port + "]";
     }
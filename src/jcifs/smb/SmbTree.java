@@ -67,7 +67,6 @@ class SmbTree {
     }
     void send( ServerMessageBlock request,
                             ServerMessageBlock response ) throws SmbException {
-synchronized (session.transport()) {
         if( response != null ) {
             response.received = false;
         }
@@ -75,6 +74,42 @@ synchronized (session.transport()) {
         if( request == null || (response != null && response.received )) {
             return;
         }
+synchronized (session.transport()) {
+        prepare( request );
+}
+        try {
+            session.send( request, response );
+        } catch( SmbException se ) {
+            if (se.getNtStatus() == se.NT_STATUS_NETWORK_NAME_DELETED) {
+                /* Someone removed the share while we were
+                 * connected. Bastards! Disconnect this tree
+                 * so that it reconnects cleanly should the share
+                 * reappear in this client's lifetime.
+                 */
+                treeDisconnect( true );
+            }
+            throw se;
+        }
+    }
+    void sendAsync( SmbFuture future ) throws SmbException {
+        ServerMessageBlock request = (ServerMessageBlock)future.getRequest();
+        treeConnect( null, null );
+synchronized (session.transport()) {
+        prepare( request );
+}
+        try {
+            session.sendAsync( future );
+        } catch( SmbException se ) {
+            if (se.getNtStatus() == se.NT_STATUS_NETWORK_NAME_DELETED) {
+                treeDisconnect( true );
+            }
+            throw se;
+        }
+    }
+    /* Check the request is valid for this service and address it to this
+     * tree. The caller holds the transport lock.
+     */
+    private void prepare( ServerMessageBlock request ) throws SmbException {
         if( service.equals( "A:" ) == false ) {
             switch( request.command ) {
                 case ServerMessageBlock.SMB_COM_OPEN_ANDX:
@@ -115,27 +150,13 @@ synchronized (session.transport()) {
             request.flags2 = ServerMessageBlock.FLAGS2_RESOLVE_PATHS_IN_DFS;
             request.path = '\\' + session.transport().tconHostName + '\\' + share + request.path;
         }
-        try {
-            session.send( request, response );
-        } catch( SmbException se ) {
-            if (se.getNtStatus() == se.NT_STATUS_NETWORK_NAME_DELETED) {
-                /* Someone removed the share while we were
-                 * connected. Bastards! Disconnect this tree
-                 * so that it reconnects cleanly should the share
-                 * reappear in this client's lifetime.
-                 */
-                treeDisconnect( true );
-            }
-            throw se;
-        }
-}
     }
     void treeConnect( ServerMessageBlock andx,
                             ServerMessageBlock andxResponse ) throws SmbException {
-
-synchronized (session.transport()) {
         String unc;
+        boolean connected = false;
 
+synchronized (session.transport()) {
         while (connectionState != 0) {
             if (connectionState == 2 || connectionState == 3) // connected or disconnecting
                 return;
@@ -146,7 +167,12 @@ synchronized (session.transport()) {
             }
         }
         connectionState = 1; // trying ...
-
+}
+        /* The transport lock is not held while the tree is connected so
+         * that a full window or a slow server does not stall every other
+         * user of the transport. Other threads wanting this tree wait for
+         * connectionState to leave 1.
+         */
         try {
             /* The hostname to use in the path is only known for
              * sure if the NetBIOS session has been successfully
@@ -180,13 +206,16 @@ synchronized (session.transport()) {
             inDfs = response.shareIsInDfs;
             tree_num = tree_conn_counter++;
     
-            connectionState = 2; // connected
+            connected = true;
         } catch (SmbException se) {
             treeDisconnect(true);
-            connectionState = 0;
             throw se;
-        }
+        } finally {
+synchronized (session.transport) {
+            connectionState = connected ? 2 : 0; // connected or not
+            session.transport.notifyAll();
 }
+        }
     }
     void treeDisconnect( boolean inError ) {
 synchronized (session.transport()) {
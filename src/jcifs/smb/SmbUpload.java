@@ -0,0 +1,155 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import jcifs.util.LogStream;
+
+/* The counterpart of SmbDownload. Ranges of a local file are read into
+ * pooled buffers and written with WriteAndX requests at explicit offsets,
+ * up to parallelism of them outstanding at once, spread over one handle
+ * per pooled transport. The first handle creates or truncates the file
+ * and sets its times once all of the data has been written.
+ */
+
+class SmbUpload {
+
+    static LogStream log = LogStream.getInstance();
+
+    SmbFile file;
+    int parallelism;
+    SmbFile[] handles;
+    int writeSize;
+    LinkedList pending = new LinkedList();
+    LinkedList free = new LinkedList();
+
+    SmbUpload( SmbFile file, int parallelism ) {
+        this.file = file;
+        this.parallelism = parallelism < 1 ? 1 : parallelism;
+    }
+
+    long run( FileChannel src, long lastModified ) throws IOException {
+        long length = src.size();
+        long next = 0L;
+
+        try {
+            open();
+
+            int h = 0;
+            while( next < length ) {
+                if( pending.size() >= parallelism ) {
+                    collect();
+                }
+
+                byte[] buf = free.isEmpty() ? new byte[writeSize] : (byte[])free.removeFirst();
+                ByteBuffer bb = ByteBuffer.wrap( buf, 0, (int)Math.min( writeSize, length - next ));
+                while( bb.hasRemaining() ) {
+                    if( src.read( bb, next + bb.position() ) < 0 ) {
+                        break; /* the local file was truncated */
+                    }
+                }
+                if( bb.position() == 0 ) {
+                    break;
+                }
+
+                send( handles[h], next, buf, bb.position() );
+                h = (h + 1) % handles.length;
+                next += bb.position();
+            }
+            while( pending.isEmpty() == false ) {
+                collect();
+            }
+
+            /* Close the other handles first so that closing them does not
+             * update the time set below.
+             */
+            for( int i = 1; i < handles.length; i++ ) {
+                handles[i].close();
+            }
+            SmbFile f = handles[0];
+            f.send( new Trans2SetFileInformation( f.fid, 0, 0L, lastModified ),
+                    new Trans2SetFileInformationResponse() );
+            f.close( 0L );
+        } finally {
+            close();
+        }
+
+        return next;
+    }
+    void open() throws SmbException {
+        file.connect0();
+        SmbTransport trans = file.tree.session.transport;
+        int n = Math.min( parallelism, ConnectionTable.poolSize( trans.address ));
+
+        handles = new SmbFile[n];
+        writeSize = Integer.MAX_VALUE;
+        for( int i = 0; i < n; i++ ) {
+            SmbFile f = new SmbFile( file.getURL(), file.auth );
+            if( i == 0 ) {
+                f.open( SmbFile.O_CREAT | SmbFile.O_WRONLY | SmbFile.O_TRUNC,
+                        SmbConstants.FILE_WRITE_DATA | SmbConstants.FILE_WRITE_ATTRIBUTES,
+                        SmbFile.ATTR_NORMAL, 0 );
+            } else {
+                f.open( SmbFile.O_WRONLY, SmbConstants.FILE_WRITE_DATA, SmbFile.ATTR_NORMAL, 0 );
+            }
+            handles[i] = f;
+            writeSize = Math.min( writeSize, f.tree.session.transport.getWriteSize( f ));
+        }
+    }
+    void send( SmbFile f, long off, final byte[] buf, final int len ) throws SmbException {
+        final SmbComWriteAndXResponse resp = new SmbComWriteAndXResponse();
+        SmbFuture future = new SmbFuture( new SmbComWriteAndX( f.fid, off, 0, buf, 0, len, null ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if( se != null )
+                    throw se;
+                if( resp.count != len )
+                    throw new SmbException( "Short write: " + resp.count + " of " + len + " bytes" );
+                return buf;
+            }
+        };
+        f.sendAsync( future );
+        pending.add( future );
+    }
+    /* Wait for the oldest write and put its buffer back in the pool.
+     */
+    void collect() throws SmbException {
+        SmbFuture future = (SmbFuture)pending.removeFirst();
+        free.add( future.getResult() );
+    }
+    /* Writes still outstanding after an error are abandoned.
+     */
+    void close() {
+        if( handles == null ) {
+            return;
+        }
+        for( int i = 0; i < handles.length; i++ ) {
+            if( handles[i] != null ) {
+                try {
+                    handles[i].close();
+                } catch( SmbException se ) {
+                    if( log.level >= 3 )
+                        se.printStackTrace( log );
+                }
+            }
+        }
+    }
+}
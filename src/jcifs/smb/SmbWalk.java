@@ -0,0 +1,188 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import jcifs.util.LogStream;
+
+/* Walks a directory tree for SmbFile.walk. Directories waiting to be
+ * listed are queued per transport and handed to the WorkerPool, up to
+ * maxListings of them at once and maxListingsPerTransport on any one
+ * transport. A listing queues the subdirectories it finds and never waits
+ * for another listing, as the WorkerPool requires. The most recently
+ * queued directory of a transport is listed first so that the queue grows
+ * with the depth of the tree more than with its breadth.
+ */
+
+class SmbWalk {
+
+    static LogStream log = LogStream.getInstance();
+
+    class Dir implements Runnable {
+        SmbFile file;
+        int depth;
+        SmbTransport trans;
+
+        Dir( SmbFile file, int depth ) {
+            this.file = file;
+            this.depth = depth;
+            trans = file.tree == null ? null : file.tree.session.transport;
+        }
+
+        public void run() {
+            list( this );
+        }
+    }
+
+    SmbFileVisitor visitor;
+    SmbWalkOptions options;
+
+    HashMap queues = new HashMap(); /* SmbTransport -> LinkedList of Dir */
+    HashMap listing = new HashMap(); /* SmbTransport -> int[1] */
+    int running, queued;
+    volatile boolean stopped;
+    SmbException rootEx;
+    RuntimeException ex;
+
+    SmbWalk( SmbFileVisitor visitor, SmbWalkOptions options ) {
+        this.visitor = visitor;
+        this.options = options;
+    }
+
+    void walk( SmbFile root ) throws SmbException {
+        boolean interrupted = false;
+
+        root.connect0();
+        add( new Dir( root, 0 ));
+
+        synchronized( this ) {
+            while( running > 0 || (queued > 0 && stopped == false) ) {
+                try {
+                    wait();
+                } catch( InterruptedException ie ) {
+                    /* Let the listings in progress finish so that the
+                     * visitor is not called after walk returns.
+                     */
+                    stopped = true;
+                    interrupted = true;
+                }
+            }
+        }
+
+        if( rootEx != null ) {
+            throw rootEx;
+        }
+        if( ex != null ) {
+            throw ex;
+        }
+        if( interrupted ) {
+            Thread.currentThread().interrupt();
+            throw new SmbException( "Walk of " + root + " interrupted" );
+        }
+    }
+    void add( Dir d ) {
+        synchronized( this ) {
+            LinkedList queue = (LinkedList)queues.get( d.trans );
+            if( queue == null ) {
+                queue = new LinkedList();
+                queues.put( d.trans, queue );
+                listing.put( d.trans, new int[1] );
+            }
+            queue.addFirst( d );
+            queued++;
+            schedule();
+        }
+    }
+    /* Start as many of the queued listings as the limits allow.
+     */
+    void schedule() {
+        if( stopped ) {
+            return;
+        }
+        Iterator iter = queues.entrySet().iterator();
+        while( iter.hasNext() && running < options.maxListings ) {
+            Map.Entry entry = (Map.Entry)iter.next();
+            LinkedList queue = (LinkedList)entry.getValue();
+            int[] count = (int[])listing.get( entry.getKey() );
+            while( queue.isEmpty() == false &&
+                        running < options.maxListings &&
+                        count[0] < options.maxListingsPerTransport ) {
+                Dir d = (Dir)queue.removeFirst();
+                queued--;
+                running++;
+                count[0]++;
+                WorkerPool.execute( d );
+            }
+        }
+    }
+    void done( Dir d ) {
+        synchronized( this ) {
+            running--;
+            ((int[])listing.get( d.trans ))[0]--;
+            schedule();
+            notifyAll();
+        }
+    }
+    /* Called by a worker thread to list one directory.
+     */
+    void list( Dir d ) {
+        try {
+            try {
+                SmbFileIterator iter = d.file.iterate( "*", options.filter );
+                try {
+                    SmbFile f;
+                    while( stopped == false && (f = iter.next()) != null ) {
+                        if( f.isDirectory() ) {
+                            if( visitor.visitDirectory( f ) && d.depth + 1 < options.maxDepth ) {
+                                add( new Dir( f, d.depth + 1 ));
+                            }
+                        } else {
+                            visitor.visitFile( f );
+                        }
+                    }
+                } finally {
+                    iter.close();
+                }
+            } catch( SmbException se ) {
+                if( d.depth == 0 ) {
+                    rootEx = se;
+                } else {
+                    if( log.level >= 3 )
+                        log.println( "walk: " + d.file + ": " + se.getMessage() );
+                    visitor.visitFailed( d.file, se );
+                }
+            }
+        } catch( RuntimeException re ) {
+            /* The visitor failed. Stop the walk and have it throw the
+             * exception.
+             */
+            synchronized( this ) {
+                if( ex == null ) {
+                    ex = re;
+                }
+            }
+            stopped = true;
+        } finally {
+            done( d );
+        }
+    }
+}
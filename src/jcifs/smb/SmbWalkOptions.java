@@ -0,0 +1,65 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+/**
+ * The limits of a walk performed by
+ * {@link SmbFile#walk(SmbFileVisitor,SmbWalkOptions)}. The number of
+ * directories listed at once defaults to the values of the
+ * <tt>jcifs.smb.client.walkListings</tt> and
+ * <tt>jcifs.smb.client.walkListingsPerTransport</tt> properties.
+ */
+
+public class SmbWalkOptions implements SmbConstants {
+
+    int maxDepth = Integer.MAX_VALUE;
+    SmbFileFilter filter;
+    int maxListings = WALK_LISTINGS;
+    int maxListingsPerTransport = WALK_LISTINGS_PER_TRANSPORT;
+
+/**
+ * Sets the most levels of directories below the one walked whose
+ * entries are visited. A depth of 1 visits only the entries of the
+ * directory walked. The default is no limit.
+ */
+    public void setMaxDepth( int maxDepth ) {
+        this.maxDepth = maxDepth < 1 ? 1 : maxDepth;
+    }
+/**
+ * Sets a filter applied to the entries of each directory as it is
+ * listed. Entries it rejects are not visited and, if they are
+ * directories, are not walked.
+ */
+    public void setFilter( SmbFileFilter filter ) {
+        this.filter = filter;
+    }
+/**
+ * Sets the most directories listed at once.
+ */
+    public void setMaxListings( int maxListings ) {
+        this.maxListings = maxListings < 1 ? 1 : maxListings;
+    }
+/**
+ * Sets the most directories listed at once over any one connection to
+ * a server.
+ */
+    public void setMaxListingsPerTransport( int maxListingsPerTransport ) {
+        this.maxListingsPerTransport = maxListingsPerTransport < 1 ? 1 : maxListingsPerTransport;
+    }
+}
@@ -0,0 +1,316 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.util.LinkedList;
+import java.util.List;
+import jcifs.util.LogStream;
+import jcifs.util.transport.ResponseFuture;
+import jcifs.util.transport.ResponseListener;
+import jcifs.util.transport.Transport;
+
+/**
+ * Reports changes to a directory as they happen. A watch is created with
+ * {@link jcifs.smb.SmbFile#watch(int,boolean)} which opens the directory
+ * and sends an <tt>NT_TRANSACT_NOTIFY_CHANGE</tt> request that the server
+ * holds until something changes. No thread waits for it; when it
+ * completes a single thread shared by all watches sends the next request
+ * and then hands the changes to the listener, if one was given, or queues
+ * them for <tt>take</tt> and <tt>poll</tt>. The server accumulates changes
+ * between requests so none are missed unless there are too many to report
+ * in which case a change with the action {@link SmbFileChange#OVERFLOW} is
+ * delivered.
+ * <p>
+ * Each watch holds one of the requests the server allows a client to have
+ * outstanding and keeps the session and connection from being closed when
+ * idle. Call <tt>close</tt> when it is no longer needed.
+ */
+
+public class SmbWatch {
+
+    public static final int FILE_NOTIFY_CHANGE_FILE_NAME   = 0x00000001;
+    public static final int FILE_NOTIFY_CHANGE_DIR_NAME    = 0x00000002;
+    public static final int FILE_NOTIFY_CHANGE_ATTRIBUTES  = 0x00000004;
+    public static final int FILE_NOTIFY_CHANGE_SIZE        = 0x00000008;
+    public static final int FILE_NOTIFY_CHANGE_LAST_WRITE  = 0x00000010;
+    public static final int FILE_NOTIFY_CHANGE_LAST_ACCESS = 0x00000020;
+    public static final int FILE_NOTIFY_CHANGE_CREATION    = 0x00000040;
+    public static final int FILE_NOTIFY_CHANGE_EA          = 0x00000080;
+    public static final int FILE_NOTIFY_CHANGE_SECURITY    = 0x00000100;
+
+    /* The most change information the server may return at once. If
+     * more accumulates it reports STATUS_NOTIFY_ENUM_DIR instead.
+     */
+    static final int BUFFER_SIZE = 0x8000;
+
+    static LogStream log = LogStream.getInstance();
+
+    static LinkedList completed = new LinkedList();
+    static Thread dispatcher = null;
+
+    /* Called by the transport thread when a request completes.
+     */
+    static void dispatch( SmbWatch watch ) {
+        synchronized (completed) {
+            completed.add( watch );
+            if (dispatcher == null) {
+                dispatcher = new Thread( "SmbWatchDispatcher" ) {
+                    public void run() {
+                        for ( ;; ) {
+                            SmbWatch watch;
+                            synchronized (completed) {
+                                while (completed.isEmpty()) {
+                                    try {
+                                        completed.wait();
+                                    } catch( InterruptedException ie ) {
+                                    }
+                                }
+                                watch = (SmbWatch)completed.removeFirst();
+                            }
+                            try {
+                                watch.completed();
+                            } catch( Throwable t ) {
+                                if (log.level >= 2)
+                                    t.printStackTrace( log );
+                            }
+                        }
+                    }
+                };
+                dispatcher.setDaemon( true );
+                dispatcher.start();
+            }
+            completed.notify();
+        }
+    }
+
+    SmbFile dir;
+    int filter;
+    boolean recursive;
+    SmbWatchListener listener;
+    SmbTree tree;
+    int tree_num, fid;
+    SmbFuture future;
+    LinkedList changes = new LinkedList();
+    SmbException ex;
+    boolean closed, counted;
+
+    SmbWatch( SmbFile dir, int filter, boolean recursive, SmbWatchListener listener ) {
+        this.dir = dir;
+        this.filter = filter;
+        this.recursive = recursive;
+        this.listener = listener;
+    }
+
+    void start() throws SmbException {
+        fid = dir.open0( SmbFile.O_RDONLY, SmbConstants.FILE_READ_DATA, SmbFile.ATTR_DIRECTORY, 0x0001 );
+        tree = dir.tree;
+        tree_num = tree.tree_num;
+        count( 1 );
+        try {
+            arm();
+        } catch( SmbException se ) {
+            end( se );
+            throw se;
+        }
+    }
+    /* Keep the session from being logged off and the transport from being
+     * closed as idle while the watch is outstanding.
+     */
+    void count( int n ) {
+        SmbTransport trans = tree.session.transport;
+        synchronized (trans) {
+            if (counted == (n > 0))
+                return;
+            counted = n > 0;
+            tree.session.watches += n;
+            trans.watches += n;
+        }
+    }
+    void arm() throws SmbException {
+        final NtTransNotifyChangeResponse resp = new NtTransNotifyChangeResponse();
+        SmbFuture f = new SmbFuture( new NtTransNotifyChange( fid, filter, recursive ), resp ) {
+            Object result( SmbException se ) throws SmbException {
+                if (resp.enumDir || (se == null && resp.changes.isEmpty())) {
+                    /* Also sent with no changes if the buffer was too small
+                     */
+                    resp.changes.clear();
+                    resp.changes.add( new SmbFileChange( SmbFileChange.OVERFLOW, null ));
+                } else if (se != null) {
+                    throw se;
+                }
+                return resp.changes;
+            }
+        };
+        f.timeout = Transport.NO_TIMEOUT;
+        f.setListener( new ResponseListener() {
+            public void responseReceived( ResponseFuture future ) {
+                dispatch( SmbWatch.this );
+            }
+        });
+
+        synchronized (this) {
+            if (closed)
+                return;
+            future = f;
+        }
+        dir.sendAsync( f );
+    }
+    /* Called by the dispatcher thread. The next request is sent before the
+     * changes are delivered so that a slow listener does not delay it.
+     */
+    void completed() {
+        SmbFuture f;
+        List list = null;
+        SmbException se = null;
+
+        synchronized (this) {
+            f = future;
+        }
+        try {
+            list = (List)f.getResult();
+        } catch( SmbException se0 ) {
+            se = se0;
+        }
+        synchronized (this) {
+            if (closed)
+                return;
+        }
+        if (se == null) {
+            try {
+                arm();
+            } catch( SmbException se1 ) {
+                se = se1;
+            }
+            for (int i = 0; i < list.size(); i++) {
+                SmbFileChange change = (SmbFileChange)list.get( i );
+                change.dir = dir;
+                if (listener != null) {
+                    try {
+                        listener.fileChanged( change );
+                    } catch( RuntimeException re ) {
+                        if (log.level >= 2)
+                            re.printStackTrace( log );
+                    }
+                } else {
+                    synchronized (this) {
+                        changes.add( change );
+                        notifyAll();
+                    }
+                }
+            }
+        }
+        if (se != null) {
+            end( se );
+            if (listener != null)
+                listener.watchFailed( se );
+        }
+    }
+    /* Stop the watch and close the directory. If se is not null it is
+     * thrown by take and poll once the changes already queued are
+     * collected.
+     */
+    void end( SmbException se ) {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            ex = se;
+            notifyAll();
+        }
+        count( -1 );
+        try {
+            if (dir.isConnected() && tree.tree_num == tree_num)
+                dir.close( fid, 0L );
+        } catch( SmbException se1 ) {
+            if (log.level >= 3)
+                se1.printStackTrace( log );
+        }
+    }
+
+/**
+ * Returns the directory being watched.
+ */
+    public SmbFile getFile() {
+        return dir;
+    }
+/**
+ * Waits for and returns the next change. If the watch failed the exception
+ * is thrown once all changes received before the failure have been
+ * returned.
+ *
+ * @throws SmbException if the watch failed or was closed
+ */
+    public SmbFileChange take() throws SmbException {
+        return poll( -1L );
+    }
+/**
+ * Waits at most <tt>timeout</tt> milliseconds for the next change and
+ * returns it or <tt>null</tt> if there was none. A negative timeout
+ * waits indefinitely.
+ *
+ * @throws SmbException if the watch failed or was closed
+ */
+    public synchronized SmbFileChange poll( long timeout ) throws SmbException {
+        long expiration = System.currentTimeMillis() + timeout;
+
+        while (changes.isEmpty()) {
+            if (ex != null)
+                throw ex;
+            if (closed)
+                throw new SmbException( "Watch closed: " + dir );
+            try {
+                if (timeout < 0) {
+                    wait();
+                } else {
+                    long t = expiration - System.currentTimeMillis();
+                    if (t <= 0)
+                        return null;
+                    wait( t );
+                }
+            } catch( InterruptedException ie ) {
+                throw new SmbException( ie.getMessage(), ie );
+            }
+        }
+
+        return (SmbFileChange)changes.removeFirst();
+    }
+/**
+ * Stops watching the directory. Changes already received can still be
+ * collected; after that <tt>take</tt> and <tt>poll</tt> throw an
+ * <tt>SmbException</tt>.
+ */
+    public void close() {
+        SmbFuture f;
+
+        synchronized (this) {
+            f = future;
+        }
+        end( null );
+        /* The server completes the request when the directory is closed
+         * but it may not if the close failed.
+         */
+        if (f != null && f.isDone() == false)
+            f.cancel();
+    }
+
+    public String toString() {
+        return "SmbWatch[" + dir + ",filter=0x" + Integer.toHexString( filter ) +
+                ",recursive=" + recursive + ",closed=" + closed + "]";
+    }
+}
@@ -0,0 +1,42 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+/**
+ * Receives the changes reported by an {@link SmbWatch} created with a
+ * listener. Both methods are called by a thread shared by all watches so
+ * they should return promptly; a listener that needs to perform SMB
+ * operations in response to a change should hand it off to another
+ * thread.
+ */
+
+public interface SmbWatchListener {
+
+/**
+ * Called for each change to the watched directory in the order they
+ * were reported by the server.
+ */
+    public void fileChanged( SmbFileChange change );
+
+/**
+ * Called once if the watch fails, for example because the connection to
+ * the server was lost. No further changes are delivered.
+ */
+    public void watchFailed( SmbException e );
+}
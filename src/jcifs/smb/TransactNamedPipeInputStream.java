@@ -20,6 +20,7 @@ package jcifs.smb;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.net.UnknownHostException;
 import java.net.MalformedURLException;
 
@@ -88,6 +89,19 @@ class TransactNamedPipeInputStream extends SmbFileInputStream {
 
         return result;
     }
+    public int read( ByteBuffer dst ) throws IOException {
+        if( dst.hasArray() ) {
+            int n = read( dst.array(), dst.arrayOffset() + dst.position(), dst.remaining() );
+            if( n > 0 )
+                dst.position( dst.position() + n );
+            return n;
+        }
+        byte[] b = new byte[dst.remaining()];
+        int n = read( b, 0, b.length );
+        if( n > 0 )
+            dst.put( b, 0, n );
+        return n;
+    }
     public int available() throws IOException {
         if( file.log.level >= 3 )
             file.log.println( "Named Pipe available() does not apply to TRANSACT Named Pipes" );
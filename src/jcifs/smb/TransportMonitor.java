@@ -0,0 +1,126 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import jcifs.util.LogStream;
+import jcifs.util.transport.ResponseFuture;
+
+/* A single daemon thread that looks over every transport in CONNECTIONS
+ * once a second. Transports that have not carried a request for soTimeout
+ * milliseconds are closed, sessions that have expired are logged off,
+ * files kept open under a batch oplock past oplockHoldTime are closed and,
+ * if jcifs.smb.client.echoInterval is set, an SMB_COM_ECHO is sent over
+ * transports that have been quiet for that long. Echoes keep NAT and
+ * firewall state alive and find dead servers before a real request has to
+ * wait responseTimeout for them; a transport whose echo fails is closed so
+ * that the next request reconnects. Busy transports are left alone.
+ */
+
+class TransportMonitor extends Thread implements SmbConstants {
+
+    static final long PERIOD = 1000L;
+
+    static LogStream log = LogStream.getInstance();
+    static TransportMonitor monitor = null;
+
+    static synchronized void startMonitor() {
+        if (monitor == null && (SO_TIMEOUT > 0 || ECHO_INTERVAL > 0)) {
+            monitor = new TransportMonitor();
+            monitor.start();
+        }
+    }
+
+    TransportMonitor() {
+        super( "SmbTransportMonitor" );
+        setDaemon( true );
+    }
+
+    void check( SmbTransport trans, long now, ArrayList echoes ) throws IOException {
+        /* A change notification may be outstanding indefinitely. It takes
+         * no window slot so it does not count as activity but the
+         * transport is not idle either.
+         */
+        if (trans.isConnected() == false || trans.getInflight() > 0)
+            return;
+
+        if (SO_TIMEOUT > 0 && now - trans.lastUsed > SO_TIMEOUT && trans.watches == 0) {
+            if (log.level >= 4)
+                log.println( "closing idle " + trans );
+            trans.disconnect( false );
+            return;
+        }
+
+        trans.logoffExpired( now );
+        SmbOplock.closeExpired( trans, now );
+
+        if (ECHO_INTERVAL > 0 &&
+                    now - Math.max( trans.lastUsed, trans.lastEcho ) >= ECHO_INTERVAL) {
+            echoes.add( trans );
+            echoes.add( trans.echo() );
+        }
+    }
+    public void run() {
+        ArrayList echoes = new ArrayList();
+
+        for ( ;; ) {
+            try {
+                Thread.sleep( PERIOD );
+
+                SmbTransport[] conns = CONNECTIONS.toArray();
+                long now = System.currentTimeMillis();
+
+                for (int i = 0; i < conns.length; i++) {
+                    try {
+                        check( conns[i], now, echoes );
+                    } catch( IOException ioe ) {
+                        if (log.level >= 3)
+                            ioe.printStackTrace( log );
+                    }
+                }
+
+                /* The echoes were all sent at once so waiting on each in
+                 * turn takes no longer than one responseTimeout in total.
+                 */
+                for (int i = 0; i < echoes.size(); i += 2) {
+                    SmbTransport trans = (SmbTransport)echoes.get( i );
+                    try {
+                        ((ResponseFuture)echoes.get( i + 1 )).get();
+                    } catch( IOException ioe ) {
+                        if (log.level >= 2)
+                            log.println( "echo failed, closing " + trans + ": " + ioe.getMessage() );
+                        try {
+                            trans.disconnect( true );
+                        } catch( IOException ioe2 ) {
+                        }
+                    }
+                }
+                echoes.clear();
+            } catch( Throwable t ) {
+                /* Keep going; one bad transport must not stop the others
+                 * from being looked after.
+                 */
+                echoes.clear();
+                if (log.level >= 1)
+                    t.printStackTrace( log );
+            }
+        }
+    }
+}
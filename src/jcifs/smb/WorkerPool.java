@@ -0,0 +1,66 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import jcifs.util.LogStream;
+
+/* A pool of daemon threads shared by the operations that run work in the
+ * background, such as the file copies of SmbCopy. Threads are started as
+ * tasks arrive, up to jcifs.smb.client.workerThreads of them, and then
+ * stay (an idle core thread can only be made to exit from Java 6 on).
+ * They are daemon threads so they do not keep the VM alive. Tasks beyond
+ * that wait in the queue. A task must not wait for another task to
+ * complete or the pool can run out of threads.
+ */
+
+class WorkerPool implements SmbConstants {
+
+    static LogStream log = LogStream.getInstance();
+
+    static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                WORKER_THREADS, WORKER_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue(),
+                new ThreadFactory() {
+                    int next = 0;
+
+                    public synchronized Thread newThread( Runnable r ) {
+                        Thread t = new Thread( r, "JCIFS-Worker" + next++ );
+                        t.setDaemon( true );
+                        return t;
+                    }
+                });
+
+    static void execute( final Runnable task ) {
+        executor.execute( new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } catch( Throwable t ) {
+                    if( log.level >= 2 )
+                        t.printStackTrace( log );
+                }
+            }
+        });
+    }
+}
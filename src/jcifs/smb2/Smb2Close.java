@@ -0,0 +1,48 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2Close extends Smb2Message {
+
+    byte[] fileId;
+
+    Smb2Close( byte[] fileId ) {
+        super( SMB2_CLOSE );
+        this.fileId = fileId;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        Encdec.enc_uint16le( (short)24, dst, dstIndex );
+        Encdec.enc_uint16le( (short)0, dst, dstIndex + 2 ); /* Flags */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 4 );
+        System.arraycopy( fileId, 0, dst, dstIndex + 8, 16 );
+        return 24;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2Close[" + super.toString() +
+            ",fileId=" + Hexdump.toHexString( fileId, 0, 32 ) + "]";
+    }
+}
@@ -0,0 +1,37 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+class Smb2CloseResponse extends Smb2Message {
+
+    Smb2CloseResponse() {
+        super( SMB2_CLOSE );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 60;
+    }
+    public String toString() {
+        return "Smb2CloseResponse[" + super.toString() + "]";
+    }
+}
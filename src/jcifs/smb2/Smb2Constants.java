@@ -0,0 +1,128 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb2;
+
+import jcifs.Config;
+
+interface Smb2Constants {
+
+    static final int DEFAULT_PORT = 445;
+
+    static final int HEADER_LENGTH = 64;
+
+    /* dialects
+     */
+    static final int SMB2_002 = 0x0202;
+    static final int SMB2_1 = 0x0210;
+    static final int SMB2_WILDCARD = 0x02FF;
+
+    /* commands
+     */
+    static final int SMB2_NEGOTIATE       = 0x0000;
+    static final int SMB2_SESSION_SETUP   = 0x0001;
+    static final int SMB2_LOGOFF          = 0x0002;
+    static final int SMB2_TREE_CONNECT    = 0x0003;
+    static final int SMB2_TREE_DISCONNECT = 0x0004;
+    static final int SMB2_CREATE          = 0x0005;
+    static final int SMB2_CLOSE           = 0x0006;
+    static final int SMB2_READ            = 0x0008;
+    static final int SMB2_WRITE           = 0x0009;
+    static final int SMB2_QUERY_DIRECTORY = 0x000E;
+
+    /* header flags
+     */
+    static final int FLAGS_SERVER_TO_REDIR = 0x00000001;
+    static final int FLAGS_ASYNC_COMMAND   = 0x00000002;
+    static final int FLAGS_SIGNED          = 0x00000008;
+
+    /* negotiate
+     */
+    static final int NEGOTIATE_SIGNING_ENABLED  = 0x0001;
+    static final int NEGOTIATE_SIGNING_REQUIRED = 0x0002;
+    static final int GLOBAL_CAP_LARGE_MTU       = 0x00000004;
+
+    /* session setup
+     */
+    static final int SESSION_FLAG_IS_GUEST = 0x0001;
+    static final int SESSION_FLAG_IS_NULL  = 0x0002;
+
+    /* tree connect
+     */
+    static final int SHARE_TYPE_DISK = 0x01;
+
+    /* create
+     */
+    static final int FILE_SUPERSEDE    = 0x00000000;
+    static final int FILE_OPEN         = 0x00000001;
+    static final int FILE_CREATE       = 0x00000002;
+    static final int FILE_OPEN_IF      = 0x00000003;
+    static final int FILE_OVERWRITE_IF = 0x00000005;
+
+    static final int FILE_DIRECTORY_FILE     = 0x00000001;
+    static final int FILE_NON_DIRECTORY_FILE = 0x00000040;
+
+    static final int FILE_READ_DATA       = 0x00000001;
+    static final int FILE_WRITE_DATA      = 0x00000002;
+    static final int FILE_APPEND_DATA     = 0x00000004;
+    static final int FILE_READ_ATTRIBUTES = 0x00000080;
+    static final int SYNCHRONIZE          = 0x00100000;
+    static final int GENERIC_READ         = 0x80000000;
+
+    static final int FILE_SHARE_READ   = 0x00000001;
+    static final int FILE_SHARE_WRITE  = 0x00000002;
+    static final int FILE_SHARE_DELETE = 0x00000004;
+
+    static final int FILE_ATTRIBUTE_DIRECTORY = 0x00000010;
+    static final int FILE_ATTRIBUTE_NORMAL    = 0x00000080;
+
+    /* query directory
+     */
+    static final int FILE_DIRECTORY_INFORMATION = 0x01;
+    static final int RESTART_SCANS = 0x01;
+
+    /* status
+     */
+    static final int STATUS_SUCCESS                  = 0x00000000;
+    static final int STATUS_PENDING                  = 0x00000103;
+    static final int STATUS_BUFFER_OVERFLOW          = 0x80000005;
+    static final int STATUS_NO_MORE_FILES            = 0x80000006;
+    static final int STATUS_END_OF_FILE              = 0xC0000011;
+    static final int STATUS_MORE_PROCESSING_REQUIRED = 0xC0000016;
+    static final int STATUS_OBJECT_NAME_NOT_FOUND    = 0xC0000034;
+    static final int STATUS_OBJECT_PATH_NOT_FOUND    = 0xC000003A;
+    static final int STATUS_NO_SUCH_FILE             = 0xC000000F;
+
+    static final int SO_TIMEOUT =
+            Config.getInt( "jcifs.smb.client.soTimeout", 35000 );
+    static final int CONN_TIMEOUT =
+            Config.getInt( "jcifs.smb.client.connTimeout", 35000 );
+    static final int RESPONSE_TIMEOUT =
+            Config.getInt( "jcifs.smb.client.responseTimeout", 30000 );
+    static final boolean SIGNPREF =
+            Config.getBoolean( "jcifs.smb.client.signingPreferred", false );
+
+    /* The most data one READ or WRITE carries if the server allows it and
+     * the number of credits the client asks the server to keep it supplied
+     * with. Each credit covers 64K of a large request.
+     */
+    static final int IO_SIZE =
+            Config.getInt( "jcifs.smb.client.smb2IoSize", 0x100000 );
+    static final int CREDITS =
+            Config.getInt( "jcifs.smb.client.smb2Credits", 128 );
+}
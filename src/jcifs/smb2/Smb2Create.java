@@ -0,0 +1,82 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2Create extends Smb2Message {
+
+    String name;
+    int desiredAccess, fileAttributes, shareAccess, createDisposition, createOptions;
+
+    Smb2Create( String name,
+                int desiredAccess,
+                int shareAccess,
+                int createDisposition,
+                int createOptions ) {
+        super( SMB2_CREATE );
+        this.name = name;
+        this.desiredAccess = desiredAccess;
+        this.shareAccess = shareAccess;
+        this.createDisposition = createDisposition;
+        this.createOptions = createOptions;
+        fileAttributes = FILE_ATTRIBUTE_NORMAL;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        Encdec.enc_uint16le( (short)57, dst, dstIndex );
+        dst[dstIndex + 2] = (byte)0x00; /* SecurityFlags */
+        dst[dstIndex + 3] = (byte)0x00; /* RequestedOplockLevel */
+        Encdec.enc_uint32le( 2, dst, dstIndex + 4 ); /* Impersonation */
+        Encdec.enc_uint64le( 0L, dst, dstIndex + 8 );
+        Encdec.enc_uint64le( 0L, dst, dstIndex + 16 );
+        Encdec.enc_uint32le( desiredAccess, dst, dstIndex + 24 );
+        Encdec.enc_uint32le( fileAttributes, dst, dstIndex + 28 );
+        Encdec.enc_uint32le( shareAccess, dst, dstIndex + 32 );
+        Encdec.enc_uint32le( createDisposition, dst, dstIndex + 36 );
+        Encdec.enc_uint32le( createOptions, dst, dstIndex + 40 );
+        Encdec.enc_uint16le( (short)bufferOffset( dstIndex + 56 ), dst, dstIndex + 44 );
+        int n = writeString( name, dst, dstIndex + 56 );
+        Encdec.enc_uint16le( (short)n, dst, dstIndex + 46 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 48 ); /* no create contexts */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 52 );
+        dstIndex += 56;
+        if (n == 0) {
+            dst[dstIndex++] = (byte)0x00; /* the buffer is never empty */
+        } else {
+            dstIndex += n;
+        }
+
+        return dstIndex - start;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2Create[" + super.toString() +
+            ",name=" + name +
+            ",desiredAccess=0x" + Hexdump.toHexString( desiredAccess, 8 ) +
+            ",createDisposition=" + createDisposition +
+            ",createOptions=0x" + Hexdump.toHexString( createOptions, 8 ) + "]";
+    }
+}
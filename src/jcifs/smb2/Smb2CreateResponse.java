@@ -0,0 +1,58 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2CreateResponse extends Smb2Message {
+
+    int createAction, fileAttributes;
+    long creationTime, lastAccessTime, lastWriteTime, changeTime;
+    long allocationSize, endOfFile;
+    byte[] fileId = new byte[16];
+
+    Smb2CreateResponse() {
+        super( SMB2_CREATE );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        createAction = Encdec.dec_uint32le( buffer, bufferIndex + 4 );
+        creationTime = Encdec.dec_uint64le( buffer, bufferIndex + 8 );
+        lastAccessTime = Encdec.dec_uint64le( buffer, bufferIndex + 16 );
+        lastWriteTime = Encdec.dec_uint64le( buffer, bufferIndex + 24 );
+        changeTime = Encdec.dec_uint64le( buffer, bufferIndex + 32 );
+        allocationSize = Encdec.dec_uint64le( buffer, bufferIndex + 40 );
+        endOfFile = Encdec.dec_uint64le( buffer, bufferIndex + 48 );
+        fileAttributes = Encdec.dec_uint32le( buffer, bufferIndex + 56 );
+        System.arraycopy( buffer, bufferIndex + 64, fileId, 0, 16 );
+        return 88;
+    }
+    public String toString() {
+        return "Smb2CreateResponse[" + super.toString() +
+            ",createAction=" + createAction +
+            ",fileAttributes=0x" + Hexdump.toHexString( fileAttributes, 4 ) +
+            ",endOfFile=" + endOfFile +
+            ",fileId=" + Hexdump.toHexString( fileId, 0, 32 ) + "]";
+    }
+}
@@ -0,0 +1,242 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.*;
+import java.util.ArrayList;
+
+import jcifs.UniAddress;
+import jcifs.smb.*;
+
+/**
+ * Accesses a file on a disk share with SMB2 rather than SMB1. The file is
+ * named by an <tt>SmbFile</tt> whose server, share, path and credentials
+ * are used as is. SMB2 removes most of the round trips that SMB1 needs
+ * to open and read a file, lets the server grant credits for many
+ * requests in flight at once and, with SMB 2.1, moves up to
+ * <tt>jcifs.smb.client.smb2IoSize</tt> bytes (1MB by default) in a
+ * single READ or WRITE.
+ * <p>
+ * If the server does not speak SMB2, or the file is not on a disk share,
+ * every method falls back to the <tt>SmbFile</tt> and the
+ * <tt>SmbFileInputStream</tt> and <tt>SmbFileOutputStream</tt> of
+ * <tt>jcifs.smb</tt>.
+ * <p>
+ * This is an opt-in side API next to <tt>SmbFile</tt>, not a replacement
+ * for it. Setting <tt>jcifs.smb.client.useSMB2</tt> only makes
+ * <tt>SmbFile.getInputStream()</tt> and <tt>getOutputStream()</tt> go
+ * through this class. Every other <tt>SmbFile</tt> operation, such as
+ * <tt>exists</tt>, <tt>length</tt> or <tt>listFiles</tt>, and streams
+ * constructed directly with <tt>new SmbFileInputStream</tt> or
+ * <tt>new SmbFileOutputStream</tt> still use SMB1. SMB2 requests go over
+ * a connection of their own, shared by the <tt>Smb2File</tt>s of a
+ * server, so a server used both ways has two connections open. Only the
+ * operations below are done with SMB2; DFS, oplocks and the SMB 3.x
+ * dialects are not supported.
+ */
+
+public class Smb2File implements Smb2Constants {
+
+    static final long MILLISECONDS_BETWEEN_1970_AND_1601 = 11644473600000L;
+
+    SmbFile file;
+    Smb2Tree tree;
+    String path;
+    boolean smb1 = false;
+
+/**
+ * Constructs an <tt>Smb2File</tt> for the resource named by the
+ * <tt>SmbFile</tt>. No connection is made until the file is used.
+ *
+ * @param file The file, directory or share to access
+ */
+
+    public Smb2File( SmbFile file ) {
+        this.file = file;
+    }
+
+    /* Returns the connected tree or null if SMB1 must be used.
+     */
+    Smb2Tree tree() throws IOException {
+        if (tree != null || smb1)
+            return tree;
+
+        String share = file.getShare();
+        int port = file.getURL().getPort();
+        if (port == -1)
+            port = DEFAULT_PORT;
+        if (share == null || share.equalsIgnoreCase( "IPC$" ) || port == 139) {
+            smb1 = true;
+            return null;
+        }
+
+        Smb2Transport trans = Smb2Transport.getTransport( UniAddress.getByName( file.getServer() ), port );
+        if (trans.connect0() == false) {
+            smb1 = true;
+            return null;
+        }
+        NtlmPasswordAuthentication auth = (NtlmPasswordAuthentication)file.getPrincipal();
+        Smb2Tree t = trans.getSession( auth ).getTree( share );
+        t.treeConnect();
+        if (t.shareType != SHARE_TYPE_DISK) {
+            smb1 = true;
+            return null;
+        }
+
+        /* \\server\share\path\ -> path
+         */
+        String unc = file.getUncPath();
+        int i = 2 + file.getServer().length() + 1 + share.length();
+        path = i < unc.length() ? unc.substring( i + 1 ) : "";
+        if (path.endsWith( "\\" ))
+            path = path.substring( 0, path.length() - 1 );
+
+        tree = t;
+        return tree;
+    }
+    Smb2CreateResponse stat() throws IOException {
+        Smb2CreateResponse resp = tree.open( path, FILE_READ_ATTRIBUTES, FILE_OPEN, 0 );
+        tree.close( resp.fileId );
+        return resp;
+    }
+
+/**
+ * Returns <tt>true</tt> if this file is accessed with SMB2 and
+ * <tt>false</tt> if it falls back to SMB1.
+ *
+ * @return <tt>true</tt> if SMB2 is used
+ */
+
+    public boolean isSmb2() throws IOException {
+        return tree() != null;
+    }
+
+/**
+ * Tests to see if the file exists.
+ *
+ * @return <tt>true</tt> if the file exists
+ */
+
+    public boolean exists() throws IOException {
+        if (tree() == null)
+            return file.exists();
+        if (path.length() == 0)
+            return true;
+        try {
+            stat();
+        } catch( SmbException se ) {
+            switch (se.getNtStatus()) {
+                case STATUS_NO_SUCH_FILE:
+                case STATUS_OBJECT_NAME_NOT_FOUND:
+                case STATUS_OBJECT_PATH_NOT_FOUND:
+                    return false;
+            }
+            throw se;
+        }
+        return true;
+    }
+
+/**
+ * Tests to see if the file is a directory.
+ *
+ * @return <tt>true</tt> if the file is a directory
+ */
+
+    public boolean isDirectory() throws IOException {
+        if (tree() == null)
+            return file.isDirectory();
+        if (path.length() == 0)
+            return true;
+        return (stat().fileAttributes & FILE_ATTRIBUTE_DIRECTORY) != 0;
+    }
+
+/**
+ * Returns the length of the file in bytes.
+ *
+ * @return the length of the file
+ */
+
+    public long length() throws IOException {
+        if (tree() == null)
+            return file.length();
+        if (path.length() == 0)
+            return 0L;
+        return stat().endOfFile;
+    }
+
+/**
+ * Returns the time the file was last modified in milliseconds
+ * since 00:00:00 GMT, January 1, 1970.
+ *
+ * @return the last modified time
+ */
+
+    public long lastModified() throws IOException {
+        if (tree() == null)
+            return file.lastModified();
+        if (path.length() == 0)
+            return 0L;
+        return stat().lastWriteTime / 10000L - MILLISECONDS_BETWEEN_1970_AND_1601;
+    }
+
+/**
+ * Lists the names of the files and directories in this directory.
+ *
+ * @return the names, without "." and ".."
+ */
+
+    public String[] list() throws IOException {
+        if (tree() == null)
+            return file.list();
+        ArrayList entries = tree.list( path, "*" );
+        String[] names = new String[entries.size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = ((Smb2QueryDirectoryResponse.Entry)entries.get( i )).name;
+        return names;
+    }
+
+/**
+ * Opens the file for reading.
+ *
+ * @return an <tt>InputStream</tt> that reads the file from the beginning
+ */
+
+    public InputStream getInputStream() throws IOException {
+        if (tree() == null)
+            return new SmbFileInputStream( file );
+        return new Smb2FileInputStream( tree, path );
+    }
+
+/**
+ * Creates or truncates the file and opens it for writing.
+ *
+ * @return an <tt>OutputStream</tt> that writes the file from the beginning
+ */
+
+    public OutputStream getOutputStream() throws IOException {
+        if (tree() == null)
+            return new SmbFileOutputStream( file );
+        return new Smb2FileOutputStream( tree, path );
+    }
+
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,77 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/* Reads a file with SMB2 READs of up to the negotiated maximum size,
+ * each read straight into the caller's array.
+ */
+
+class Smb2FileInputStream extends InputStream implements Smb2Constants {
+
+    Smb2Tree tree;
+    byte[] fileId;
+    long fp;
+    byte[] tmp = new byte[1];
+
+    Smb2FileInputStream( Smb2Tree tree, String path ) throws IOException {
+        this.tree = tree;
+        fileId = tree.open( path,
+                    FILE_READ_DATA | FILE_READ_ATTRIBUTES,
+                    FILE_OPEN,
+                    FILE_NON_DIRECTORY_FILE ).fileId;
+    }
+
+    public int read() throws IOException {
+        if (read( tmp, 0, 1 ) == -1)
+            return -1;
+        return tmp[0] & 0xFF;
+    }
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if (fileId == null)
+            throw new IOException( "Bad file descriptor" );
+        if (len <= 0)
+            return 0;
+        int n = tree.read( fileId, fp, b, off, Math.min( len, tree.session.transport.maxReadSize ));
+        if (n <= 0)
+            return -1;
+        fp += n;
+        return n;
+    }
+    public long skip( long n ) throws IOException {
+        if (n > 0) {
+            fp += n;
+            return n;
+        }
+        return 0;
+    }
+    public void close() throws IOException {
+        if (fileId != null) {
+            try {
+                tree.close( fileId );
+            } finally {
+                fileId = null;
+                tmp = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/* Writes a file with SMB2 WRITEs of up to the negotiated maximum size.
+ * The data is sent from the caller's array and is not copied.
+ */
+
+class Smb2FileOutputStream extends OutputStream implements Smb2Constants {
+
+    Smb2Tree tree;
+    byte[] fileId;
+    long fp;
+    byte[] tmp = new byte[1];
+
+    Smb2FileOutputStream( Smb2Tree tree, String path ) throws IOException {
+        this.tree = tree;
+        fileId = tree.open( path,
+                    FILE_WRITE_DATA | FILE_APPEND_DATA | FILE_READ_ATTRIBUTES,
+                    FILE_OVERWRITE_IF,
+                    FILE_NON_DIRECTORY_FILE ).fileId;
+    }
+
+    public void write( int b ) throws IOException {
+        tmp[0] = (byte)b;
+        write( tmp, 0, 1 );
+    }
+    public void write( byte[] b, int off, int len ) throws IOException {
+        if (fileId == null)
+            throw new IOException( "Bad file descriptor" );
+        int max = tree.session.transport.maxWriteSize;
+        while (len > 0) {
+            int n = tree.write( fileId, fp, b, off, Math.min( len, max ));
+            if (n <= 0)
+                throw new IOException( "Short write: " + n );
+            fp += n;
+            off += n;
+            len -= n;
+        }
+    }
+    public void close() throws IOException {
+        if (fileId != null) {
+            try {
+                tree.close( fileId );
+            } finally {
+                fileId = null;
+                tmp = null;
+            }
+        }
+    }
+}
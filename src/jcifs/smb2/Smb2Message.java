@@ -0,0 +1,164 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb2;
+
+import java.io.UnsupportedEncodingException;
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+import jcifs.util.transport.*;
+
+/* The SMB2 counterpart of ServerMessageBlock. A request and its response
+ * are both Smb2Messages; the 64 byte header is common and subclasses
+ * encode or decode the body that follows it.
+ */
+
+abstract class Smb2Message extends Response implements Request, Smb2Constants {
+
+    static final byte[] PROTOCOL_ID = { (byte)0xFE, (byte)'S', (byte)'M', (byte)'B' };
+
+    int command, status, flags;
+    int creditCharge;
+    int credits; /* CreditRequest in a request, CreditResponse in a response */
+    long messageId, asyncId, sessionId;
+    int treeId;
+    int headerStart, length;
+
+    Smb2Message response;
+    Smb2Session session; /* signs the request if set */
+    boolean verifyFailed;
+
+    /* If set, the data of a WRITE that is to be sent from the caller's
+     * array after the encoded message rather than copied into it.
+     */
+    byte[] gatherBuf;
+    int gatherOff, gatherLen;
+
+    Smb2Message( int command ) {
+        this.command = command;
+    }
+
+    int encode( byte[] dst, int dstIndex ) {
+        int start = headerStart = dstIndex;
+
+        System.arraycopy( PROTOCOL_ID, 0, dst, dstIndex, 4 );
+        Encdec.enc_uint16le( (short)HEADER_LENGTH, dst, dstIndex + 4 );
+        Encdec.enc_uint16le( (short)creditCharge, dst, dstIndex + 6 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 8 );
+        Encdec.enc_uint16le( (short)command, dst, dstIndex + 12 );
+        Encdec.enc_uint16le( (short)credits, dst, dstIndex + 14 );
+        Encdec.enc_uint32le( flags, dst, dstIndex + 16 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 20 ); /* NextCommand */
+        Encdec.enc_uint64le( messageId, dst, dstIndex + 24 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 32 ); /* ProcessId */
+        Encdec.enc_uint32le( treeId, dst, dstIndex + 36 );
+        Encdec.enc_uint64le( sessionId, dst, dstIndex + 40 );
+        for (int i = 48; i < HEADER_LENGTH; i++)
+            dst[dstIndex + i] = (byte)0x00; /* signature */
+        dstIndex += HEADER_LENGTH;
+
+        dstIndex += writeBodyWireFormat( dst, dstIndex );
+        length = dstIndex - start;
+
+        return length;
+    }
+    int decodeHeader( byte[] buffer, int bufferIndex ) {
+        headerStart = bufferIndex;
+        creditCharge = Encdec.dec_uint16le( buffer, bufferIndex + 6 ) & 0xFFFF;
+        status = Encdec.dec_uint32le( buffer, bufferIndex + 8 );
+        command = Encdec.dec_uint16le( buffer, bufferIndex + 12 ) & 0xFFFF;
+        credits = Encdec.dec_uint16le( buffer, bufferIndex + 14 ) & 0xFFFF;
+        flags = Encdec.dec_uint32le( buffer, bufferIndex + 16 );
+        messageId = Encdec.dec_uint64le( buffer, bufferIndex + 24 );
+        if ((flags & FLAGS_ASYNC_COMMAND) != 0) {
+            asyncId = Encdec.dec_uint64le( buffer, bufferIndex + 32 );
+        } else {
+            treeId = Encdec.dec_uint32le( buffer, bufferIndex + 36 );
+        }
+        sessionId = Encdec.dec_uint64le( buffer, bufferIndex + 40 );
+        return HEADER_LENGTH;
+    }
+    int decode( byte[] buffer, int bufferIndex, int len ) {
+        int start = bufferIndex;
+
+        bufferIndex += decodeHeader( buffer, bufferIndex );
+        /* Errors (and the interim response to a request that will complete
+         * later) have their own 9 byte body.
+         */
+        if (isError() == false)
+            bufferIndex += readBodyWireFormat( buffer, bufferIndex, len - HEADER_LENGTH );
+        length = len;
+
+        return bufferIndex - start;
+    }
+    /* The body of an error response is not what readBodyWireFormat expects
+     * except for those few that carry data along with a warning.
+     */
+    boolean isError() {
+        return status != STATUS_SUCCESS &&
+                status != STATUS_MORE_PROCESSING_REQUIRED &&
+                status != STATUS_BUFFER_OVERFLOW;
+    }
+    boolean isPending() {
+        return status == STATUS_PENDING && (flags & FLAGS_ASYNC_COMMAND) != 0;
+    }
+    /* Reduce the request to a charge of credits if it can do with less.
+     */
+    boolean shrink( int credits ) {
+        return false;
+    }
+
+    /* The offset of the buffer that follows a fixed size body, as
+     * counted from the start of the header.
+     */
+    int bufferOffset( int dstIndex ) {
+        return dstIndex - headerStart;
+    }
+
+    static int writeString( String str, byte[] dst, int dstIndex ) {
+        try {
+            byte[] b = str.getBytes( "UTF-16LE" );
+            System.arraycopy( b, 0, dst, dstIndex, b.length );
+            return b.length;
+        } catch( UnsupportedEncodingException uee ) {
+            return 0;
+        }
+    }
+    static String readString( byte[] src, int srcIndex, int len ) {
+        try {
+            return new String( src, srcIndex, len, "UTF-16LE" );
+        } catch( UnsupportedEncodingException uee ) {
+            return null;
+        }
+    }
+
+    abstract int writeBodyWireFormat( byte[] dst, int dstIndex );
+    abstract int readBodyWireFormat( byte[] buffer, int bufferIndex, int len );
+
+    public String toString() {
+        return "command=0x" + Hexdump.toHexString( command, 4 ) +
+            ",status=0x" + Hexdump.toHexString( status, 8 ) +
+            ",flags=0x" + Hexdump.toHexString( flags, 8 ) +
+            ",creditCharge=" + creditCharge +
+            ",credits=" + credits +
+            ",messageId=" + messageId +
+            ",treeId=" + treeId +
+            ",sessionId=" + sessionId +
+            ",length=" + length;
+    }
+}
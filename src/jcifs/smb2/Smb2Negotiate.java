@@ -0,0 +1,62 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2Negotiate extends Smb2Message {
+
+    static final int[] DIALECTS = { SMB2_002, SMB2_1 };
+
+    int securityMode;
+    byte[] clientGuid;
+
+    Smb2Negotiate( int securityMode, byte[] clientGuid ) {
+        super( SMB2_NEGOTIATE );
+        this.securityMode = securityMode;
+        this.clientGuid = clientGuid;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        Encdec.enc_uint16le( (short)36, dst, dstIndex );
+        Encdec.enc_uint16le( (short)DIALECTS.length, dst, dstIndex + 2 );
+        Encdec.enc_uint16le( (short)securityMode, dst, dstIndex + 4 );
+        Encdec.enc_uint16le( (short)0, dst, dstIndex + 6 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 8 ); /* Capabilities */
+        System.arraycopy( clientGuid, 0, dst, dstIndex + 12, 16 );
+        Encdec.enc_uint64le( 0L, dst, dstIndex + 28 ); /* ClientStartTime */
+        dstIndex += 36;
+        for (int i = 0; i < DIALECTS.length; i++) {
+            Encdec.enc_uint16le( (short)DIALECTS[i], dst, dstIndex );
+            dstIndex += 2;
+        }
+
+        return dstIndex - start;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2Negotiate[" + super.toString() +
+            ",securityMode=" + securityMode + "]";
+    }
+}
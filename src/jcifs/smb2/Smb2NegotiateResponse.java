@@ -0,0 +1,68 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2NegotiateResponse extends Smb2Message {
+
+    int securityMode, dialect, capabilities;
+    int maxTransactSize, maxReadSize, maxWriteSize;
+    byte[] serverGuid = new byte[16];
+    byte[] securityBlob;
+
+    Smb2NegotiateResponse() {
+        super( SMB2_NEGOTIATE );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        int start = bufferIndex;
+
+        securityMode = Encdec.dec_uint16le( buffer, bufferIndex + 2 ) & 0xFFFF;
+        dialect = Encdec.dec_uint16le( buffer, bufferIndex + 4 ) & 0xFFFF;
+        System.arraycopy( buffer, bufferIndex + 8, serverGuid, 0, 16 );
+        capabilities = Encdec.dec_uint32le( buffer, bufferIndex + 24 );
+        maxTransactSize = Encdec.dec_uint32le( buffer, bufferIndex + 28 );
+        maxReadSize = Encdec.dec_uint32le( buffer, bufferIndex + 32 );
+        maxWriteSize = Encdec.dec_uint32le( buffer, bufferIndex + 36 );
+        int off = Encdec.dec_uint16le( buffer, bufferIndex + 56 ) & 0xFFFF;
+        int blen = Encdec.dec_uint16le( buffer, bufferIndex + 58 ) & 0xFFFF;
+        bufferIndex += 64;
+        if (blen > 0 && off + blen <= HEADER_LENGTH + len) {
+            securityBlob = new byte[blen];
+            System.arraycopy( buffer, headerStart + off, securityBlob, 0, blen );
+        }
+
+        return bufferIndex - start;
+    }
+    public String toString() {
+        return "Smb2NegotiateResponse[" + super.toString() +
+            ",dialect=0x" + Hexdump.toHexString( dialect, 4 ) +
+            ",securityMode=" + securityMode +
+            ",capabilities=0x" + Hexdump.toHexString( capabilities, 8 ) +
+            ",maxTransactSize=" + maxTransactSize +
+            ",maxReadSize=" + maxReadSize +
+            ",maxWriteSize=" + maxWriteSize + "]";
+    }
+}
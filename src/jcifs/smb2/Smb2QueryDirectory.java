@@ -0,0 +1,63 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2QueryDirectory extends Smb2Message {
+
+    byte[] fileId;
+    String pattern;
+    int queryFlags, outputBufferLength;
+
+    Smb2QueryDirectory( byte[] fileId, String pattern, int queryFlags, int outputBufferLength ) {
+        super( SMB2_QUERY_DIRECTORY );
+        this.fileId = fileId;
+        this.pattern = pattern;
+        this.queryFlags = queryFlags;
+        this.outputBufferLength = outputBufferLength;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        Encdec.enc_uint16le( (short)33, dst, dstIndex );
+        dst[dstIndex + 2] = (byte)FILE_DIRECTORY_INFORMATION;
+        dst[dstIndex + 3] = (byte)queryFlags;
+        Encdec.enc_uint32le( 0, dst, dstIndex + 4 ); /* FileIndex */
+        System.arraycopy( fileId, 0, dst, dstIndex + 8, 16 );
+        Encdec.enc_uint16le( (short)bufferOffset( dstIndex + 32 ), dst, dstIndex + 24 );
+        int n = writeString( pattern, dst, dstIndex + 32 );
+        Encdec.enc_uint16le( (short)n, dst, dstIndex + 26 );
+        Encdec.enc_uint32le( outputBufferLength, dst, dstIndex + 28 );
+        dstIndex += 32 + n;
+
+        return dstIndex - start;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2QueryDirectory[" + super.toString() +
+            ",pattern=" + pattern +
+            ",queryFlags=" + queryFlags +
+            ",outputBufferLength=" + outputBufferLength + "]";
+    }
+}
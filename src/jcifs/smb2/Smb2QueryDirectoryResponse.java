@@ -0,0 +1,80 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.util.ArrayList;
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2QueryDirectoryResponse extends Smb2Message {
+
+    /* One FileDirectoryInformation entry.
+     */
+    static class Entry {
+        String name;
+        int attributes;
+        long lastWriteTime, endOfFile;
+
+        public String toString() {
+            return "Entry[name=" + name +
+                ",attributes=0x" + Hexdump.toHexString( attributes, 4 ) +
+                ",endOfFile=" + endOfFile + "]";
+        }
+    }
+
+    ArrayList entries = new ArrayList();
+
+    Smb2QueryDirectoryResponse() {
+        super( SMB2_QUERY_DIRECTORY );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        int off = Encdec.dec_uint16le( buffer, bufferIndex + 2 ) & 0xFFFF;
+        int blen = Encdec.dec_uint32le( buffer, bufferIndex + 4 );
+        int end = headerStart + Math.min( off + blen, HEADER_LENGTH + len );
+
+        entries.clear();
+        int ei = headerStart + off;
+        while (ei + 64 <= end) {
+            int next = Encdec.dec_uint32le( buffer, ei );
+            int nlen = Encdec.dec_uint32le( buffer, ei + 60 );
+            if (nlen < 0 || ei + 64 + nlen > end)
+                break;
+            Entry e = new Entry();
+            e.lastWriteTime = Encdec.dec_uint64le( buffer, ei + 24 );
+            e.endOfFile = Encdec.dec_uint64le( buffer, ei + 40 );
+            e.attributes = Encdec.dec_uint32le( buffer, ei + 56 );
+            e.name = readString( buffer, ei + 64, nlen );
+            entries.add( e );
+            if (next <= 0)
+                break;
+            ei += next;
+        }
+
+        return 8 + blen;
+    }
+    public String toString() {
+        return "Smb2QueryDirectoryResponse[" + super.toString() +
+            ",entries=" + entries.size() + "]";
+    }
+}
@@ -0,0 +1,65 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2Read extends Smb2Message {
+
+    byte[] fileId;
+    long offset;
+    int readLength;
+
+    Smb2Read( byte[] fileId, long offset, int readLength ) {
+        super( SMB2_READ );
+        this.fileId = fileId;
+        this.offset = offset;
+        this.readLength = readLength;
+    }
+
+    boolean shrink( int credits ) {
+        readLength = credits * 0x10000;
+        creditCharge = credits;
+        return true;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        Encdec.enc_uint16le( (short)49, dst, dstIndex );
+        dst[dstIndex + 2] = (byte)0x50; /* Padding */
+        dst[dstIndex + 3] = (byte)0x00; /* Flags */
+        Encdec.enc_uint32le( readLength, dst, dstIndex + 4 );
+        Encdec.enc_uint64le( offset, dst, dstIndex + 8 );
+        System.arraycopy( fileId, 0, dst, dstIndex + 16, 16 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 32 ); /* MinimumCount */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 36 ); /* Channel */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 40 ); /* RemainingBytes */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 44 ); /* ReadChannelInfo */
+        dst[dstIndex + 48] = (byte)0x00;
+        return 49;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2Read[" + super.toString() +
+            ",offset=" + offset +
+            ",readLength=" + readLength + "]";
+    }
+}
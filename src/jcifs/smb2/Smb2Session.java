@@ -0,0 +1,142 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+
+import jcifs.smb.NtlmContext;
+import jcifs.smb.NtlmPasswordAuthentication;
+import jcifs.smb.SmbException;
+import jcifs.util.LogStream;
+
+/* An authenticated SMB2 session. The NTLMSSP exchange is the same one
+ * SmbSession does for extended security but the tokens are carried
+ * in SESSION_SETUP requests without the SPNEGO wrapping.
+ */
+
+class Smb2Session implements Smb2Constants {
+
+    static LogStream log = LogStream.getInstance();
+
+    Smb2Transport transport;
+    NtlmPasswordAuthentication auth;
+    long sessionId;
+    Smb2SigningDigest digest;
+    boolean signingRequired;
+    LinkedList trees = new LinkedList();
+
+    Smb2Session( Smb2Transport transport, NtlmPasswordAuthentication auth ) {
+        this.transport = transport;
+        this.auth = auth;
+    }
+
+    Smb2Tree getTree( String share ) {
+        synchronized (trees) {
+            ListIterator iter = trees.listIterator();
+            while (iter.hasNext()) {
+                Smb2Tree tree = (Smb2Tree)iter.next();
+                if (tree.share.equalsIgnoreCase( share ))
+                    return tree;
+            }
+            Smb2Tree tree = new Smb2Tree( this, share );
+            trees.add( tree );
+            return tree;
+        }
+    }
+
+    synchronized void setup() throws IOException {
+        if (transport.connect0() == false)
+            throw new IOException( "SMB2 not supported by " + transport.address );
+        if (sessionId != 0)
+            return;
+
+        signingRequired = transport.signingRequired || SIGNPREF;
+        NtlmContext ctx = new NtlmContext( auth, signingRequired );
+        byte[] token = new byte[0];
+        long id = 0;
+        Smb2SessionSetupResponse resp;
+
+        do {
+            token = ctx.initSecContext( token, 0, token.length );
+            Smb2SessionSetup req = new Smb2SessionSetup(
+                    signingRequired ? NEGOTIATE_SIGNING_REQUIRED : NEGOTIATE_SIGNING_ENABLED, token );
+            req.sessionId = id;
+            resp = new Smb2SessionSetupResponse();
+            transport.sendrecv( req, resp, RESPONSE_TIMEOUT );
+            if (resp.isError())
+                throw new SmbException( resp.status, false );
+            id = resp.sessionId;
+            token = resp.token;
+        } while (resp.status == STATUS_MORE_PROCESSING_REQUIRED && ctx.isEstablished() == false);
+
+        if (resp.status != STATUS_SUCCESS)
+            throw new SmbException( resp.status, false );
+
+        /* Guest and anonymous sessions have no session key
+         */
+        if (signingRequired && (resp.sessionFlags & (SESSION_FLAG_IS_GUEST | SESSION_FLAG_IS_NULL)) == 0) {
+            byte[] key = ctx.getSigningKey();
+            if (key == null)
+                throw new IOException( "No session key to sign with" );
+            try {
+                digest = new Smb2SigningDigest( key );
+            } catch( GeneralSecurityException gse ) {
+                throw new IOException( "Cannot sign SMB2 messages: " + gse.getMessage() );
+            }
+        } else {
+            signingRequired = false;
+        }
+        sessionId = id;
+    }
+
+    /* Send a request on this session. An error status is thrown as an
+     * SmbException except STATUS_END_OF_FILE and STATUS_NO_MORE_FILES
+     * which callers test for themselves.
+     */
+    void send( Smb2Message request, Smb2Message response ) throws IOException {
+        setup();
+        request.sessionId = sessionId;
+        request.session = response.session = this;
+        response.verifyFailed = false;
+        transport.sendrecv( request, response, RESPONSE_TIMEOUT );
+        if (response.verifyFailed)
+            throw new IOException( "Signature verification failed: " + response );
+        if (response.isError() &&
+                    response.status != STATUS_END_OF_FILE &&
+                    response.status != STATUS_NO_MORE_FILES)
+            throw new SmbException( response.status, false );
+    }
+
+    /* Called by the transport when the connection is lost. This does not
+     * take the session lock which a thread in setup() holds while it waits
+     * for the transport.
+     */
+    void reset() {
+        sessionId = 0;
+        digest = null;
+        synchronized (trees) {
+            ListIterator iter = trees.listIterator();
+            while (iter.hasNext())
+                ((Smb2Tree)iter.next()).treeId = 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2SessionSetup extends Smb2Message {
+
+    int securityMode;
+    byte[] token;
+
+    Smb2SessionSetup( int securityMode, byte[] token ) {
+        super( SMB2_SESSION_SETUP );
+        this.securityMode = securityMode;
+        this.token = token;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        Encdec.enc_uint16le( (short)25, dst, dstIndex );
+        dst[dstIndex + 2] = (byte)0x00; /* Flags */
+        dst[dstIndex + 3] = (byte)securityMode;
+        Encdec.enc_uint32le( 0, dst, dstIndex + 4 ); /* Capabilities */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 8 ); /* Channel */
+        Encdec.enc_uint16le( (short)bufferOffset( dstIndex + 24 ), dst, dstIndex + 12 );
+        Encdec.enc_uint16le( (short)token.length, dst, dstIndex + 14 );
+        Encdec.enc_uint64le( 0L, dst, dstIndex + 16 ); /* PreviousSessionId */
+        dstIndex += 24;
+        System.arraycopy( token, 0, dst, dstIndex, token.length );
+        dstIndex += token.length;
+
+        return dstIndex - start;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2SessionSetup[" + super.toString() +
+            ",securityMode=" + securityMode +
+            ",token.length=" + token.length + "]";
+    }
+}
@@ -0,0 +1,50 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2SessionSetupResponse extends Smb2Message {
+
+    int sessionFlags;
+    byte[] token;
+
+    Smb2SessionSetupResponse() {
+        super( SMB2_SESSION_SETUP );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        sessionFlags = Encdec.dec_uint16le( buffer, bufferIndex + 2 ) & 0xFFFF;
+        int off = Encdec.dec_uint16le( buffer, bufferIndex + 4 ) & 0xFFFF;
+        int tlen = Encdec.dec_uint16le( buffer, bufferIndex + 6 ) & 0xFFFF;
+        token = new byte[off + tlen <= HEADER_LENGTH + len ? tlen : 0];
+        System.arraycopy( buffer, headerStart + off, token, 0, token.length );
+        return 8 + token.length;
+    }
+    public String toString() {
+        return "Smb2SessionSetupResponse[" + super.toString() +
+            ",sessionFlags=0x" + Hexdump.toHexString( sessionFlags, 4 ) +
+            ",token.length=" + (token == null ? 0 : token.length) + "]";
+    }
+}
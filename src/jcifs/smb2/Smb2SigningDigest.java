@@ -0,0 +1,73 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import jcifs.util.Encdec;
+
+/* SMB 2.002 and 2.1 sign each message with the first 16 bytes of an
+ * HMAC-SHA256 over the whole message, keyed with the session key, with the
+ * signature field zeroed.
+ */
+
+class Smb2SigningDigest implements Smb2Constants {
+
+    private Mac mac;
+
+    Smb2SigningDigest( byte[] sessionKey ) throws GeneralSecurityException {
+        byte[] key = new byte[16];
+        System.arraycopy( sessionKey, 0, key, 0, Math.min( sessionKey.length, 16 ));
+        mac = Mac.getInstance( "HmacSHA256" );
+        mac.init( new SecretKeySpec( key, "HmacSHA256" ));
+    }
+
+    /* Sign the message encoded at off. Data to be sent after it from
+     * another array is included in the signature.
+     */
+    synchronized void sign( byte[] buf, int off, int len, byte[] data, int doff, int dlen ) {
+        int flags = Encdec.dec_uint32le( buf, off + 16 ) | FLAGS_SIGNED;
+        Encdec.enc_uint32le( flags, buf, off + 16 );
+        for (int i = 48; i < HEADER_LENGTH; i++)
+            buf[off + i] = (byte)0x00;
+        mac.update( buf, off, len );
+        if (dlen > 0)
+            mac.update( data, doff, dlen );
+        byte[] sig = mac.doFinal();
+        System.arraycopy( sig, 0, buf, off + 48, 16 );
+    }
+    synchronized boolean verify( byte[] buf, int off, int len, byte[] data, int doff, int dlen ) {
+        byte[] sig = new byte[16];
+        System.arraycopy( buf, off + 48, sig, 0, 16 );
+        for (int i = 48; i < HEADER_LENGTH; i++)
+            buf[off + i] = (byte)0x00;
+        mac.update( buf, off, len );
+        if (dlen > 0)
+            mac.update( data, doff, dlen );
+        byte[] expected = mac.doFinal();
+        System.arraycopy( sig, 0, buf, off + 48, 16 );
+        for (int i = 0; i < 16; i++) {
+            if (sig[i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+}
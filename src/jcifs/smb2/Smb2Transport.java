@@ -0,0 +1,452 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import jcifs.UniAddress;
+import jcifs.smb.NtlmPasswordAuthentication;
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+import jcifs.util.LogStream;
+import jcifs.util.transport.*;
+
+/* An SMB2 connection to one server. Like SmbTransport it multiplexes
+ * requests over a single socket with a thread reading the responses but
+ * rather than a fixed MaxMpxCount the server grants credits. Each request
+ * spends its credit charge (one credit per 64K of a large READ or WRITE
+ * with SMB 2.1) and every response, including the interim response to a
+ * request that will complete later, grants some back. A request waits in
+ * acquireWindow until enough credits are available but a READ or WRITE is
+ * instead made smaller to fit the credits held.
+ *
+ * The first message is an SMB1 NEGOTIATE that also offers the SMB2
+ * dialects. A server that only speaks SMB1 answers it as such in which
+ * case the transport is marked smb1Only and callers use jcifs.smb instead.
+ */
+
+class Smb2Transport extends Transport implements Smb2Constants {
+
+    static final int BUF_SIZE = 0x10000 + 256;
+    static final byte[] CLIENT_GUID = new byte[16];
+    static LogStream log = LogStream.getInstance();
+    static HashMap transports = new HashMap();
+
+    static {
+        new Random().nextBytes( CLIENT_GUID );
+    }
+
+    static Smb2Transport getTransport( UniAddress address, int port ) {
+        String key = address.getHostAddress() + ":" + port;
+        synchronized (transports) {
+            Smb2Transport trans = (Smb2Transport)transports.get( key );
+            if (trans == null) {
+                trans = new Smb2Transport( address, port );
+                transports.put( key, trans );
+            }
+            return trans;
+        }
+    }
+
+    UniAddress address;
+    int port;
+    Socket socket;
+    InputStream in;
+    OutputStream out;
+    byte[] sbuf = new byte[4 + HEADER_LENGTH];  /* the header of the next message */
+    byte[] snd_buf = new byte[BUF_SIZE];
+    byte[] rcv_buf = new byte[BUF_SIZE];
+    Smb2BlankResponse key = new Smb2BlankResponse();
+    LinkedList sessions = new LinkedList();
+
+    boolean smb1Only = false;
+    Smb2NegotiateResponse server;
+    boolean signingRequired, largeMtu;
+    int maxReadSize, maxWriteSize;
+    long nextMessageId;
+
+    private Object creditLock = new Object();
+    private int credits;
+
+    Smb2Transport( UniAddress address, int port ) {
+        this.address = address;
+        this.port = port;
+    }
+
+    /* Connect if necessary and return false if the server only
+     * speaks SMB1.
+     */
+    boolean connect0() throws IOException {
+        if (smb1Only)
+            return false;
+        try {
+            connect( CONN_TIMEOUT );
+        } catch( TransportException te ) {
+            if (smb1Only)
+                return false;
+            throw te;
+        }
+        return true;
+    }
+
+    synchronized Smb2Session getSession( NtlmPasswordAuthentication auth ) {
+        ListIterator iter = sessions.listIterator();
+        while (iter.hasNext()) {
+            Smb2Session ssn = (Smb2Session)iter.next();
+            if (ssn.auth.equals( auth ))
+                return ssn;
+        }
+        Smb2Session ssn = new Smb2Session( this, auth );
+        sessions.add( ssn );
+        return ssn;
+    }
+
+    /* The credit charge of a READ or WRITE of len bytes. SMB 2.002 only
+     * has single credit requests and the field must be zero.
+     */
+    int creditCharge( int len ) {
+        return largeMtu ? (len - 1) / 0x10000 + 1 : 0;
+    }
+    void grantCredits( int n ) {
+        if (n > 0) {
+            synchronized (creditLock) {
+                credits += n;
+                creditLock.notifyAll();
+            }
+        }
+    }
+    protected void acquireWindow( Request request, long timeout ) throws IOException {
+        Smb2Message req = (Smb2Message)request;
+        synchronized (creditLock) {
+            long expiration = System.currentTimeMillis() + timeout;
+            try {
+                while (credits < Math.max( 1, req.creditCharge )) {
+                    /* A READ or WRITE is cut down to what the credits held
+                     * pay for rather than wait on a server that may never
+                     * grant the rest.
+                     */
+                    if (credits > 0 && req.shrink( credits ))
+                        break;
+                    if (timeout <= 0) {
+                        throw new TransportException( this +
+                                " timedout waiting for credits to send " + request );
+                    }
+                    creditLock.wait( timeout );
+                    timeout = expiration - System.currentTimeMillis();
+                }
+            } catch( InterruptedException ie ) {
+                throw new TransportException( ie );
+            }
+            credits -= Math.max( 1, req.creditCharge );
+        }
+        super.acquireWindow( request, timeout );
+    }
+
+    protected void makeKey( Request request ) throws IOException {
+        Smb2Message req = (Smb2Message)request;
+        int charge = Math.max( 1, req.creditCharge );
+        req.messageId = nextMessageId;
+        nextMessageId += charge;
+        /* Ask for enough to get back up to CREDITS; the server
+         * decides how many it actually grants.
+         */
+        int wanted;
+        synchronized (creditLock) {
+            wanted = CREDITS - credits;
+        }
+        req.credits = Math.max( charge, Math.min( wanted, 0x7FFF ));
+    }
+    protected int keyOf( Request request ) {
+        return (int)((Smb2Message)request).messageId;
+    }
+
+    /* Read the 4 byte session message header and as much of the message
+     * as fits in b. Returns the message size.
+     */
+    int readFrame( byte[] b ) throws IOException {
+        do {
+            if (readn( in, b, 0, 4 ) < 4)
+                throw new IOException( "transport closed in negotiate" );
+        } while (b[0] == (byte)0x85);  /* Dodge NetBIOS keep-alive */
+        int size = Encdec.dec_uint32be( b, 0 ) & 0xFFFFFF;
+        if (size < 36 || size > b.length)
+            throw new IOException( "Invalid payload size: " + size );
+        if (readn( in, b, 0, size ) < size)
+            throw new IOException( "transport closed in negotiate" );
+        return size;
+    }
+    void writeFrame( byte[] b, int n ) throws IOException {
+        Encdec.enc_uint32be( n & 0xFFFFFF, b, 0 );
+        out.write( b, 0, 4 + n );
+    }
+    int encodeSmb1Negotiate( byte[] dst, int dstIndex ) {
+        String[] dialects = { "NT LM 0.12", "SMB 2.002", "SMB 2.???" };
+        int start = dstIndex;
+
+        for (int i = 0; i < 32; i++)
+            dst[dstIndex + i] = (byte)0x00;
+        dst[dstIndex] = (byte)0xFF;
+        dst[dstIndex + 1] = (byte)'S';
+        dst[dstIndex + 2] = (byte)'M';
+        dst[dstIndex + 3] = (byte)'B';
+        dst[dstIndex + 4] = (byte)0x72;                            /* SMB_COM_NEGOTIATE */
+        dst[dstIndex + 9] = (byte)0x18;                            /* flags */
+        Encdec.enc_uint16le( (short)0xC801, dst, dstIndex + 10 );  /* flags2 */
+        dstIndex += 32;
+        dst[dstIndex++] = (byte)0x00;                              /* WordCount */
+        int bc = dstIndex;
+        dstIndex += 2;
+        for (int i = 0; i < dialects.length; i++) {
+            dst[dstIndex++] = (byte)0x02;
+            for (int j = 0; j < dialects[i].length(); j++)
+                dst[dstIndex++] = (byte)dialects[i].charAt( j );
+            dst[dstIndex++] = (byte)0x00;
+        }
+        Encdec.enc_uint16le( (short)(dstIndex - bc - 2), dst, bc );
+
+        return dstIndex - start;
+    }
+    void negotiate() throws IOException {
+        int securityMode = NEGOTIATE_SIGNING_ENABLED | (SIGNPREF ? NEGOTIATE_SIGNING_REQUIRED : 0);
+        Smb2NegotiateResponse resp = new Smb2NegotiateResponse();
+
+        /* The transport thread isn't running yet so we can
+         * read from the socket here.
+         */
+        writeFrame( snd_buf, encodeSmb1Negotiate( snd_buf, 4 ));
+        int size = readFrame( rcv_buf );
+        if (rcv_buf[0] == (byte)0xFF) {
+            smb1Only = true;
+            throw new IOException( "SMB2 not supported by " + address );
+        }
+        if (rcv_buf[0] != (byte)0xFE || size < HEADER_LENGTH + 64)
+            throw new IOException( "Invalid negotiate response from " + address );
+        resp.decode( rcv_buf, 0, size );
+        nextMessageId = 1;
+
+        if (resp.status == STATUS_SUCCESS && resp.dialect == SMB2_WILDCARD) {
+            /* The server supports SMB 2.1 or later; negotiate properly.
+             */
+            Smb2Negotiate req = new Smb2Negotiate( securityMode, CLIENT_GUID );
+            req.messageId = nextMessageId++;
+            req.credits = CREDITS;
+            writeFrame( snd_buf, req.encode( snd_buf, 4 ));
+            if (log.level >= 4)
+                log.println( req );
+            size = readFrame( rcv_buf );
+            if (rcv_buf[0] != (byte)0xFE || size < HEADER_LENGTH + 64)
+                throw new IOException( "Invalid negotiate response from " + address );
+            resp.decode( rcv_buf, 0, size );
+        }
+        if (log.level >= 4)
+            log.println( resp );
+        if (resp.status != STATUS_SUCCESS)
+            throw new jcifs.smb.SmbException( resp.status, false );
+        if (resp.dialect != SMB2_002 && resp.dialect != SMB2_1)
+            throw new IOException( "Unsupported SMB2 dialect: 0x" + Hexdump.toHexString( resp.dialect, 4 ));
+
+        server = resp;
+        signingRequired = (resp.securityMode & NEGOTIATE_SIGNING_REQUIRED) != 0;
+        largeMtu = resp.dialect == SMB2_1 && (resp.capabilities & GLOBAL_CAP_LARGE_MTU) != 0;
+        int limit = largeMtu ? IO_SIZE : 0x10000;
+        maxReadSize = Math.min( limit, resp.maxReadSize );
+        maxWriteSize = Math.min( limit, resp.maxWriteSize );
+        synchronized (creditLock) {
+            credits = Math.max( 1, resp.credits );
+        }
+    }
+
+    protected void doConnect() throws Exception {
+        socket = new Socket();
+        socket.connect( new InetSocketAddress( address.getHostAddress(), port ), CONN_TIMEOUT );
+        socket.setSoTimeout( SO_TIMEOUT );
+        /* Every message is written whole (or as header and data in two
+         * writes) so there is nothing for Nagle to coalesce.
+         */
+        socket.setTcpNoDelay( true );
+        out = socket.getOutputStream();
+        in = new RingInputStream( socket.getInputStream(), BUF_SIZE );
+        try {
+            negotiate();
+        } catch( IOException ioe ) {
+            socket.close();
+            throw ioe;
+        }
+    }
+    protected void doDisconnect( boolean hard ) throws IOException {
+        try {
+            socket.shutdownOutput();
+            out.close();
+            in.close();
+            socket.close();
+        } finally {
+            socket = null;
+            synchronized (this) {
+                ListIterator iter = sessions.listIterator();
+                while (iter.hasNext())
+                    ((Smb2Session)iter.next()).reset();
+            }
+            synchronized (creditLock) {
+                credits = 0;
+            }
+        }
+    }
+
+    protected Request peekKey() throws IOException {
+        do {
+            if (readn( in, sbuf, 0, 4 ) < 4)
+                return null;
+        } while (sbuf[0] == (byte)0x85);  /* Dodge NetBIOS keep-alive */
+        if (readn( in, sbuf, 4, HEADER_LENGTH ) < HEADER_LENGTH)
+            return null;
+        if (log.level >= 4) {
+            log.println( "New data read: " + this );
+            Hexdump.hexdump( log, sbuf, 4, HEADER_LENGTH );
+        }
+        if (sbuf[0] != (byte)0x00 ||
+                    sbuf[4] != (byte)0xFE ||
+                    sbuf[5] != (byte)'S' ||
+                    sbuf[6] != (byte)'M' ||
+                    sbuf[7] != (byte)'B') {
+            throw new IOException( "Invalid SMB2 message header" );
+        }
+
+        key.decodeHeader( sbuf, 4 );
+        grantCredits( key.credits );
+
+        /* Unless key returned is null or invalid Transport.loop() always
+         * calls doRecv() after and no one else but the transport thread
+         * should call doRecv(). Therefore it is ok to expect that the data
+         * in sbuf will be preserved for copying into rcv_buf in doRecv().
+         */
+
+        return key;
+    }
+
+    protected void doSend( Request request ) throws IOException {
+        Smb2Message req = (Smb2Message)request;
+        byte[] buf = snd_buf;
+
+        synchronized (buf) {
+            int n = req.encode( buf, 4 );
+            int gathered = req.gatherLen;
+            Encdec.enc_uint32be( n & 0xFFFFFF, buf, 0 ); /* 4 byte session message header */
+            Smb2Session ssn = req.session;
+            if (ssn != null && ssn.digest != null && req.command != SMB2_SESSION_SETUP)
+                ssn.digest.sign( buf, 4, n - gathered, req.gatherBuf, req.gatherOff, gathered );
+            if (log.level >= 4) {
+                log.println( req );
+                if (log.level >= 6)
+                    Hexdump.hexdump( log, buf, 4, n - gathered );
+            }
+            out.write( buf, 0, 4 + n - gathered );
+            if (gathered > 0) {
+                out.write( req.gatherBuf, req.gatherOff, gathered );
+                req.gatherBuf = null; /* do not hold on to the caller's array */
+                req.gatherLen = 0;
+            }
+        }
+    }
+
+    protected void doRecv( Response response ) throws IOException {
+        Smb2Message resp = (Smb2Message)response;
+        byte[] buf = rcv_buf;
+
+        synchronized (buf) {
+            int size = Encdec.dec_uint32be( sbuf, 0 ) & 0xFFFFFF;
+            if (size < HEADER_LENGTH + 8)
+                throw new IOException( "Invalid payload size: " + size );
+            System.arraycopy( sbuf, 4, buf, 0, HEADER_LENGTH );
+            resp.decodeHeader( buf, 0 );
+
+            byte[] data = null;
+            int doff = 0, dlen = 0;
+
+            if (resp instanceof Smb2ReadResponse && resp.isError() == false) {
+                Smb2ReadResponse r = (Smb2ReadResponse)resp;
+                int off = HEADER_LENGTH;
+                readn( in, buf, off, 16 ); off += 16;
+                r.readBodyWireFormat( buf, HEADER_LENGTH, size - HEADER_LENGTH );
+                int pad = r.dataOffset - off;
+                if (pad > 0 && pad < 8) {
+                    readn( in, buf, off, pad );
+                    off += pad;
+                }
+                if (r.dataLength < 0 || r.dataLength > size - off ||
+                            r.off + r.dataLength > r.b.length)
+                    throw new IOException( "Invalid data length: " + r.dataLength );
+                if (readn( in, r.b, r.off, r.dataLength ) < r.dataLength)
+                    throw new IOException( "end of stream" );
+                skip( size - off - r.dataLength );
+                r.length = size;
+                data = r.b;
+                doff = r.off;
+                dlen = r.dataLength;
+                size = off;
+            } else {
+                if (size > buf.length)
+                    throw new IOException( "Invalid payload size: " + size );
+                readn( in, buf, HEADER_LENGTH, size - HEADER_LENGTH );
+                resp.decode( buf, 0, size );
+            }
+
+            Smb2Session ssn = resp.session;
+            if (ssn != null && ssn.digest != null && resp.isPending() == false) {
+                if ((resp.flags & FLAGS_SIGNED) != 0) {
+                    resp.verifyFailed = ssn.digest.verify( buf, 0, size, data, doff, dlen ) == false;
+                } else if (ssn.signingRequired && resp.command != SMB2_SESSION_SETUP) {
+                    resp.verifyFailed = true;
+                }
+            }
+
+            if (log.level >= 4) {
+                log.println( response );
+                if (log.level >= 6)
+                    Hexdump.hexdump( log, buf, 0, size );
+            }
+        }
+    }
+    void skip( int n ) throws IOException {
+        while (n > 0) {
+            int k = (int)in.skip( n );
+            if (k <= 0) {
+                if (in.read() < 0)
+                    throw new IOException( "end of stream" );
+                k = 1;
+            }
+            n -= k;
+        }
+    }
+    protected void doSkip() throws IOException {
+        int size = Encdec.dec_uint32be( sbuf, 0 ) & 0xFFFFFF;
+        skip( size - HEADER_LENGTH );
+    }
+    protected boolean isComplete( Response response ) {
+        /* STATUS_PENDING only says the real response will follow
+         */
+        return ((Smb2Message)response).isPending() == false;
+    }
+
+    public String toString() {
+        return super.toString() + "[" + address + ":" + port + "]";
+    }
+}
@@ -0,0 +1,123 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+/* A share connected on an Smb2Session along with the handful of file
+ * operations Smb2File needs.
+ */
+
+class Smb2Tree implements Smb2Constants {
+
+    Smb2Session session;
+    String share;
+    int treeId, shareType;
+
+    Smb2Tree( Smb2Session session, String share ) {
+        this.session = session;
+        this.share = share;
+    }
+
+    synchronized void treeConnect() throws IOException {
+        session.setup();
+        if (treeId != 0)
+            return;
+        String path = "\\\\" + session.transport.address.getHostName() + "\\" + share;
+        Smb2TreeConnectResponse resp = new Smb2TreeConnectResponse();
+        session.send( new Smb2TreeConnect( path ), resp );
+        shareType = resp.shareType;
+        treeId = resp.treeId;
+    }
+    void send( Smb2Message request, Smb2Message response ) throws IOException {
+        treeConnect();
+        request.treeId = treeId;
+        session.send( request, response );
+    }
+
+    Smb2CreateResponse open( String path,
+                int desiredAccess,
+                int createDisposition,
+                int createOptions ) throws IOException {
+        Smb2CreateResponse resp = new Smb2CreateResponse();
+        send( new Smb2Create( path,
+                    desiredAccess | SYNCHRONIZE,
+                    FILE_SHARE_READ | FILE_SHARE_WRITE | FILE_SHARE_DELETE,
+                    createDisposition,
+                    createOptions ), resp );
+        return resp;
+    }
+    void close( byte[] fileId ) throws IOException {
+        send( new Smb2Close( fileId ), new Smb2CloseResponse() );
+    }
+
+    /* Returns the number of bytes read or -1 at the end of the file.
+     */
+    int read( byte[] fileId, long offset, byte[] b, int off, int len ) throws IOException {
+        Smb2Read req = new Smb2Read( fileId, offset, len );
+        req.creditCharge = session.transport.creditCharge( len );
+        Smb2ReadResponse resp = new Smb2ReadResponse( b, off );
+        send( req, resp );
+        if (resp.status == STATUS_END_OF_FILE)
+            return -1;
+        return resp.dataLength;
+    }
+    int write( byte[] fileId, long offset, byte[] b, int off, int len ) throws IOException {
+        Smb2Write req = new Smb2Write( fileId, offset, b, off, len );
+        req.creditCharge = session.transport.creditCharge( len );
+        Smb2WriteResponse resp = new Smb2WriteResponse();
+        send( req, resp );
+        return resp.count;
+    }
+
+    /* List the directory at path, skipping "." and "..". Returns
+     * Smb2QueryDirectoryResponse.Entry objects.
+     */
+    ArrayList list( String path, String pattern ) throws IOException {
+        ArrayList list = new ArrayList();
+        byte[] fileId = open( path, FILE_READ_DATA | FILE_READ_ATTRIBUTES, FILE_OPEN, FILE_DIRECTORY_FILE ).fileId;
+        try {
+            int flags = RESTART_SCANS;
+            for ( ;; ) {
+                Smb2QueryDirectoryResponse resp = new Smb2QueryDirectoryResponse();
+                send( new Smb2QueryDirectory( fileId, pattern, flags, 0x10000 ), resp );
+                if (resp.status == STATUS_NO_MORE_FILES)
+                    break;
+                for (int i = 0; i < resp.entries.size(); i++) {
+                    Smb2QueryDirectoryResponse.Entry e =
+                            (Smb2QueryDirectoryResponse.Entry)resp.entries.get( i );
+                    if (e.name.equals( "." ) || e.name.equals( ".." ))
+                        continue;
+                    list.add( e );
+                }
+                flags = 0;
+            }
+        } finally {
+            close( fileId );
+        }
+        return list;
+    }
+
+    public String toString() {
+        return "Smb2Tree[share=" + share + ",treeId=" + treeId + "]";
+    }
+}
@@ -0,0 +1,51 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2TreeConnect extends Smb2Message {
+
+    String path;
+
+    Smb2TreeConnect( String path ) {
+        super( SMB2_TREE_CONNECT );
+        this.path = path;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+
+        Encdec.enc_uint16le( (short)9, dst, dstIndex );
+        Encdec.enc_uint16le( (short)0, dst, dstIndex + 2 );
+        Encdec.enc_uint16le( (short)bufferOffset( dstIndex + 8 ), dst, dstIndex + 4 );
+        int n = writeString( path, dst, dstIndex + 8 );
+        Encdec.enc_uint16le( (short)n, dst, dstIndex + 6 );
+        dstIndex += 8 + n;
+
+        return dstIndex - start;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2TreeConnect[" + super.toString() + ",path=" + path + "]";
+    }
+}
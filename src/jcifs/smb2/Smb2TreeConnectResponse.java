@@ -0,0 +1,48 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+import jcifs.util.Hexdump;
+
+class Smb2TreeConnectResponse extends Smb2Message {
+
+    int shareType, shareFlags, capabilities, maximalAccess;
+
+    Smb2TreeConnectResponse() {
+        super( SMB2_TREE_CONNECT );
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        return 0;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        shareType = buffer[bufferIndex + 2] & 0xFF;
+        shareFlags = Encdec.dec_uint32le( buffer, bufferIndex + 4 );
+        capabilities = Encdec.dec_uint32le( buffer, bufferIndex + 8 );
+        maximalAccess = Encdec.dec_uint32le( buffer, bufferIndex + 12 );
+        return 16;
+    }
+    public String toString() {
+        return "Smb2TreeConnectResponse[" + super.toString() +
+            ",shareType=" + shareType +
+            ",shareFlags=0x" + Hexdump.toHexString( shareFlags, 8 ) + "]";
+    }
+}
@@ -0,0 +1,71 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package jcifs.smb2;
+
+import jcifs.util.Encdec;
+
+class Smb2Write extends Smb2Message {
+
+    byte[] fileId;
+    long offset;
+    byte[] b;
+    int off, writeLength;
+
+    Smb2Write( byte[] fileId, long offset, byte[] b, int off, int writeLength ) {
+        super( SMB2_WRITE );
+        this.fileId = fileId;
+        this.offset = offset;
+        this.b = b;
+        this.off = off;
+        this.writeLength = writeLength;
+    }
+
+    boolean shrink( int credits ) {
+        writeLength = credits * 0x10000;
+        creditCharge = credits;
+        return true;
+    }
+
+    int writeBodyWireFormat( byte[] dst, int dstIndex ) {
+        Encdec.enc_uint16le( (short)49, dst, dstIndex );
+        Encdec.enc_uint16le( (short)bufferOffset( dstIndex + 48 ), dst, dstIndex + 2 );
+        Encdec.enc_uint32le( writeLength, dst, dstIndex + 4 );
+        Encdec.enc_uint64le( offset, dst, dstIndex + 8 );
+        System.arraycopy( fileId, 0, dst, dstIndex + 16, 16 );
+        Encdec.enc_uint32le( 0, dst, dstIndex + 32 ); /* Channel */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 36 ); /* RemainingBytes */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 40 ); /* WriteChannelInfo */
+        Encdec.enc_uint32le( 0, dst, dstIndex + 44 ); /* Flags */
+        /* The data is written from the caller's array by the transport.
+         */
+        gatherBuf = b;
+        gatherOff = off;
+        gatherLen = writeLength;
+        return 48 + writeLength;
+    }
+    int readBodyWireFormat( byte[] buffer, int bufferIndex, int len ) {
+        return 0;
+    }
+    public String toString() {
+        return "Smb2Write[" + super.toString() +
+            ",offset=" + offset +
+            ",writeLength=" + writeLength + "]";
+    }
+}
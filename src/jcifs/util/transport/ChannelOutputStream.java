@@ -0,0 +1,72 @@
+package jcifs.util.transport;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+/**
+ * A blocking <tt>OutputStream</tt> over a non-blocking <tt>SocketChannel</tt>
+ * that has been registered with a <tt>SelectorPool</tt>. Writes that
+ * cannot complete immediately wait on a private selector for the channel
+ * to become writable again.
+ */
+
+public class ChannelOutputStream extends OutputStream {
+
+    SocketChannel channel;
+    long timeout;
+    Selector selector;
+    byte[] one = new byte[1];
+
+    public ChannelOutputStream( SocketChannel channel, long timeout ) {
+        this.channel = channel;
+        this.timeout = timeout;
+    }
+
+    public synchronized void write( int b ) throws IOException {
+        one[0] = (byte)b;
+        write( one, 0, 1 );
+    }
+    public synchronized void write( byte[] b, int off, int len ) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap( b, off, len );
+
+        while (bb.hasRemaining()) {
+            if (channel.write( bb ) > 0)
+                continue;
+            await();
+        }
+    }
+/**
+ * Write two arrays with gathering writes so that a message assembled
+ * from a small header and a separate payload need not be copied into one
+ * buffer first.
+ */
+
+    public synchronized void write( byte[] b1, int off1, int len1,
+                    byte[] b2, int off2, int len2 ) throws IOException {
+        ByteBuffer[] bbs = new ByteBuffer[] {
+            ByteBuffer.wrap( b1, off1, len1 ), ByteBuffer.wrap( b2, off2, len2 )
+        };
+
+        while (bbs[1].hasRemaining()) {
+            if (channel.write( bbs ) > 0)
+                continue;
+            await();
+        }
+    }
+    private void await() throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+            channel.register( selector, SelectionKey.OP_WRITE );
+        }
+        if (selector.select( timeout ) == 0)
+            throw new IOException( "Write timed out" );
+        selector.selectedKeys().clear();
+    }
+    public synchronized void close() throws IOException {
+        if (selector != null) {
+            selector.close();
+            selector = null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package jcifs.util.transport;
+
+import java.io.IOException;
+
+/**
+ * A handle on a request sent with <tt>Transport.sendAsync</tt>. The
+ * transport thread completes the handle when the whole response has been
+ * read so the caller need not park a thread per outstanding request. The
+ * result may be collected with <tt>get</tt> or delivered to a
+ * <tt>ResponseListener</tt>.
+ */
+
+public class ResponseFuture {
+
+    Transport transport;
+    int key;
+    long expiration;
+    /* links for the TimeoutWheel slot this future is in */
+    ResponseFuture wheelNext, wheelPrev;
+    long wheelTick;
+    boolean wheeled;
+    boolean receiving; /* the response is being read, see startReceiving */
+    IOException abandoned; /* cancelled while receiving, see setAbandoned */
+
+    protected Request request;
+    protected Response response;
+
+    private boolean done;
+    private IOException ex;
+    private ResponseListener listener;
+
+    public ResponseFuture( Request request, Response response ) {
+        this.request = request;
+        this.response = response;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+    public Response getResponse() {
+        return response;
+    }
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+/**
+ * Wait for the response until the timeout given when the request was
+ * sent expires. If it does not arrive in time the request is abandoned
+ * and a <tt>TransportException</tt> is thrown.
+ */
+
+    public Response get() throws IOException {
+        synchronized (this) {
+            try {
+                /* A registered future is completed by the transport or,
+                 * if it times out, by the TimeoutWheel so there is no
+                 * need to wake up and check the time here.
+                 */
+                while (!done && expiration > 0) {
+                    wait();
+                }
+            } catch( InterruptedException ie ) {
+                throw new TransportException( ie );
+            }
+        }
+        if (transport != null) {
+            transport.expire( this );
+        }
+        synchronized (this) {
+            if (ex != null)
+                throw ex;
+        }
+        return response;
+    }
+
+/**
+ * Abandon the request. Any response that arrives later is discarded and
+ * <tt>get</tt> will throw a <tt>TransportException</tt>.
+ */
+
+    public void cancel() {
+        if (transport != null) {
+            transport.abandon( this, new TransportException( "Request cancelled: " + request ));
+        } else if (setDone( new TransportException( "Request cancelled: " + request ))) {
+            fire();
+        }
+    }
+
+/**
+ * Set the listener to be called when this future completes. If it has
+ * already completed the listener is called immediately by the calling
+ * thread.
+ */
+
+    public void setListener( ResponseListener listener ) {
+        synchronized (this) {
+            this.listener = listener;
+            if (!done)
+                return;
+        }
+        listener.responseReceived( this );
+    }
+
+    /* Called by the transport thread before it reads the response into
+     * this future. Returns false if the future is already done in which
+     * case the message must be skipped. Until stopReceiving is called the
+     * future cannot expire or be abandoned.
+     */
+    synchronized boolean startReceiving() {
+        if (done)
+            return false;
+        receiving = true;
+        return true;
+    }
+    /* Returns true if the future was abandoned while the response was
+     * being read and is now done in which case the caller must complete it.
+     */
+    synchronized boolean stopReceiving() {
+        receiving = false;
+        if (done || abandoned == null)
+            return false;
+        done = true;
+        ex = abandoned;
+        return true;
+    }
+    /* Mark this future done with the timeout exception unless the
+     * response is being read right now. Never waits.
+     */
+    synchronized boolean setExpired( IOException ex ) {
+        if (done || receiving)
+            return false;
+        done = true;
+        this.ex = ex;
+        return true;
+    }
+    /* Like setExpired but if the response is being read the future is
+     * only marked so that stopReceiving completes it. The response buffers
+     * must not be given back while the transport is decoding into them.
+     */
+    synchronized boolean setAbandoned( IOException ex ) {
+        if (done)
+            return false;
+        if (receiving) {
+            if (abandoned == null)
+                abandoned = ex;
+            return false;
+        }
+        done = true;
+        this.ex = ex;
+        return true;
+    }
+    /* Mark this future done. Returns false if it was already done in
+     * which case the caller must not complete it again.
+     */
+    protected boolean setDone( IOException ex ) {
+        synchronized (this) {
+            if (done)
+                return false;
+            done = true;
+            this.ex = ex;
+        }
+        return true;
+    }
+    protected void fire() {
+        ResponseListener l;
+
+        synchronized (this) {
+            notifyAll();
+            l = listener;
+        }
+        if (l != null) {
+            try {
+                l.responseReceived( this );
+            } catch( RuntimeException re ) {
+                if (Transport.log.level >= 2)
+                    re.printStackTrace( Transport.log );
+            }
+        }
+    }
+
+    public String toString() {
+        return "ResponseFuture[" + request + ",done=" + isDone() + "]";
+    }
+}
@@ -0,0 +1,13 @@
+package jcifs.util.transport;
+
+/**
+ * Receives notification that a <tt>ResponseFuture</tt> has completed,
+ * successfully or not. Listeners are normally called by the transport
+ * thread that read the response so they must return promptly and must
+ * never wait on another response from the same transport.
+ */
+
+public interface ResponseListener {
+
+    public void responseReceived( ResponseFuture future );
+}
@@ -0,0 +1,115 @@
+package jcifs.util.transport;
+
+/**
+ * A small open addressing hash table of outstanding requests keyed
+ * by the primitive <tt>int</tt> key of their request (e.g. the SMB mid).
+ * Lookups are performed by the transport thread for every message
+ * received so no <tt>Integer</tt> objects are created and no collision
+ * chains are walked.
+ */
+
+public class ResponseMap {
+
+    private int[] keys;
+    private ResponseFuture[] values;
+    private int size, mask;
+
+    public ResponseMap( int capacity ) {
+        int n = 8;
+        while (n < capacity * 2)
+            n <<= 1;
+        keys = new int[n];
+        values = new ResponseFuture[n];
+        mask = n - 1;
+    }
+
+    private int slot( int key ) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+    private int indexOf( int key ) {
+        int i = slot( key );
+        while (values[i] != null) {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+    private void grow() {
+        int[] okeys = keys;
+        ResponseFuture[] ovalues = values;
+
+        keys = new int[okeys.length * 2];
+        values = new ResponseFuture[ovalues.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < okeys.length; i++) {
+            if (ovalues[i] != null)
+                put( okeys[i], ovalues[i] );
+        }
+    }
+
+    public synchronized ResponseFuture get( int key ) {
+        int i = indexOf( key );
+        return i < 0 ? null : values[i];
+    }
+    public synchronized void put( int key, ResponseFuture future ) {
+        if (future == null)
+            throw new NullPointerException( "future" );
+        if ((size + 1) * 2 > keys.length)
+            grow();
+
+        int i = slot( key );
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                values[i] = future;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = future;
+        size++;
+    }
+    public synchronized ResponseFuture remove( int key ) {
+        int i = indexOf( key );
+        if (i < 0)
+            return null;
+
+        ResponseFuture future = values[i];
+        values[i] = null;
+        size--;
+
+        /* Shift back any entries in the same probe run so that
+         * lookups never stop early at the slot just emptied.
+         */
+        int j = i;
+        for ( ;; ) {
+            j = (j + 1) & mask;
+            if (values[j] == null)
+                break;
+            int k = slot( keys[j] );
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j))
+                continue;
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+        }
+
+        return future;
+    }
+    public synchronized int size() {
+        return size;
+    }
+    public synchronized ResponseFuture[] toArray() {
+        ResponseFuture[] a = new ResponseFuture[size];
+        for (int i = 0, j = 0; i < values.length; i++) {
+            if (values[i] != null)
+                a[j++] = values[i];
+        }
+        return a;
+    }
+}
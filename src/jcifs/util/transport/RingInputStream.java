@@ -0,0 +1,113 @@
+package jcifs.util.transport;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Buffers a socket <tt>InputStream</tt> in a ring so that the small header
+ * reads a transport does for every message are served from memory and the
+ * socket is read in large chunks. Large reads made while nothing is
+ * buffered (e.g. the payload of a read response) go straight from the
+ * socket into the caller's array without being copied through the ring.
+ */
+
+public class RingInputStream extends InputStream {
+
+    InputStream in;
+    byte[] buf;
+    int mask, head, count;
+
+    public RingInputStream( InputStream in, int size ) {
+        int n = 1024;
+        while (n < size)
+            n <<= 1;
+        this.in = in;
+        buf = new byte[n];
+        mask = n - 1;
+    }
+
+    /* Read once from the underlying stream into the free space that
+     * follows the buffered data.
+     */
+    private int fill() throws IOException {
+        if (count == buf.length)
+            return 0;
+        if (count == 0)
+            head = 0;
+        int tail = (head + count) & mask;
+        int len = tail < head ? head - tail : buf.length - tail;
+        int n = in.read( buf, tail, len );
+        if (n > 0)
+            count += n;
+        return n;
+    }
+
+    public int read() throws IOException {
+        if (count == 0 && fill() <= 0)
+            return -1;
+        int b = buf[head] & 0xFF;
+        head = (head + 1) & mask;
+        count--;
+        return b;
+    }
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if (len == 0)
+            return 0;
+        if (count == 0) {
+            if (len >= buf.length / 4)
+                return in.read( b, off, len );
+            if (fill() <= 0)
+                return -1;
+        }
+
+        int n = len < count ? len : count;
+        int first = buf.length - head;
+        if (first > n)
+            first = n;
+        System.arraycopy( buf, head, b, off, first );
+        if (n > first)
+            System.arraycopy( buf, 0, b, off + first, n - first );
+        head = (head + n) & mask;
+        count -= n;
+
+        return n;
+    }
+    /* Read at most len bytes into dst, which is expected to be a direct
+     * buffer; the data is put straight from the ring.
+     */
+    public int read( ByteBuffer dst, int len ) throws IOException {
+        if (len == 0)
+            return 0;
+        if (count == 0 && fill() <= 0)
+            return -1;
+
+        int n = len < count ? len : count;
+        int first = buf.length - head;
+        if (first > n)
+            first = n;
+        dst.put( buf, head, first );
+        if (n > first)
+            dst.put( buf, 0, n - first );
+        head = (head + n) & mask;
+        count -= n;
+
+        return n;
+    }
+    public long skip( long n ) throws IOException {
+        if (n <= 0)
+            return 0;
+        if (count == 0)
+            return in.skip( n );
+        int k = n < count ? (int)n : count;
+        head = (head + k) & mask;
+        count -= k;
+        return k;
+    }
+    public int available() throws IOException {
+        return count + in.available();
+    }
+    public void close() throws IOException {
+        count = 0;
+        in.close();
+    }
+}
@@ -0,0 +1,211 @@
+package jcifs.util.transport;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import jcifs.util.LogStream;
+
+/**
+ * A small fixed set of threads that each service many transports with one
+ * <tt>Selector</tt> rather than dedicating a blocked thread to every
+ * socket. Each registered channel has a receive buffer into which
+ * NetBIOS session service frames (a 4 byte header carrying a 17 bit
+ * length) are assembled. Every complete frame other than a keep-alive is
+ * passed to <tt>Transport.frameReceived</tt>.
+ */
+
+public class SelectorPool {
+
+    static LogStream log = LogStream.getInstance();
+
+    static final int SESSION_KEEP_ALIVE = 0x85;
+
+    class Registration {
+        SocketChannel channel;
+        Transport transport;
+        ByteBuffer buf;
+        long soTimeout;
+        long lastRead;
+
+        Registration( SocketChannel channel,
+                    Transport transport,
+                    int maxFrameSize,
+                    long soTimeout ) {
+            this.channel = channel;
+            this.transport = transport;
+            this.buf = ByteBuffer.allocate( maxFrameSize );
+            this.soTimeout = soTimeout;
+            this.lastRead = System.currentTimeMillis();
+        }
+
+        /* Returns false if the channel should be deregistered
+         */
+        boolean read() throws IOException {
+            int n = channel.read( buf );
+            if (n < 0)
+                throw new IOException( "end of stream" );
+            lastRead = System.currentTimeMillis();
+
+            byte[] b = buf.array();
+            int end = buf.position();
+            int start = 0;
+
+            while (end - start >= 4) {
+                int len = ((b[start + 1] & 0x01) << 16) |
+                        ((b[start + 2] & 0xFF) << 8) |
+                        (b[start + 3] & 0xFF);
+                if (4 + len > b.length)
+                    throw new IOException( "Invalid frame size: " + len );
+                if (end - start < 4 + len)
+                    break;
+                if ((b[start] & 0xFF) != SESSION_KEEP_ALIVE) {
+                    transport.frameReceived( b, start, 4 + len );
+                    if (channel.isOpen() == false)
+                        return false;
+                }
+                start += 4 + len;
+            }
+
+            if (start > 0) {
+                System.arraycopy( b, start, b, 0, end - start );
+                buf.position( end - start );
+            }
+
+            return true;
+        }
+        void tick( long now ) {
+            if (soTimeout > 0 && (now - lastRead) > soTimeout) {
+                lastRead = now;
+                failed( transport, new SocketTimeoutException( "Read timed out" ));
+            }
+        }
+    }
+
+    class Worker extends Thread {
+        Selector selector;
+        LinkedList pending = new LinkedList();
+
+        Worker( String name ) throws IOException {
+            super( name );
+            setDaemon( true );
+            selector = Selector.open();
+        }
+
+        void add( Registration r ) {
+            synchronized (pending) {
+                pending.add( r );
+            }
+            selector.wakeup();
+        }
+        void fail( SelectionKey key, Registration r, Exception ex ) {
+            key.cancel();
+            failed( r.transport, ex );
+        }
+        public void run() {
+            long nextTick = 0L;
+
+            for ( ;; ) {
+                try {
+                    synchronized (pending) {
+                        while (pending.size() > 0) {
+                            Registration r = (Registration)pending.removeFirst();
+                            try {
+                                r.channel.register( selector, SelectionKey.OP_READ, r );
+                            } catch( ClosedChannelException cce ) {
+                                failed( r.transport, cce );
+                            }
+                        }
+                    }
+
+                    selector.select( 1000L );
+
+                    Iterator iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = (SelectionKey)iter.next();
+                        iter.remove();
+                        Registration r = (Registration)key.attachment();
+                        try {
+                            if (key.isValid() && r.read() == false)
+                                key.cancel();
+                        } catch( Exception ex ) {
+                            fail( key, r, ex );
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now >= nextTick) {
+                        nextTick = now + 1000L;
+                        iter = selector.keys().iterator();
+                        while (iter.hasNext()) {
+                            SelectionKey key = (SelectionKey)iter.next();
+                            Registration r = (Registration)key.attachment();
+                            if (r.channel.isOpen() == false) {
+                                key.cancel();
+                            } else {
+                                r.tick( now );
+                            }
+                        }
+                    }
+                } catch( Throwable t ) {
+                    /* Never let the selector thread die; every transport
+                     * registered with it would go silent.
+                     */
+                    if (log.level >= 1)
+                        t.printStackTrace( log );
+                }
+            }
+        }
+    }
+
+    Worker[] workers;
+    int next = 0;
+
+    /* Disconnecting takes the transport lock which a caller may hold
+     * while it waits for a response. Do it in another thread so that
+     * the other transports on this selector are not held up meanwhile.
+     */
+    static void failed( final Transport transport, final Exception ex ) {
+        Thread t = new Thread( transport + "-failed" ) {
+            public void run() {
+                transport.readFailed( ex );
+            }
+        };
+        t.setDaemon( true );
+        t.start();
+    }
+
+    public SelectorPool( String name, int threads ) throws IOException {
+        workers = new Worker[threads < 1 ? 1 : threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker( name + i );
+            workers[i].start();
+        }
+    }
+
+/**
+ * Register a connected channel on behalf of a transport. This is called
+ * from <tt>doConnect</tt> once any synchronous negotiation on the socket
+ * is complete; the channel is switched to non-blocking mode and the
+ * transport thread will exit rather than read the socket itself.
+ *
+ * @param maxFrameSize the largest frame, including its 4 byte header, that may be received
+ * @param soTimeout close the transport (if idle) after this many milliseconds without data
+ */
+
+    public void register( SocketChannel channel,
+                    Transport transport,
+                    int maxFrameSize,
+                    long soTimeout ) throws IOException {
+        Worker w;
+
+        channel.configureBlocking( false );
+        synchronized (this) {
+            w = workers[next];
+            next = (next + 1) % workers.length;
+        }
+        transport.selected = true;
+        w.add( new Registration( channel, transport, maxFrameSize, soTimeout ));
+    }
+}
@@ -0,0 +1,120 @@
+package jcifs.util.transport;
+
+/**
+ * A hashed timing wheel that expires the outstanding requests of every
+ * transport. Each registered future is linked into the slot for the tick
+ * in which it expires so that adding and removing it is constant time and
+ * a single thread, waking once per tick while anything is scheduled, fails
+ * only those futures whose time has come. Futures further away than one
+ * turn of the wheel stay in their slot until the wheel comes round to the
+ * right tick.
+ */
+
+class TimeoutWheel implements Runnable {
+
+    static final long TICK = 100L;
+    static final int SLOTS = 512; /* a power of 2 */
+
+    static TimeoutWheel wheel = null;
+
+    static synchronized TimeoutWheel getInstance() {
+        if (wheel == null) {
+            wheel = new TimeoutWheel();
+            Thread t = new Thread( wheel, "TransportTimeouts" );
+            t.setDaemon( true );
+            t.start();
+        }
+        return wheel;
+    }
+
+    ResponseFuture[] slots = new ResponseFuture[SLOTS];
+    long start = System.currentTimeMillis();
+    long tick = 0; /* the last tick processed */
+    int count = 0;
+
+    synchronized void add( ResponseFuture future ) {
+        if (count == 0) /* nothing to catch up on */
+            tick = (System.currentTimeMillis() - start) / TICK;
+        long t = (future.expiration - start + TICK - 1) / TICK;
+        if (t <= tick)
+            t = tick + 1;
+        ResponseFuture head = slots[(int)(t & (SLOTS - 1))];
+
+        future.wheelTick = t;
+        future.wheelPrev = null;
+        future.wheelNext = head;
+        if (head != null)
+            head.wheelPrev = future;
+        slots[(int)(t & (SLOTS - 1))] = future;
+        future.wheeled = true;
+
+        if (count++ == 0)
+            notify(); /* the thread waits indefinitely while the wheel is empty */
+    }
+    synchronized void remove( ResponseFuture future ) {
+        if (future.wheeled == false)
+            return;
+        if (future.wheelPrev != null) {
+            future.wheelPrev.wheelNext = future.wheelNext;
+        } else {
+            slots[(int)(future.wheelTick & (SLOTS - 1))] = future.wheelNext;
+        }
+        if (future.wheelNext != null)
+            future.wheelNext.wheelPrev = future.wheelPrev;
+        future.wheelNext = future.wheelPrev = null;
+        future.wheeled = false;
+        count--;
+    }
+
+    /* Unlink and return the futures due at or before the current time
+     * chained through wheelNext.
+     */
+    synchronized ResponseFuture advance() throws InterruptedException {
+        for ( ;; ) {
+            if (count == 0) {
+                wait();
+                continue;
+            }
+            long now = (System.currentTimeMillis() - start) / TICK;
+            if (now <= tick) {
+                wait( TICK - (System.currentTimeMillis() - start) % TICK );
+                continue;
+            }
+
+            ResponseFuture due = null;
+            while (tick < now && due == null) {
+                tick++;
+                ResponseFuture f = slots[(int)(tick & (SLOTS - 1))];
+                while (f != null) {
+                    ResponseFuture next = f.wheelNext;
+                    if (f.wheelTick <= tick) {
+                        remove( f );
+                        f.wheelNext = due;
+                        due = f;
+                    }
+                    f = next;
+                }
+            }
+            if (due != null)
+                return due;
+        }
+    }
+    public void run() {
+        for ( ;; ) {
+            try {
+                ResponseFuture f = advance();
+                while (f != null) {
+                    ResponseFuture next = f.wheelNext;
+                    f.wheelNext = null;
+                    f.transport.expire( f );
+                    if (f.isDone() == false)
+                        add( f ); /* not due after all */
+                    f = next;
+                }
+            } catch( Throwable t ) {
+                if (Transport.log.level >= 1)
+                    t.printStackTrace( Transport.log );
+            }
+        }
+    }
+}
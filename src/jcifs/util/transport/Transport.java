@@ -2,6 +2,7 @@ package jcifs.util.transport;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import jcifs.util.LogStream;
 
@@ -19,6 +20,14 @@ public abstract class Transport implements Runnable {
     static int id = 0;
     static LogStream log = LogStream.getInstance();
 
+    /* A response timeout for requests the peer may legitimately hold
+     * for as long as it likes such as a change notification. The future
+     * is only completed by the response, cancel or a disconnect. Such
+     * requests do not take a window slot; otherwise enough of them would
+     * leave no slot for anything else.
+     */
+    public static final long NO_TIMEOUT = Long.MAX_VALUE;
+
     public static int readn( InputStream in,
                 byte[] b,
                 int off,
@@ -35,6 +44,41 @@ public abstract class Transport implements Runnable {
 
         return i;
     }
+    /* Read len bytes into dst at its position and advance the position.
+     * A heap buffer is read into directly. A direct buffer is filled from
+     * the RingInputStream's ring if there is one and otherwise through a
+     * small intermediate array.
+     */
+    public static int readn( InputStream in,
+                ByteBuffer dst,
+                int len ) throws IOException {
+        if (dst.hasArray()) {
+            int n = readn( in, dst.array(), dst.arrayOffset() + dst.position(), len );
+            dst.position( dst.position() + n );
+            return n;
+        }
+
+        int i = 0, n;
+        byte[] tmp = null;
+
+        while (i < len) {
+            if (in instanceof RingInputStream) {
+                n = ((RingInputStream)in).read( dst, len - i );
+            } else {
+                if (tmp == null)
+                    tmp = new byte[Math.min( len, 8192 )];
+                n = in.read( tmp, 0, Math.min( len - i, tmp.length ));
+                if (n > 0)
+                    dst.put( tmp, 0, n );
+            }
+            if (n <= 0) {
+                break;
+            }
+            i += n;
+        }
+
+        return i;
+    }
 
     /* state values
      * 0 - not connected
@@ -44,88 +88,254 @@ public abstract class Transport implements Runnable {
      * 4 - error
      */
     int state = 0;
+    boolean attempted = false;
 
     String name = "Transport" + id++;
     Thread thread;
     TransportException te;
 
-    protected HashMap response_map = new HashMap( 4 );
+    protected ResponseMap response_map = new ResponseMap( 16 );
+
+    private Object window = new Object();
+    private int inflight = 0;
+
+    /* Set when the subclass registers its channel with a SelectorPool
+     * in doConnect. The transport thread then exits once connected.
+     */
+    boolean selected = false;
 
     protected abstract void makeKey( Request request ) throws IOException;
+    protected abstract int keyOf( Request request );
     protected abstract Request peekKey() throws IOException;
     protected abstract void doSend( Request request ) throws IOException;
     protected abstract void doRecv( Response response ) throws IOException;
     protected abstract void doSkip() throws IOException;
 
-    public synchronized void sendrecv( Request request,
-                    Response response,
-                    long timeout ) throws IOException {
-            makeKey( request );
-            response.isReceived = false;
+    /* The maximum number of requests that may be outstanding on this
+     * transport at once. Subclasses return the value negotiated with
+     * the peer.
+     */
+    protected int getWindowSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /* Take one of the getWindowSize() in-flight slots, waiting at most
+     * timeout milliseconds for another request to complete. Each release
+     * wakes exactly one waiter.
+     */
+    protected void acquireWindow( Request request, long timeout ) throws IOException {
+        synchronized (window) {
+            long expiration = timeout == NO_TIMEOUT ? NO_TIMEOUT :
+                        System.currentTimeMillis() + timeout;
             try {
-                response_map.put( request, response );
-                doSend( request );
-                response.expiration = System.currentTimeMillis() + timeout;
-                while (!response.isReceived) {
-                    wait( timeout );
-                    timeout = response.expiration - System.currentTimeMillis();
+                while (inflight >= getWindowSize()) {
                     if (timeout <= 0) {
                         throw new TransportException( name +
-                                " timedout waiting for response to " +
-                                request );
+                                " timedout waiting to send " + request );
                     }
+                    window.wait( timeout );
+                    timeout = expiration - System.currentTimeMillis();
                 }
+            } catch( InterruptedException ie ) {
+                throw new TransportException( ie );
+            }
+            inflight++;
+        }
+    }
+    protected void releaseWindow() {
+        synchronized (window) {
+            inflight--;
+            window.notify();
+        }
+    }
+    /* The number of requests currently holding a window slot. This is not
+     * synchronized and is only meant for choosing among several transports
+     * to the same peer.
+     */
+    public int getInflight() {
+        return inflight;
+    }
+
+    /* Called by the transport thread after each message of a response has
+     * been read. Protocols whose responses may span several messages return
+     * false until the last one has arrived.
+     */
+    protected boolean isComplete( Response response ) {
+        return true;
+    }
+
+    public void sendrecv( Request request,
+                    Response response,
+                    long timeout ) throws IOException {
+        try {
+            sendAsync( request, response, timeout ).get();
+        } catch( IOException ioe ) {
+            if (log.level > 2)
+                ioe.printStackTrace( log );
+            try {
+                disconnect( true );
+            } catch( IOException ioe2 ) {
+                ioe2.printStackTrace( log );
+            }
+            throw ioe;
+        }
+    }
+
+    /* Send the request and return without waiting for the response. The
+     * caller only blocks if all getWindowSize() slots are in use. The
+     * returned future is completed by the transport thread.
+     */
+    public ResponseFuture sendAsync( Request request,
+                    Response response,
+                    long timeout ) throws IOException {
+        ResponseFuture future = new ResponseFuture( request, response );
+        sendAsync( future, timeout );
+        return future;
+    }
+    public void sendAsync( ResponseFuture future, long timeout ) throws IOException {
+        if (timeout != NO_TIMEOUT)
+            acquireWindow( future.request, timeout );
+        synchronized (this) {
+            try {
+                makeKey( future.request );
+            } catch( IOException ioe ) {
+                if (timeout != NO_TIMEOUT)
+                    releaseWindow();
+                throw ioe;
+            }
+            register( future, timeout );
+            try {
+                doSend( future.request );
             } catch( IOException ioe ) {
-                if (log.level > 2)
-                    ioe.printStackTrace( log );
+                complete( future, ioe );
                 try {
                     disconnect( true );
                 } catch( IOException ioe2 ) {
                     ioe2.printStackTrace( log );
                 }
                 throw ioe;
-            } catch( InterruptedException ie ) {
-                throw new TransportException( ie );
-            } finally {
-                response_map.remove( request );
             }
+        }
+    }
+
+    /* Enter a future whose request already has a key into the table of
+     * outstanding requests. Unless the timeout is NO_TIMEOUT the caller
+     * must hold a window slot which is given back when the future
+     * completes.
+     */
+    protected void register( ResponseFuture future, long timeout ) {
+        future.transport = this;
+        future.key = keyOf( future.request );
+        future.response.isReceived = false;
+        response_map.put( future.key, future );
+        if (timeout == NO_TIMEOUT) {
+            future.expiration = NO_TIMEOUT;
+        } else {
+            future.expiration = System.currentTimeMillis() + timeout;
+            TimeoutWheel.getInstance().add( future );
+        }
+    }
+    protected void complete( ResponseFuture future, IOException ex ) {
+        if (future.setDone( ex ) == false)
+            return;
+        completed( future );
+    }
+    private void completed( ResponseFuture future ) {
+        TimeoutWheel.getInstance().remove( future );
+        response_map.remove( future.key );
+        if (future.expiration != NO_TIMEOUT)
+            releaseWindow();
+        future.fire();
+    }
+    void expire( ResponseFuture future ) {
+        if (future.isDone() || System.currentTimeMillis() < future.expiration)
+            return;
+        /* Do not pull the response out from under the transport thread
+         * if it is being decoded right now and do not wait for it either;
+         * the TimeoutWheel serves every transport. It will try again.
+         */
+        if (future.setExpired( new TransportException( name +
+                    " timedout waiting for response to " + future.request )))
+            completed( future );
+    }
+    /* Complete the future with ex unless its response is being read in
+     * which case it is completed as soon as the read is over.
+     */
+    void abandon( ResponseFuture future, IOException ex ) {
+        if (future.setAbandoned( ex ))
+            completed( future );
     }
     private void loop() {
         while( thread == Thread.currentThread() ) {
             try {
-                Request key = peekKey();
-                if (key == null)
-                    throw new IOException( "end of stream" );
-                synchronized (this) {
-                    Response response = (Response)response_map.get( key );
-                    if (response == null) {
-                        if (log.level >= 4)
-                            log.println( "Invalid key, skipping message" );
-                        doSkip();
-                    } else {
-                        doRecv( response );
-                        response.isReceived = true;
-                        notifyAll();
-                    }
-                }
+                receive();
             } catch( Exception ex ) {
-                String msg = ex.getMessage();
-                boolean timeout = msg != null && msg.equals( "Read timed out" );
-                /* If just a timeout, try to disconnect gracefully
-                 */
-                boolean hard = timeout == false;
-
-                if (!timeout && log.level >= 3)
-                    ex.printStackTrace( log );
+                readFailed( ex );
+            }
+        }
+    }
 
+    /* Read one message and hand it to the future waiting for it. This is
+     * called by the transport thread or, if the transport is registered
+     * with a SelectorPool, by frameReceived.
+     */
+    protected void receive() throws IOException {
+        Request key = peekKey();
+        if (key == null)
+            throw new IOException( "end of stream" );
+        ResponseFuture future = response_map.get( keyOf( key ));
+        if (future == null) {
+            if (log.level >= 4)
+                log.println( "Invalid key, skipping message" );
+            doSkip();
+        } else {
+            /* Decoding under the response monitor guarantees the
+             * caller never observes a partially decoded response.
+             */
+            Response response = future.response;
+            if (future.startReceiving() == false) {
+                doSkip(); /* expired or cancelled meanwhile */
+            } else {
                 try {
-                    disconnect( hard );
-                } catch( IOException ioe ) {
-                    ioe.printStackTrace( log );
+                    synchronized (response) {
+                        doRecv( response );
+                        if (isComplete( response )) {
+                            response.isReceived = true;
+                            complete( future, null );
+                        }
+                    }
+                } finally {
+                    if (future.stopReceiving())
+                        completed( future ); /* abandoned meanwhile */
                 }
             }
         }
     }
+    protected void readFailed( Exception ex ) {
+        String msg = ex.getMessage();
+        boolean timeout = msg != null && msg.equals( "Read timed out" );
+        /* If just a timeout, try to disconnect gracefully
+         */
+        boolean hard = timeout == false;
+
+        if (!timeout && log.level >= 3)
+            ex.printStackTrace( log );
+
+        try {
+            disconnect( hard );
+        } catch( IOException ioe ) {
+            ioe.printStackTrace( log );
+        }
+    }
+
+    /* Called by a SelectorPool thread with one complete frame read from
+     * the channel registered for this transport. Subclasses that use a
+     * SelectorPool arrange for peekKey and doRecv to read from the frame
+     * and then call receive().
+     */
+    protected void frameReceived( byte[] b, int off, int len ) throws IOException {
+        throw new IOException( "Transport does not accept frames: " + name );
+    }
 
     /* Build a connection. Only one thread will ever call this method at
      * any one time. If this method throws an exception or the connect timeout
@@ -159,6 +369,7 @@ public abstract class Transport implements Runnable {
             }
 
             state = 1;
+            attempted = true;
             te = null;
             thread = new Thread( this, name );
             thread.setDaemon( true );
@@ -197,6 +408,19 @@ public abstract class Transport implements Runnable {
             }
         }
     }
+    /* True if the transport was connected (or tried to connect) and has
+     * since been disconnected or failed. This is not synchronized so that
+     * it may be called while another thread holds the transport lock; the
+     * result is only a hint.
+     */
+    public boolean isDead() {
+        return attempted && (state == 0 || state == 4);
+    }
+    /* True if the transport is connected. Also an unsynchronized hint.
+     */
+    public boolean isConnected() {
+        return state == 3;
+    }
     public synchronized void disconnect( boolean hard ) throws IOException {
         IOException ioe = null;
 
@@ -226,6 +450,15 @@ public abstract class Transport implements Runnable {
                 break;
         }
 
+        if (state == 0) {
+            /* Nothing more will be read so fail anything still waiting
+             */
+            ResponseFuture[] futures = response_map.toArray();
+            for (int i = 0; i < futures.length; i++) {
+                abandon( futures[i], new TransportException( "Transport closed: " + name ));
+            }
+        }
+
         if (ioe != null)
             throw ioe;
     }
@@ -262,9 +495,10 @@ public abstract class Transport implements Runnable {
             }
         }
 
-        /* Proccess responses
+        /* Proccess responses unless a SelectorPool delivers them
          */
-        loop();
+        if (selected == false)
+            loop();
     }
 
     public String toString() {
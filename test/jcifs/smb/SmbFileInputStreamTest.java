@@ -0,0 +1,119 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/* Opening a file with a ReadAndX chained to the NTCreateAndX, against
+ * SmbStubServer.
+ */
+
+public class SmbFileInputStreamTest extends TestCase {
+
+    SmbStubServer server = new SmbStubServer();
+
+    protected void tearDown() {
+        server.stop();
+    }
+
+    static byte[] data( int len ) {
+        byte[] b = new byte[len];
+        new Random( len ).nextBytes( b );
+        return b;
+    }
+    static byte[] readAll( InputStream in ) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] b = new byte[1000];
+        int n;
+        try {
+            while ((n = in.read( b )) > 0)
+                bos.write( b, 0, n );
+        } finally {
+            in.close();
+        }
+        return bos.toByteArray();
+    }
+
+    /* A small file is read with the open and its end is known from the
+     * size the open returns: open+read and close, nothing else.
+     */
+    public void testSmallFile() throws Exception {
+        byte[] b = data( 100 );
+        server.put( "a.txt", b );
+        assertTrue( Arrays.equals( b, readAll( new SmbFileInputStream( server.file( "a.txt" )))));
+        assertEquals( 1, server.count( ServerMessageBlock.SMB_COM_NT_CREATE_ANDX ));
+        assertEquals( 1, server.chained );
+        assertEquals( 0, server.count( ServerMessageBlock.SMB_COM_READ_ANDX ));
+        assertEquals( 1, server.count( ServerMessageBlock.SMB_COM_CLOSE ));
+        assertEquals( 0, server.openHandles );
+    }
+    public void testEmptyFile() throws Exception {
+        server.put( "a.txt", new byte[0] );
+        InputStream in = new SmbFileInputStream( server.file( "a.txt" ));
+        assertEquals( -1, in.read() );
+        in.close();
+        assertEquals( 0, server.count( ServerMessageBlock.SMB_COM_READ_ANDX ));
+    }
+    public void testLargeFile() throws Exception {
+        byte[] b = data( 100000 );
+        server.put( "a.txt", b );
+        assertTrue( Arrays.equals( b, readAll( new SmbFileInputStream( server.file( "a.txt" )))));
+        assertTrue( server.count( ServerMessageBlock.SMB_COM_READ_ANDX ) > 0 );
+        assertEquals( 0, server.openHandles );
+    }
+
+    /* The open succeeds and the chained read fails. The stream must keep
+     * the handle and read without the chain as if it had not been tried.
+     */
+    public void testChainedReadFails() throws Exception {
+        server.chainedReadStatus = SmbStubServer.STATUS_FILE_LOCK_CONFLICT;
+        byte[] b = data( 10000 );
+        server.put( "a.txt", b );
+        InputStream in = new SmbFileInputStream( server.file( "a.txt" ));
+        assertEquals( 1, server.openHandles );
+        assertTrue( Arrays.equals( b, readAll( in )));
+        assertEquals( 1, server.count( ServerMessageBlock.SMB_COM_NT_CREATE_ANDX ));
+        assertEquals( 0, server.openHandles );
+    }
+    public void testDirectory() throws Exception {
+        server.dirs.add( "dir" );
+        InputStream in = new SmbFileInputStream( server.file( "dir" ));
+        try {
+            in.read();
+            fail( "read a directory" );
+        } catch( SmbException se ) {
+            assertEquals( SmbStubServer.STATUS_INVALID_DEVICE_REQUEST, se.getNtStatus() );
+        } finally {
+            in.close();
+        }
+        assertEquals( 0, server.openHandles );
+    }
+    public void testOpenFails() throws Exception {
+        try {
+            new SmbFileInputStream( server.file( "b.txt" ));
+            fail( "opened a missing file" );
+        } catch( SmbException se ) {
+            assertEquals( NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, se.getNtStatus() );
+        }
+        assertEquals( 0, server.openHandles );
+    }
+}
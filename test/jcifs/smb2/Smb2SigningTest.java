@@ -0,0 +1,98 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb2;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/* Signing of requests and verification of responses against a
+ * Smb2StubServer that requires it.
+ */
+
+public class Smb2SigningTest extends TestCase implements Smb2Constants {
+
+    Smb2StubServer server = new Smb2StubServer();
+
+    protected void tearDown() {
+        server.stop();
+    }
+
+    void roundTrip( String name, int len ) throws IOException {
+        byte[] b = Smb2StubServer.data( len );
+        Smb2StubServer.write( server.file( name ), b );
+        assertTrue( name, Arrays.equals( b, server.get( name )));
+        assertTrue( name, Arrays.equals( b, Smb2StubServer.read( server.file( name ), 0x200000 )));
+    }
+
+    public void testSigned() throws Exception {
+        server.signingRequired = true;
+        server.put( "b.txt", new byte[3] );
+        roundTrip( "a.txt", 0x180000 + 1 );
+        assertEquals( 2, server.file( "" ).list().length );
+        assertTrue( server.transport().signingRequired );
+        Smb2Session ssn = server.file( "a.txt" ).tree().session;
+        assertNotNull( ssn.digest );
+        assertTrue( server.goodSignatures > 0 );
+        assertEquals( 0, server.badSignatures );
+    }
+    public void testSigned2002() throws Exception {
+        server.signingRequired = true;
+        server.dialect = SMB2_002;
+        roundTrip( "a.txt", 0x30000 + 1 );
+        assertEquals( 0, server.badSignatures );
+    }
+    public void testSignedPending() throws Exception {
+        server.signingRequired = true;
+        server.pendingCommand = SMB2_READ;
+        roundTrip( "a.txt", 0x20000 );
+        assertTrue( server.pendingSent > 0 );
+        assertEquals( 0, server.badSignatures );
+    }
+    public void testNotSigned() throws Exception {
+        roundTrip( "a.txt", 100 );
+        assertNull( server.file( "a.txt" ).tree().session.digest );
+        assertEquals( 0, server.goodSignatures );
+    }
+    public void testBadSignature() throws Exception {
+        server.signingRequired = true;
+        server.corruptCommand = SMB2_READ;
+        server.put( "a.txt", Smb2StubServer.data( 1000 ));
+        InputStream in = server.file( "a.txt" ).getInputStream();
+        try {
+            in.read( new byte[100] );
+            fail( "bad signature accepted" );
+        } catch( IOException ioe ) {
+            assertTrue( ioe.getMessage(), ioe.getMessage().startsWith( "Signature verification failed" ));
+        } finally {
+            in.close();
+        }
+    }
+    public void testBadSignatureOnError() throws Exception {
+        server.signingRequired = true;
+        server.corruptCommand = SMB2_CREATE;
+        try {
+            server.file( "b.txt" ).exists();
+            fail( "bad signature accepted" );
+        } catch( IOException ioe ) {
+            assertTrue( ioe.getMessage(), ioe.getMessage().startsWith( "Signature verification failed" ));
+        }
+    }
+}
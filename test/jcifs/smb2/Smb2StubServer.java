@@ -0,0 +1,762 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb2;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import jcifs.UniAddress;
+import jcifs.ntlmssp.NtlmFlags;
+import jcifs.ntlmssp.Type2Message;
+import jcifs.ntlmssp.Type3Message;
+import jcifs.smb.NtlmPasswordAuthentication;
+import jcifs.smb.SmbFile;
+import jcifs.util.Encdec;
+import jcifs.util.HMACT64;
+import jcifs.util.RC4;
+
+/* A small SMB2 server for the tests. It listens on an ephemeral port of
+ * the loopback interface and serves one disk share, "share", of files
+ * held in memory in a single directory. Just enough of NEGOTIATE,
+ * SESSION_SETUP (raw NTLMSSP with NTLMv2), TREE_CONNECT, CREATE, READ,
+ * WRITE, CLOSE and QUERY_DIRECTORY is implemented for Smb2File.
+ *
+ * The fields below select how the server behaves and must be set before
+ * start(). It also counts what a well behaved client should never do so
+ * that tests can check for it afterwards.
+ */
+
+class Smb2StubServer implements Smb2Constants {
+
+    static final String SHARE = "share";
+    static final String PASSWORD = "secret";
+
+    static final int STATUS_ACCESS_DENIED        = 0xC0000022;
+    static final int STATUS_INVALID_PARAMETER    = 0xC000000D;
+    static final int STATUS_OBJECT_NAME_COLLISION = 0xC0000035;
+    static final int STATUS_LOGON_FAILURE        = 0xC000006D;
+    static final int STATUS_FILE_IS_A_DIRECTORY  = 0xC00000BA;
+    static final int STATUS_NOT_SUPPORTED        = 0xC00000BB;
+    static final int STATUS_BAD_NETWORK_NAME     = 0xC00000CC;
+    static final int STATUS_NOT_A_DIRECTORY      = 0xC0000103;
+
+    /* Answer the first NEGOTIATE as an SMB1 server would.
+     */
+    boolean smb1Only = false;
+    /* SMB2_002 is answered directly; SMB2_1 goes through the wildcard
+     * response and a second, SMB2, NEGOTIATE.
+     */
+    int dialect = SMB2_1;
+    boolean largeMtu = true;
+    int maxIoSize = 0x100000;
+    /* Credits granted by the NEGOTIATE response and by every response
+     * after it. A grant of 0 gives the client as many as it asks for.
+     */
+    int credits = 64;
+    int grant = 0;
+    /* Answer this command with an interim STATUS_PENDING response and
+     * send the real one pendingDelay milliseconds later.
+     */
+    int pendingCommand = -1;
+    long pendingDelay = 100;
+    boolean signingRequired = false;
+    /* Spoil the signature of the responses to this command.
+     */
+    int corruptCommand = -1;
+    /* Bytes of padding sent after the data of a READ response.
+     */
+    int readTrailer = 0;
+
+    /* What the server saw
+     */
+    int connections;
+    int creditViolations;
+    int badSignatures;
+    int goodSignatures;
+    int pendingSent;
+    int maxCharge;
+    int requests;
+
+    ServerSocket serverSocket;
+    int port;
+    HashMap files = new HashMap();
+    LinkedList conns = new LinkedList();
+
+    int start() throws IOException {
+        serverSocket = new ServerSocket( 0, 50, InetAddress.getByName( "127.0.0.1" ));
+        Thread t = new Thread( new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "Smb2StubServer" );
+        t.setDaemon( true );
+        t.start();
+        port = serverSocket.getLocalPort();
+        return port;
+    }
+    void stop() {
+        if (serverSocket == null)
+            return;
+        try {
+            serverSocket.close();
+        } catch( IOException ioe ) {
+        }
+        synchronized (conns) {
+            Iterator iter = conns.iterator();
+            while (iter.hasNext())
+                ((Conn)iter.next()).close();
+        }
+    }
+    void accept() {
+        try {
+            for ( ;; ) {
+                Conn c = new Conn( serverSocket.accept() );
+                synchronized (this) {
+                    connections++;
+                }
+                synchronized (conns) {
+                    conns.add( c );
+                }
+                Thread t = new Thread( c, "Smb2StubServer-" + connections );
+                t.setDaemon( true );
+                t.start();
+            }
+        } catch( IOException ioe ) {
+            /* closed by stop() */
+        }
+    }
+
+    /* A file on the share, starting the server if it is not running.
+     * Each server has its own port and so its own Smb2Transport.
+     */
+    Smb2File file( String name ) throws IOException {
+        if (serverSocket == null)
+            start();
+        return new Smb2File( new SmbFile( "smb://DOMAIN;user:" + PASSWORD +
+                    "@127.0.0.1:" + port + "/" + SHARE + "/" + name ));
+    }
+    Smb2Transport transport() throws IOException {
+        return Smb2Transport.getTransport( UniAddress.getByName( "127.0.0.1" ), port );
+    }
+
+    static byte[] data( int len ) {
+        byte[] b = new byte[len];
+        new Random( len ).nextBytes( b );
+        return b;
+    }
+    static void write( Smb2File file, byte[] b ) throws IOException {
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write( b );
+        } finally {
+            out.close();
+        }
+    }
+    static byte[] read( Smb2File file, int bufSize ) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] b = new byte[bufSize];
+        int n;
+        InputStream in = file.getInputStream();
+        try {
+            while ((n = in.read( b )) > 0)
+                bos.write( b, 0, n );
+        } finally {
+            in.close();
+        }
+        return bos.toByteArray();
+    }
+
+    void put( String name, byte[] data ) {
+        synchronized (files) {
+            files.put( name.toLowerCase(), data );
+        }
+    }
+    byte[] get( String name ) {
+        synchronized (files) {
+            return (byte[])files.get( name.toLowerCase() );
+        }
+    }
+    synchronized void violation() {
+        creditViolations++;
+    }
+
+    static class Handle {
+        String name; /* null for the share's root directory */
+        boolean listed;
+    }
+
+    class Conn implements Runnable {
+
+        Socket socket;
+        InputStream in;
+        OutputStream out;
+        int balance; /* credits granted and not yet spent */
+        long sessionId;
+        Mac mac;
+        byte[] challenge = new byte[8];
+        HashMap handles = new HashMap();
+        long nextFileId = 1, nextAsyncId = 1;
+
+        Conn( Socket socket ) throws IOException {
+            this.socket = socket;
+            in = new BufferedInputStream( socket.getInputStream() );
+            out = socket.getOutputStream();
+            new Random().nextBytes( challenge );
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch( IOException ioe ) {
+            }
+        }
+        public void run() {
+            try {
+                byte[] hdr = new byte[4];
+                for ( ;; ) {
+                    if (readn( hdr, 0, 4 ) < 4)
+                        break;
+                    int size = Encdec.dec_uint32be( hdr, 0 ) & 0xFFFFFF;
+                    byte[] msg = new byte[size];
+                    if (readn( msg, 0, size ) < size)
+                        break;
+                    if (msg[0] == (byte)0xFF) {
+                        smb1Negotiate( msg );
+                    } else {
+                        dispatch( msg );
+                    }
+                }
+            } catch( IOException ioe ) {
+            } finally {
+                close();
+            }
+        }
+        int readn( byte[] b, int off, int len ) throws IOException {
+            int i = 0;
+            while (i < len) {
+                int n = in.read( b, off + i, len - i );
+                if (n <= 0)
+                    break;
+                i += n;
+            }
+            return i;
+        }
+
+        void smb1Negotiate( byte[] msg ) throws IOException {
+            if (smb1Only) {
+                byte[] m = new byte[4 + 37];
+                Encdec.enc_uint32be( 37, m, 0 );
+                System.arraycopy( msg, 0, m, 4, 32 );
+                m[4 + 9] = (byte)0x98; /* flags: reply */
+                m[4 + 32] = (byte)0x01; /* WordCount, DialectIndex 0 */
+                write( m );
+                return;
+            }
+            balance = credits;
+            byte[] m = negotiateResponse( msg, dialect == SMB2_1 ? SMB2_WILDCARD : dialect, credits );
+            Encdec.enc_uint64le( 0L, m, 4 + 24 ); /* MessageId */
+            write( m );
+        }
+        byte[] negotiateResponse( byte[] req, int dialect, int credits ) {
+            byte[] body = new byte[65];
+            Encdec.enc_uint16le( (short)65, body, 0 );
+            Encdec.enc_uint16le( (short)(NEGOTIATE_SIGNING_ENABLED |
+                        (signingRequired ? NEGOTIATE_SIGNING_REQUIRED : 0)), body, 2 );
+            Encdec.enc_uint16le( (short)dialect, body, 4 );
+            Encdec.enc_uint32le( largeMtu && dialect != SMB2_002 ? GLOBAL_CAP_LARGE_MTU : 0, body, 24 );
+            Encdec.enc_uint32le( maxIoSize, body, 28 );
+            Encdec.enc_uint32le( maxIoSize, body, 32 );
+            Encdec.enc_uint32le( maxIoSize, body, 36 );
+            Encdec.enc_uint16le( (short)(HEADER_LENGTH + 64), body, 56 );
+            return message( req, SMB2_NEGOTIATE, STATUS_SUCCESS, credits, 0L, body );
+        }
+
+        /* Build a response to req with the given body, not yet signed.
+         */
+        byte[] message( byte[] req, int command, int status, int credits, long asyncId, byte[] body ) {
+            byte[] m = new byte[4 + HEADER_LENGTH + body.length];
+            Encdec.enc_uint32be( m.length - 4, m, 0 );
+            m[4] = (byte)0xFE;
+            m[5] = (byte)'S';
+            m[6] = (byte)'M';
+            m[7] = (byte)'B';
+            Encdec.enc_uint16le( (short)HEADER_LENGTH, m, 4 + 4 );
+            if (req[0] == (byte)0xFE)
+                System.arraycopy( req, 6, m, 4 + 6, 2 ); /* CreditCharge */
+            Encdec.enc_uint32le( status, m, 4 + 8 );
+            Encdec.enc_uint16le( (short)command, m, 4 + 12 );
+            Encdec.enc_uint16le( (short)credits, m, 4 + 14 );
+            int flags = FLAGS_SERVER_TO_REDIR;
+            if (asyncId != 0)
+                flags |= FLAGS_ASYNC_COMMAND;
+            Encdec.enc_uint32le( flags, m, 4 + 16 );
+            if (req[0] == (byte)0xFE) {
+                System.arraycopy( req, 24, m, 4 + 24, 8 ); /* MessageId */
+                System.arraycopy( req, 40, m, 4 + 40, 8 ); /* SessionId */
+            }
+            if (asyncId != 0) {
+                Encdec.enc_uint64le( asyncId, m, 4 + 32 );
+            } else if (req[0] == (byte)0xFE) {
+                Encdec.enc_uint32le( 0xFEFF, m, 4 + 32 ); /* ProcessId */
+                System.arraycopy( req, 36, m, 4 + 36, 4 ); /* TreeId */
+            }
+            System.arraycopy( body, 0, m, 4 + HEADER_LENGTH, body.length );
+            return m;
+        }
+        byte[] errorBody() {
+            byte[] body = new byte[9];
+            Encdec.enc_uint16le( (short)9, body, 0 );
+            return body;
+        }
+        void write( byte[] m ) throws IOException {
+            synchronized (out) {
+                out.write( m );
+                out.flush();
+            }
+        }
+        void sign( byte[] m, int command ) {
+            int flags = Encdec.dec_uint32le( m, 4 + 16 ) | FLAGS_SIGNED;
+            Encdec.enc_uint32le( flags, m, 4 + 16 );
+            byte[] sig;
+            synchronized (mac) {
+                mac.update( m, 4, m.length - 4 );
+                sig = mac.doFinal();
+            }
+            System.arraycopy( sig, 0, m, 4 + 48, 16 );
+            if (command == corruptCommand)
+                m[4 + 48] ^= (byte)0xFF;
+        }
+        boolean verify( byte[] msg ) {
+            byte[] sig = new byte[16];
+            System.arraycopy( msg, 48, sig, 0, 16 );
+            for (int i = 48; i < HEADER_LENGTH; i++)
+                msg[i] = (byte)0x00;
+            byte[] expected;
+            synchronized (mac) {
+                mac.update( msg, 0, msg.length );
+                expected = mac.doFinal();
+            }
+            for (int i = 0; i < 16; i++) {
+                if (sig[i] != expected[i])
+                    return false;
+            }
+            return true;
+        }
+
+        void dispatch( byte[] msg ) throws IOException {
+            int charge = Encdec.dec_uint16le( msg, 6 ) & 0xFFFF;
+            int command = Encdec.dec_uint16le( msg, 12 ) & 0xFFFF;
+            int creditRequest = Encdec.dec_uint16le( msg, 14 ) & 0xFFFF;
+            int flags = Encdec.dec_uint32le( msg, 16 );
+            boolean signed = (flags & FLAGS_SIGNED) != 0;
+
+            synchronized (Smb2StubServer.this) {
+                requests++;
+                maxCharge = Math.max( maxCharge, charge );
+            }
+            balance -= Math.max( 1, charge );
+            if (balance < 0)
+                violation();
+            if (largeMtu == false || dialect == SMB2_002) {
+                if (charge != 0)
+                    violation();
+            } else if (command == SMB2_READ || command == SMB2_WRITE) {
+                int len = Encdec.dec_uint32le( msg, HEADER_LENGTH + 4 );
+                if (len > 0 && charge < (len - 1) / 0x10000 + 1)
+                    violation();
+            }
+
+            int status = STATUS_SUCCESS;
+            byte[] body = null;
+            if (mac != null && command != SMB2_NEGOTIATE && command != SMB2_SESSION_SETUP) {
+                if (signed ? verify( msg ) == false : signingRequired) {
+                    synchronized (Smb2StubServer.this) {
+                        badSignatures++;
+                    }
+                    status = STATUS_ACCESS_DENIED;
+                } else if (signed) {
+                    synchronized (Smb2StubServer.this) {
+                        goodSignatures++;
+                    }
+                }
+            }
+            long sid = 0;
+            if (status == STATUS_SUCCESS) {
+                Result r = new Result();
+                switch (command) {
+                    case SMB2_NEGOTIATE:
+                        r.body = null;
+                        break;
+                    case SMB2_SESSION_SETUP:
+                        sessionSetup( msg, r );
+                        sid = sessionId;
+                        break;
+                    case SMB2_TREE_CONNECT:
+                        treeConnect( msg, r );
+                        break;
+                    case SMB2_CREATE:
+                        create( msg, r );
+                        break;
+                    case SMB2_CLOSE:
+                        handles.remove( new Long( Encdec.dec_uint64le( msg, HEADER_LENGTH + 8 )));
+                        r.body = new byte[60];
+                        Encdec.enc_uint16le( (short)60, r.body, 0 );
+                        break;
+                    case SMB2_READ:
+                        read( msg, r );
+                        break;
+                    case SMB2_WRITE:
+                        write( msg, r );
+                        break;
+                    case SMB2_QUERY_DIRECTORY:
+                        queryDirectory( msg, r );
+                        break;
+                    case SMB2_TREE_DISCONNECT:
+                    case SMB2_LOGOFF:
+                        r.body = new byte[4];
+                        Encdec.enc_uint16le( (short)4, r.body, 0 );
+                        break;
+                    default:
+                        r.status = STATUS_NOT_SUPPORTED;
+                }
+                status = r.status;
+                body = r.body;
+            }
+
+            int granted = grant > 0 ? grant : Math.max( 1, creditRequest );
+            balance += granted;
+
+            if (command == SMB2_NEGOTIATE) {
+                write( negotiateResponse( msg, dialect, granted ));
+                return;
+            }
+            if (body == null)
+                body = errorBody();
+
+            final byte[] m;
+            if (command == pendingCommand) {
+                long asyncId = nextAsyncId++;
+                byte[] interim = message( msg, command, STATUS_PENDING, granted, asyncId, errorBody() );
+                write( interim );
+                synchronized (Smb2StubServer.this) {
+                    pendingSent++;
+                }
+                m = message( msg, command, status, 0, asyncId, body );
+            } else {
+                m = message( msg, command, status, granted, 0L, body );
+            }
+            if (sid != 0)
+                Encdec.enc_uint64le( sid, m, 4 + 40 );
+            if (mac != null && command != SMB2_SESSION_SETUP && (signed || signingRequired))
+                sign( m, command );
+
+            if (command == pendingCommand) {
+                Thread t = new Thread() {
+                    public void run() {
+                        try {
+                            Thread.sleep( pendingDelay );
+                            write( m );
+                        } catch( Exception e ) {
+                        }
+                    }
+                };
+                t.setDaemon( true );
+                t.start();
+            } else {
+                write( m );
+            }
+        }
+
+        void sessionSetup( byte[] msg, Result r ) throws IOException {
+            int off = Encdec.dec_uint16le( msg, HEADER_LENGTH + 12 ) & 0xFFFF;
+            int len = Encdec.dec_uint16le( msg, HEADER_LENGTH + 14 ) & 0xFFFF;
+            byte[] token = new byte[len];
+            System.arraycopy( msg, off, token, 0, len );
+            byte[] resp = new byte[0];
+
+            if (len >= 12 && Encdec.dec_uint32le( token, 8 ) == 1) {
+                int flags = NtlmFlags.NTLMSSP_NEGOTIATE_UNICODE |
+                        NtlmFlags.NTLMSSP_REQUEST_TARGET |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_NTLM |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_NTLM2 |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_128 |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_SIGN |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_ALWAYS_SIGN |
+                        NtlmFlags.NTLMSSP_NEGOTIATE_KEY_EXCH;
+                resp = new Type2Message( flags, challenge, "DOMAIN" ).toByteArray();
+                sessionId = 0x1234567800000000L | new Random().nextInt( 0x7FFFFFFF );
+                r.status = STATUS_MORE_PROCESSING_REQUIRED;
+            } else {
+                Type3Message t3 = new Type3Message( token );
+                byte[] responseKeyNT = NtlmPasswordAuthentication.nTOWFv2(
+                        t3.getDomain(), t3.getUser(), PASSWORD );
+                byte[] nt = t3.getNTResponse();
+                if (nt == null || nt.length <= 16) {
+                    r.status = STATUS_LOGON_FAILURE;
+                    return;
+                }
+                HMACT64 hmac = new HMACT64( responseKeyNT );
+                hmac.update( challenge );
+                hmac.update( nt, 16, nt.length - 16 );
+                byte[] proof = hmac.digest();
+                for (int i = 0; i < 16; i++) {
+                    if (proof[i] != nt[i]) {
+                        r.status = STATUS_LOGON_FAILURE;
+                        return;
+                    }
+                }
+
+                if ((t3.getFlags() & NtlmFlags.NTLMSSP_NEGOTIATE_SIGN) != 0) {
+                    hmac = new HMACT64( responseKeyNT );
+                    hmac.update( nt, 0, 16 );
+                    byte[] key = hmac.digest();
+                    if ((t3.getFlags() & NtlmFlags.NTLMSSP_NEGOTIATE_KEY_EXCH) != 0) {
+                        byte[] masterKey = new byte[16];
+                        new RC4( key ).update( t3.getSessionKey(), 0, 16, masterKey, 0 );
+                        key = masterKey;
+                    }
+                    try {
+                        mac = Mac.getInstance( "HmacSHA256" );
+                        mac.init( new SecretKeySpec( key, "HmacSHA256" ));
+                    } catch( Exception e ) {
+                        throw new IOException( e.getMessage() );
+                    }
+                }
+            }
+
+            r.body = new byte[8 + resp.length];
+            Encdec.enc_uint16le( (short)9, r.body, 0 );
+            Encdec.enc_uint16le( (short)(HEADER_LENGTH + 8), r.body, 4 );
+            Encdec.enc_uint16le( (short)resp.length, r.body, 6 );
+            System.arraycopy( resp, 0, r.body, 8, resp.length );
+        }
+        void treeConnect( byte[] msg, Result r ) {
+            int off = Encdec.dec_uint16le( msg, HEADER_LENGTH + 4 ) & 0xFFFF;
+            int len = Encdec.dec_uint16le( msg, HEADER_LENGTH + 6 ) & 0xFFFF;
+            String path = Smb2Message.readString( msg, off, len );
+            String share = path.substring( path.lastIndexOf( '\\' ) + 1 );
+            int shareType;
+            if (share.equalsIgnoreCase( "IPC$" )) {
+                shareType = 0x02;
+            } else if (share.equalsIgnoreCase( SHARE )) {
+                shareType = SHARE_TYPE_DISK;
+            } else {
+                r.status = STATUS_BAD_NETWORK_NAME;
+                return;
+            }
+            r.body = new byte[16];
+            Encdec.enc_uint16le( (short)16, r.body, 0 );
+            r.body[2] = (byte)shareType;
+            Encdec.enc_uint32le( 0x001F01FF, r.body, 12 );
+            Encdec.enc_uint32le( 1, msg, 36 ); /* TreeId in the response */
+        }
+        void create( byte[] msg, Result r ) {
+            int disposition = Encdec.dec_uint32le( msg, HEADER_LENGTH + 36 );
+            int options = Encdec.dec_uint32le( msg, HEADER_LENGTH + 40 );
+            int off = Encdec.dec_uint16le( msg, HEADER_LENGTH + 44 ) & 0xFFFF;
+            int len = Encdec.dec_uint16le( msg, HEADER_LENGTH + 46 ) & 0xFFFF;
+            String name = Smb2Message.readString( msg, off, len );
+            int action = 1; /* FILE_OPENED */
+            byte[] data = null;
+
+            if (name.length() == 0) {
+                if ((options & FILE_NON_DIRECTORY_FILE) != 0) {
+                    r.status = STATUS_FILE_IS_A_DIRECTORY;
+                    return;
+                }
+                name = null;
+            } else if (name.indexOf( '\\' ) != -1) {
+                r.status = STATUS_OBJECT_PATH_NOT_FOUND;
+                return;
+            } else if ((options & FILE_DIRECTORY_FILE) != 0) {
+                r.status = STATUS_NOT_A_DIRECTORY;
+                return;
+            } else {
+                synchronized (files) {
+                    data = get( name );
+                    switch (disposition) {
+                        case FILE_OPEN:
+                            if (data == null) {
+                                r.status = STATUS_OBJECT_NAME_NOT_FOUND;
+                                return;
+                            }
+                            break;
+                        case FILE_CREATE:
+                            if (data != null) {
+                                r.status = STATUS_OBJECT_NAME_COLLISION;
+                                return;
+                            }
+                            action = 2;
+                            data = new byte[0];
+                            break;
+                        case FILE_OPEN_IF:
+                            if (data == null) {
+                                action = 2;
+                                data = new byte[0];
+                            }
+                            break;
+                        default:
+                            action = data == null ? 2 : 3;
+                            data = new byte[0];
+                    }
+                    put( name, data );
+                }
+            }
+
+            long fid = nextFileId++;
+            Handle h = new Handle();
+            h.name = name;
+            handles.put( new Long( fid ), h );
+
+            r.body = new byte[89];
+            Encdec.enc_uint16le( (short)89, r.body, 0 );
+            Encdec.enc_uint32le( action, r.body, 4 );
+            long now = (System.currentTimeMillis() + Smb2File.MILLISECONDS_BETWEEN_1970_AND_1601) * 10000L;
+            for (int i = 8; i < 40; i += 8)
+                Encdec.enc_uint64le( now, r.body, i );
+            if (data != null) {
+                Encdec.enc_uint64le( data.length, r.body, 40 );
+                Encdec.enc_uint64le( data.length, r.body, 48 );
+            }
+            Encdec.enc_uint32le( name == null ? FILE_ATTRIBUTE_DIRECTORY : FILE_ATTRIBUTE_NORMAL, r.body, 56 );
+            Encdec.enc_uint64le( fid, r.body, 64 );
+            Encdec.enc_uint64le( fid, r.body, 72 );
+        }
+        Handle handle( byte[] msg, int off ) {
+            return (Handle)handles.get( new Long( Encdec.dec_uint64le( msg, off )));
+        }
+        void read( byte[] msg, Result r ) {
+            int length = Encdec.dec_uint32le( msg, HEADER_LENGTH + 4 );
+            long offset = Encdec.dec_uint64le( msg, HEADER_LENGTH + 8 );
+            Handle h = handle( msg, HEADER_LENGTH + 16 );
+            if (h == null || h.name == null) {
+                r.status = STATUS_INVALID_PARAMETER;
+                return;
+            }
+            if (length > maxIoSize) {
+                violation();
+                r.status = STATUS_INVALID_PARAMETER;
+                return;
+            }
+            byte[] data = get( h.name );
+            if (offset >= data.length) {
+                r.status = STATUS_END_OF_FILE;
+                return;
+            }
+            int n = (int)Math.min( length, data.length - offset );
+            r.body = new byte[16 + n + readTrailer];
+            Encdec.enc_uint16le( (short)17, r.body, 0 );
+            r.body[2] = (byte)(HEADER_LENGTH + 16); /* DataOffset */
+            Encdec.enc_uint32le( n, r.body, 4 );
+            System.arraycopy( data, (int)offset, r.body, 16, n );
+        }
+        void write( byte[] msg, Result r ) {
+            int off = Encdec.dec_uint16le( msg, HEADER_LENGTH + 2 ) & 0xFFFF;
+            int length = Encdec.dec_uint32le( msg, HEADER_LENGTH + 4 );
+            long offset = Encdec.dec_uint64le( msg, HEADER_LENGTH + 8 );
+            Handle h = handle( msg, HEADER_LENGTH + 16 );
+            if (h == null || h.name == null || off + length > msg.length) {
+                r.status = STATUS_INVALID_PARAMETER;
+                return;
+            }
+            if (length > maxIoSize) {
+                violation();
+                r.status = STATUS_INVALID_PARAMETER;
+                return;
+            }
+            synchronized (files) {
+                byte[] data = get( h.name );
+                int end = (int)offset + length;
+                if (end > data.length) {
+                    byte[] tmp = new byte[end];
+                    System.arraycopy( data, 0, tmp, 0, data.length );
+                    data = tmp;
+                }
+                System.arraycopy( msg, off, data, (int)offset, length );
+                put( h.name, data );
+            }
+            r.body = new byte[17];
+            Encdec.enc_uint16le( (short)17, r.body, 0 );
+            Encdec.enc_uint32le( length, r.body, 4 );
+        }
+        void queryDirectory( byte[] msg, Result r ) {
+            int flags = msg[HEADER_LENGTH + 3] & 0xFF;
+            Handle h = handle( msg, HEADER_LENGTH + 8 );
+            if (h == null || h.name != null) {
+                r.status = STATUS_INVALID_PARAMETER;
+                return;
+            }
+            if (h.listed && (flags & RESTART_SCANS) == 0) {
+                r.status = STATUS_NO_MORE_FILES;
+                return;
+            }
+            h.listed = true;
+
+            ArrayList names = new ArrayList();
+            ArrayList sizes = new ArrayList();
+            names.add( "." );
+            sizes.add( new Integer( 0 ));
+            names.add( ".." );
+            sizes.add( new Integer( 0 ));
+            synchronized (files) {
+                Iterator iter = files.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry e = (Map.Entry)iter.next();
+                    names.add( e.getKey() );
+                    sizes.add( new Integer( ((byte[])e.getValue()).length ));
+                }
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            for (int i = 0; i < names.size(); i++) {
+                byte[] name;
+                try {
+                    name = ((String)names.get( i )).getBytes( "UTF-16LE" );
+                } catch( UnsupportedEncodingException uee ) {
+                    throw new RuntimeException( uee.getMessage() );
+                }
+                int len = (64 + name.length + 7) & ~7;
+                byte[] e = new byte[len];
+                if (i < names.size() - 1)
+                    Encdec.enc_uint32le( len, e, 0 );
+                int size = ((Integer)sizes.get( i )).intValue();
+                Encdec.enc_uint64le( size, e, 40 );
+                Encdec.enc_uint64le( size, e, 48 );
+                Encdec.enc_uint32le( i < 2 ? FILE_ATTRIBUTE_DIRECTORY : FILE_ATTRIBUTE_NORMAL, e, 56 );
+                Encdec.enc_uint32le( name.length, e, 60 );
+                System.arraycopy( name, 0, e, 64, name.length );
+                bos.write( e, 0, len );
+            }
+            byte[] buf = bos.toByteArray();
+            r.body = new byte[8 + buf.length];
+            Encdec.enc_uint16le( (short)9, r.body, 0 );
+            Encdec.enc_uint16le( (short)(HEADER_LENGTH + 8), r.body, 2 );
+            Encdec.enc_uint32le( buf.length, r.body, 4 );
+            System.arraycopy( buf, 0, r.body, 8, buf.length );
+        }
+    }
+
+    static class Result {
+        int status = STATUS_SUCCESS;
+        byte[] body;
+    }
+}
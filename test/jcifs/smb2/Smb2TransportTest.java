@@ -0,0 +1,146 @@
+/* jcifs smb client library in Java
+ * Copyright (C) 2005  "Michael B. Allen" <jcifs at samba dot org>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package jcifs.smb2;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+import jcifs.smb.SmbFile;
+
+/* Negotiation, credits and STATUS_PENDING against Smb2StubServer.
+ */
+
+public class Smb2TransportTest extends TestCase implements Smb2Constants {
+
+    Smb2StubServer server = new Smb2StubServer();
+
+    protected void tearDown() {
+        server.stop();
+    }
+
+    void roundTrip( String name, int len ) throws IOException {
+        byte[] b = Smb2StubServer.data( len );
+        Smb2StubServer.write( server.file( name ), b );
+        assertTrue( name, Arrays.equals( b, server.get( name )));
+        assertTrue( name, Arrays.equals( b, Smb2StubServer.read( server.file( name ), 0x200000 )));
+    }
+
+    public void testSmb1Fallback() throws Exception {
+        server.smb1Only = true;
+        assertFalse( server.file( "a.txt" ).isSmb2() );
+        assertTrue( server.transport().smb1Only );
+        /* The answer is remembered rather than asked again
+         */
+        assertFalse( server.file( "b.txt" ).isSmb2() );
+        assertEquals( 1, server.connections );
+    }
+    public void testIpcIsSmb1() throws Exception {
+        Smb2File f = new Smb2File( new SmbFile( "smb://user:x@127.0.0.1:" +
+                    server.start() + "/IPC$/" ));
+        assertFalse( f.isSmb2() );
+        assertEquals( 0, server.connections );
+    }
+    public void testNegotiate2002() throws Exception {
+        server.dialect = SMB2_002;
+        assertTrue( server.file( "a.txt" ).isSmb2() );
+        Smb2Transport trans = server.transport();
+        assertEquals( SMB2_002, trans.server.dialect );
+        assertFalse( trans.largeMtu );
+        assertEquals( 0x10000, trans.maxReadSize );
+        roundTrip( "a.txt", 200000 );
+        assertEquals( 0, server.maxCharge );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testNegotiate21() throws Exception {
+        assertTrue( server.file( "a.txt" ).isSmb2() );
+        Smb2Transport trans = server.transport();
+        assertEquals( SMB2_1, trans.server.dialect );
+        assertTrue( trans.largeMtu );
+        assertEquals( 0x100000, trans.maxReadSize );
+        roundTrip( "a.txt", 0x300000 + 17 );
+        assertEquals( 16, server.maxCharge );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testNoLargeMtu() throws Exception {
+        server.largeMtu = false;
+        roundTrip( "a.txt", 200000 );
+        assertFalse( server.transport().largeMtu );
+        assertEquals( 0, server.maxCharge );
+        assertEquals( 0, server.creditViolations );
+    }
+
+    /* A server that grants a single credit at a time must not leave a
+     * large READ or WRITE waiting for a charge it will never cover.
+     */
+    public void testCreditStarvation() throws Exception {
+        server.credits = 1;
+        server.grant = 1;
+        long start = System.currentTimeMillis();
+        roundTrip( "a.txt", 0x200000 + 3 );
+        assertTrue( System.currentTimeMillis() - start < RESPONSE_TIMEOUT );
+        assertEquals( 1, server.maxCharge );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testCreditStarvationConcurrent() throws Exception {
+        server.credits = 2;
+        server.grant = 1;
+        server.start();
+        final Exception[] errors = new Exception[4];
+        Thread[] threads = new Thread[errors.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int t = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        roundTrip( "f" + t, 0x100000 + t );
+                    } catch( Exception e ) {
+                        errors[t] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            if (errors[i] != null)
+                throw errors[i];
+        }
+        assertTrue( server.maxCharge <= 2 );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testPending() throws Exception {
+        server.pendingCommand = SMB2_READ;
+        roundTrip( "a.txt", 0x180000 );
+        assertTrue( server.pendingSent >= 2 );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testPendingCreate() throws Exception {
+        server.pendingCommand = SMB2_CREATE;
+        server.pendingDelay = 300;
+        roundTrip( "a.txt", 1000 );
+        assertTrue( server.file( "a.txt" ).exists() );
+        assertFalse( server.file( "b.txt" ).exists() );
+        assertEquals( 0, server.creditViolations );
+    }
+    public void testReadTrailer() throws Exception {
+        server.readTrailer = 8;
+        roundTrip( "a.txt", 0x20000 + 5 );
+    }
+}